@@ -0,0 +1,88 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import highwaystar.services.ActivityTable;
+import highwaystar.utils.DateUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV export of the activity table, plain and gzipped, against the String.format writer
+ * it replaced. Output goes to a temporary file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvExportBenchmark {
+    @Param({"100000"})
+    int rows;
+
+    private List<Activity> activities;
+    private ActivityTable table;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        Activity.ActivityType[] types = Activity.ActivityType.values();
+        activities = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Activity activity = new Activity();
+            activity.setActivityId("activity-" + i);
+            activity.setTimestamp(1_500_000_000_000L + i * 420_000L);
+            activity.setDate(DateUtils.formatDate(activity.getTimestamp()));
+            activity.setType(types[random.nextInt(types.length)]);
+            activity.setDuration(random.nextInt(7200));
+            activity.setSteps(random.nextInt(20000));
+            activity.setDistance(random.nextDouble() * 20);
+            activities.add(activity);
+        }
+        table = ActivityTable.of(activities);
+        activities.sort((a1, a2) -> Long.compare(a2.getTimestamp(), a1.getTimestamp()));
+        file = Files.createTempFile("export", ".csv");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void stringFormat() throws IOException {
+        try (FileWriter writer = new FileWriter(file.toFile())) {
+            writer.write("Date,Type,Duration (seconds),Steps,Distance (km),Pace,Calories\n");
+            for (Activity activity : activities) {
+                writer.write(String.format("%s,%s,%d,%d,%.2f,%s,%d\n",
+                    activity.getDate(),
+                    activity.getType().getDisplayName(),
+                    activity.getDuration(),
+                    activity.getSteps(),
+                    activity.getDistance(),
+                    activity.getDuration() > 0 && activity.getDistance() > 0 ?
+                        String.format("%.2f", activity.getDuration() / 60.0 / activity.getDistance()) : "0",
+                    activity.calculateCalories(70.0)));
+            }
+        }
+    }
+
+    @Benchmark
+    public int export() throws IOException {
+        return CsvExporter.export(table, file, false, null);
+    }
+
+    @Benchmark
+    public int exportGzip() throws IOException {
+        return CsvExporter.export(table, file, true, null);
+    }
+}
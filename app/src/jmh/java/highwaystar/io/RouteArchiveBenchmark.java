@@ -0,0 +1,127 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * The per-entry work of a route archive export on an hour of 1 Hz GPS: formatting with
+ * the GPX and TCX writers, the same GPX through XMLStreamWriter, and deflating an entry
+ * at the fastest level the exporter uses against the default level.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteArchiveBenchmark {
+    private static final int POINTS = 3600;
+
+    private final XMLOutputFactory xmlFactory = XMLOutputFactory.newInstance();
+    private final byte[] deflated = new byte[1 << 20];
+    private Activity activity;
+    private RouteBuffer route;
+    private byte[] gpx;
+
+    @Setup
+    public void setUp() {
+        activity = new Activity("benchmark-user", Activity.ActivityType.RUN);
+        activity.setTimestamp(1_700_000_000_000L);
+        activity.setDate("2023-11-14");
+        route = gpsTrack(activity.getTimestamp());
+        gpx = GpxWriter.write(activity, route);
+    }
+
+    @Benchmark
+    public byte[] gpxWriter() {
+        return GpxWriter.write(activity, route);
+    }
+
+    @Benchmark
+    public byte[] tcxWriter() {
+        return TcxWriter.write(activity, route);
+    }
+
+    @Benchmark
+    public byte[] gpxXmlStreamWriter() throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(POINTS * 80);
+        XMLStreamWriter xml = xmlFactory.createXMLStreamWriter(out, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeStartElement("gpx");
+        xml.writeDefaultNamespace("http://www.topografix.com/GPX/1/1");
+        xml.writeAttribute("version", "1.1");
+        xml.writeAttribute("creator", "Highway Star");
+        xml.writeStartElement("metadata");
+        xml.writeStartElement("time");
+        xml.writeCharacters(Instant.ofEpochMilli(activity.getTimestamp()).toString());
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeStartElement("trk");
+        xml.writeStartElement("name");
+        xml.writeCharacters(GpxWriter.title(activity));
+        xml.writeEndElement();
+        xml.writeStartElement("type");
+        xml.writeCharacters(GpxWriter.type(activity.getType()));
+        xml.writeEndElement();
+        xml.writeStartElement("trkseg");
+        for (int i = 0; i < route.size(); i++) {
+            xml.writeStartElement("trkpt");
+            xml.writeAttribute("lat", String.format("%.6f", route.getLatitude(i)));
+            xml.writeAttribute("lon", String.format("%.6f", route.getLongitude(i)));
+            xml.writeStartElement("time");
+            xml.writeCharacters(Instant.ofEpochMilli(route.getTimestamp(i)).toString());
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+        xml.writeEndDocument();
+        xml.close();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public int deflateFastest() {
+        return deflate(Deflater.BEST_SPEED);
+    }
+
+    @Benchmark
+    public int deflateDefault() {
+        return deflate(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private int deflate(int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(gpx);
+            deflater.finish();
+            return deflater.deflate(deflated);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // A jittery path at running pace, so the entries compress like recorded tracks
+    static RouteBuffer gpsTrack(long start) {
+        Random random = new Random(7);
+        RouteBuffer track = new RouteBuffer(POINTS);
+        double latitude = 51.5;
+        double longitude = -0.1;
+        double heading = 0;
+        for (int i = 0; i < POINTS; i++) {
+            heading += random.nextGaussian() * 0.1;
+            latitude += Math.cos(heading) * 2.5e-5 + random.nextGaussian() * 2e-6;
+            longitude += Math.sin(heading) * 4e-5 + random.nextGaussian() * 3e-6;
+            track.add(latitude, longitude, start + i * 1000L);
+        }
+        return track;
+    }
+}
@@ -0,0 +1,135 @@
+package highwaystar.repository;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a query result of activity summaries: the field table over one value tree,
+ * sequential and through decodeAll, against the per-field child lookups it replaced.
+ *
+ * DataSnapshot can only be built by the SDK, so the old path runs over a stand-in that,
+ * like a snapshot, hands out a new child view per lookup and converts the value to the
+ * requested class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActivityDecoderBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int activities;
+
+    private Map<String, Object> tree;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long start = 1_600_000_000_000L;
+        tree = new HashMap<>();
+        for (int i = 0; i < activities; i++) {
+            // Shaped like the SDK's value tree: whole numbers come back as Long
+            Map<String, Object> summary = new HashMap<>();
+            long timestamp = start + i * 3_600_000L;
+            summary.put("userId", "benchmark-user");
+            summary.put("timestamp", timestamp);
+            summary.put("date", "2020-09-" + (10 + i % 20));
+            summary.put("type", Activity.ActivityType.values()[i % 4].name());
+            summary.put("duration", (long) random.nextInt(7200));
+            summary.put("steps", (long) random.nextInt(20000));
+            summary.put("distance", random.nextDouble() * 20);
+            if (i % 10 == 0) {
+                summary.put("notes", "Morning loop " + i);
+            }
+            tree.put("activity-" + i, summary);
+        }
+    }
+
+    @Benchmark
+    public void perFieldLookups(Blackhole blackhole) {
+        for (Map.Entry<String, Object> child : tree.entrySet()) {
+            blackhole.consume(legacyDecode(new SnapshotView(child.getKey(), child.getValue())));
+        }
+    }
+
+    @Benchmark
+    public void fieldTable(Blackhole blackhole) {
+        for (Map.Entry<String, Object> child : tree.entrySet()) {
+            blackhole.consume(ActivityDecoder.decode(child.getKey(), child.getValue()));
+        }
+    }
+
+    @Benchmark
+    public List<Activity> decodeAll() {
+        return ActivityDecoder.decodeAll(tree);
+    }
+
+    // The decode removed from ActivityService, field by field through child(name)
+    private static Activity legacyDecode(SnapshotView snapshot) {
+        try {
+            Activity activity = new Activity();
+            activity.setActivityId(snapshot.getKey());
+            activity.setUserId(snapshot.child("userId").getValue(String.class));
+            activity.setTimestamp(snapshot.child("timestamp").getValue(Long.class));
+            activity.setDate(snapshot.child("date").getValue(String.class));
+
+            String typeStr = snapshot.child("type").getValue(String.class);
+            activity.setType(typeStr != null ? Activity.ActivityType.valueOf(typeStr) : Activity.ActivityType.WALK);
+
+            activity.setDuration(snapshot.child("duration").getValue(Integer.class));
+            activity.setSteps(snapshot.child("steps").getValue(Integer.class));
+            activity.setDistance(snapshot.child("distance").getValue(Double.class));
+            activity.setNotes(snapshot.child("notes").getValue(String.class));
+
+            SnapshotView routeSnapshot = snapshot.child("route");
+            if (routeSnapshot.exists()) {
+                activity.setRoute(new RouteBuffer());
+            }
+            return activity;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static final class SnapshotView {
+        private final String key;
+        private final Object value;
+
+        SnapshotView(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        boolean exists() {
+            return value != null;
+        }
+
+        SnapshotView child(String name) {
+            Object child = value instanceof Map ? ((Map<?, ?>) value).get(name) : null;
+            return new SnapshotView(name, child);
+        }
+
+        <T> T getValue(Class<T> type) {
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof Number && type == Integer.class) {
+                return type.cast(((Number) value).intValue());
+            }
+            if (value instanceof Number && type == Double.class) {
+                return type.cast(((Number) value).doubleValue());
+            }
+            return type.cast(value);
+        }
+    }
+}
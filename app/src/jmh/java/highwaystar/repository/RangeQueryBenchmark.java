@@ -0,0 +1,74 @@
+package highwaystar.repository;
+
+import highwaystar.models.Activity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The History panel's period filters on an account with 10k activities over four years:
+ * a timestamp range read against reading everything and filtering, which is what
+ * getActivitiesByDateRange did before. Runs on the in-memory backend, whose timestamp
+ * index stands in for the server's .indexOn rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RangeQueryBenchmark {
+    private static final String UID = "benchmark-user";
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    @Param({"10000"})
+    int activities;
+
+    // Last 7 days, last 30 days, all time
+    @Param({"7", "30", "100000"})
+    int days;
+
+    private InMemoryRepository repository;
+    private long endTime;
+    private long startTime;
+
+    @Setup
+    public void setUp() {
+        repository = new InMemoryRepository();
+        Random random = new Random(42);
+        endTime = System.currentTimeMillis();
+        long span = 4 * 365 * DAY_MS;
+
+        List<Activity> saved = new ArrayList<>();
+        for (int i = 0; i < activities; i++) {
+            Activity activity = new Activity(UID, Activity.ActivityType.values()[i % 4]);
+            activity.setActivityId("activity-" + i);
+            activity.setTimestamp(endTime - span + (long) (random.nextDouble() * span));
+            activity.setSteps(random.nextInt(20000));
+            activity.setDistance(random.nextDouble() * 20);
+            activity.setDuration(random.nextInt(7200));
+            saved.add(activity);
+        }
+        repository.saveActivities(UID, saved).join();
+        startTime = endTime - (long) days * DAY_MS;
+    }
+
+    @Benchmark
+    public List<Activity> readAllAndFilter() {
+        List<Activity> inRange = new ArrayList<>();
+        for (Activity activity : repository.listActivities(UID).join()) {
+            if (activity.getTimestamp() >= startTime && activity.getTimestamp() <= endTime) {
+                inRange.add(activity);
+            }
+        }
+        return inRange;
+    }
+
+    @Benchmark
+    public List<Activity> rangeRead() {
+        return repository.listActivities(UID, startTime, endTime).join();
+    }
+}
@@ -0,0 +1,99 @@
+package highwaystar.services;
+
+import highwaystar.models.RouteBuffer;
+import highwaystar.utils.Config;
+import highwaystar.utils.DistanceCalculator;
+import highwaystar.utils.RouteCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * An hour of 1 Hz GPS read through the route cache against the same route on the heap: a
+ * cache hit against decoding the stored string on a miss, then route length and re-encoding
+ * over the mapped view and over the heap route. The cache lives in a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteCacheBenchmark {
+    private static final int POINTS = 3600;
+
+    private Path directory;
+    private RouteCache routeCache;
+    private String encoded;
+    private RouteBuffer heapRoute;
+    private RouteBuffer cachedRoute;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("route-cache");
+        Config.getInstance().set("routes.cache.enabled", "true");
+        Config.getInstance().set("routes.cache.dir", directory.toString());
+        routeCache = RouteCache.getInstance();
+
+        Random random = new Random(7);
+        heapRoute = new RouteBuffer(POINTS);
+        double latitude = 51.5;
+        double longitude = -0.1;
+        double heading = 0;
+        for (int i = 0; i < POINTS; i++) {
+            heading += random.nextGaussian() * 0.1;
+            latitude += Math.cos(heading) * 2.5e-5 + random.nextGaussian() * 2e-6;
+            longitude += Math.sin(heading) * 4e-5 + random.nextGaussian() * 3e-6;
+            heapRoute.add(latitude, longitude, 1_700_000_000_000L + i * 1000L);
+        }
+        encoded = RouteCodec.encode(heapRoute);
+        cachedRoute = routeCache.put("bench", "route", heapRoute);
+        if (cachedRoute == heapRoute) {
+            throw new IllegalStateException("Route cache is off");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        routeCache.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public RouteBuffer hit() {
+        return routeCache.get("bench", "route");
+    }
+
+    @Benchmark
+    public RouteBuffer missDecode() {
+        return RouteCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public double distanceHeap() {
+        return DistanceCalculator.calculateDistance(heapRoute, 0, heapRoute.size());
+    }
+
+    @Benchmark
+    public double distanceCached() {
+        return DistanceCalculator.calculateDistance(cachedRoute, 0, cachedRoute.size());
+    }
+
+    @Benchmark
+    public String encodeHeap() {
+        return RouteCodec.encode(heapRoute);
+    }
+
+    @Benchmark
+    public String encodeCached() {
+        return RouteCodec.encode(cachedRoute);
+    }
+}
@@ -0,0 +1,117 @@
+package highwaystar.utils;
+
+import highwaystar.models.RouteBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding an hour of 1 Hz GPS and measuring its length, with the route held in a RouteBuffer
+ * against a list of point objects as before. The list side is a stand-in for the removed
+ * RoutePoint path: the same decoding loop, building a point of two doubles and a long per fix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteCodecBenchmark {
+    private static final int POINTS = 3600;
+
+    private String encoded;
+    private RouteBuffer route;
+    private List<Point> points;
+
+    private static final class Point {
+        final double latitude;
+        final double longitude;
+        final long timestamp;
+
+        Point(double latitude, double longitude, long timestamp) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        RouteBuffer track = new RouteBuffer(POINTS);
+        double latitude = 51.5;
+        double longitude = -0.1;
+        double heading = 0;
+        for (int i = 0; i < POINTS; i++) {
+            heading += random.nextGaussian() * 0.1;
+            latitude += Math.cos(heading) * 2.5e-5 + random.nextGaussian() * 2e-6;
+            longitude += Math.sin(heading) * 4e-5 + random.nextGaussian() * 3e-6;
+            track.add(latitude, longitude, 1_700_000_000_000L + i * 1000L);
+        }
+        encoded = RouteCodec.encode(track);
+        route = RouteCodec.decode(encoded);
+        points = decodePoints(encoded);
+    }
+
+    @Benchmark
+    public List<Point> decodeToPoints() {
+        return decodePoints(encoded);
+    }
+
+    @Benchmark
+    public RouteBuffer decodeToBuffer() {
+        return RouteCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public double distanceOfPoints() {
+        double distance = 0;
+        for (int i = 1; i < points.size(); i++) {
+            Point previous = points.get(i - 1);
+            Point point = points.get(i);
+            distance += DistanceCalculator.calculateDistance(previous.latitude, previous.longitude,
+                point.latitude, point.longitude);
+        }
+        return distance;
+    }
+
+    @Benchmark
+    public double distanceOfBuffer() {
+        return DistanceCalculator.calculateDistance(route, 0, route.size());
+    }
+
+    private static List<Point> decodePoints(String encoded) {
+        int[] pos = {1};
+        int size = (int) readVarint(encoded, pos);
+        List<Point> points = new ArrayList<>(size);
+        long lat = 0;
+        long lon = 0;
+        long time = 0;
+        for (int i = 0; i < size; i++) {
+            lat += unZigZag(readVarint(encoded, pos));
+            lon += unZigZag(readVarint(encoded, pos));
+            time += unZigZag(readVarint(encoded, pos));
+            points.add(new Point(lat / 1e6, lon / 1e6, time));
+        }
+        return points;
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(String encoded, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            chunk = encoded.charAt(pos[0]++) - 63;
+            result |= (long) (chunk & 0x1F) << shift;
+            shift += 5;
+        } while ((chunk & 0x20) != 0);
+        return result;
+    }
+}
@@ -0,0 +1,123 @@
+package highwaystar.utils;
+
+import highwaystar.models.RouteBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simplifying an hour of 1 Hz GPS: the one-off significance pass, picking a zoom level from it
+ * and building the stored overview, against running plain Douglas-Peucker at one tolerance, as
+ * a painter without the precomputed significances would on every zoom change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteSimplifierBenchmark {
+    private static final int POINTS = 3600;
+
+    // Half a pixel at the given zoom, in map widths
+    @Param({"12", "16"})
+    int zoom;
+
+    private RouteBuffer route;
+    private float[] significance;
+    private int[] indexes;
+    private double[] x;
+    private double[] y;
+    private boolean[] kept;
+    private double tolerance;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        route = new RouteBuffer(POINTS);
+        double latitude = 51.5;
+        double longitude = -0.1;
+        double heading = 0;
+        for (int i = 0; i < POINTS; i++) {
+            heading += random.nextGaussian() * 0.1;
+            latitude += Math.cos(heading) * 2.5e-5 + random.nextGaussian() * 2e-6;
+            longitude += Math.sin(heading) * 4e-5 + random.nextGaussian() * 3e-6;
+            route.add(latitude, longitude, 1_700_000_000_000L + i * 1000L);
+        }
+        significance = RouteSimplifier.significance(route);
+        indexes = new int[POINTS];
+        kept = new boolean[POINTS];
+        tolerance = 0.5 / (256L << zoom);
+
+        x = new double[POINTS];
+        y = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            x[i] = route.getLongitudeE6(i) / 1e6 / 360 + 0.5;
+            double e = Math.sin(Math.toRadians(route.getLatitudeE6(i) / 1e6));
+            y[i] = 0.5 - 0.25 * Math.log((1 + e) / (1 - e)) / Math.PI;
+        }
+    }
+
+    @Benchmark
+    public float[] significance() {
+        return RouteSimplifier.significance(route);
+    }
+
+    @Benchmark
+    public int select() {
+        return RouteSimplifier.select(significance, tolerance, indexes);
+    }
+
+    @Benchmark
+    public RouteBuffer overview() {
+        return RouteSimplifier.overview(route, RouteSimplifier.OVERVIEW_POINTS);
+    }
+
+    @Benchmark
+    public int douglasPeucker() {
+        Arrays.fill(kept, false);
+        kept[0] = true;
+        kept[POINTS - 1] = true;
+        simplify(0, POINTS - 1, tolerance * tolerance);
+        int count = 0;
+        for (boolean k : kept) {
+            if (k) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void simplify(int first, int last, double toleranceSquared) {
+        if (last - first < 2) {
+            return;
+        }
+        int split = first + 1;
+        double max = -1;
+        for (int i = first + 1; i < last; i++) {
+            double distance = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+            if (distance > max) {
+                max = distance;
+                split = i;
+            }
+        }
+        if (max > toleranceSquared) {
+            kept[split] = true;
+            simplify(first, split, toleranceSquared);
+            simplify(split, last, toleranceSquared);
+        }
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
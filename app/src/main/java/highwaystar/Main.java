@@ -1,6 +1,6 @@
 package highwaystar;
 
-import highwaystar.services.FirebaseService;
+import highwaystar.repository.FirebaseService;
 import highwaystar.ui.MainFrame;
 
 import javax.swing.*;
@@ -0,0 +1,425 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Imports a ZIP of GPX, TCX and CSV files, as handed over when a user moves from another
+ * tracker. Entries are parsed on a small pool while the calling thread gathers the results
+ * into batches for batchWriter. Only a few batches may be in flight; once that many are
+ * waiting on the backend, parsing stops until the oldest lands.
+ *
+ * Every imported activity gets an id derived from its entry's CRC and position, so a
+ * rerun recognises what an interrupted one already wrote. Entries whose activities have
+ * all been written are listed in a checkpoint file beside the archive, which lets a
+ * rerun skip them without parsing; the file is removed once the import completes.
+ *
+ * CSV files are read in the layout {@link CsvExporter} writes. Each row becomes an
+ * activity at the start of its date, without a route.
+ */
+public class ArchiveImporter {
+    public static final String CHECKPOINT_SUFFIX = ".import-checkpoint";
+
+    // Batches also end early once they carry this many route points
+    private static final int ROUTE_POINTS_PER_BATCH = 50_000;
+    // Entries parsed ahead of the one being batched, per worker
+    private static final int WINDOW_PER_WORKER = 2;
+
+    public static class Result {
+        private final int imported;
+        private final int skipped;
+        private final List<String> failed;
+
+        Result(int imported, int skipped, List<String> failed) {
+            this.imported = imported;
+            this.skipped = skipped;
+            this.failed = failed;
+        }
+
+        public int getImported() { return imported; }
+        // Already present, written by an interrupted earlier run, or repeated in the archive
+        public int getSkipped() { return skipped; }
+        // Entries that could not be parsed, with the reason
+        public List<String> getFailed() { return failed; }
+    }
+
+    /**
+     * Imports the archive, skipping ids in existingIds. batchSize is the number of
+     * activities per write and pendingBatches the number of writes allowed in flight.
+     * Progress is reported in entries; throws CancellationException if the listener
+     * cancels, leaving the checkpoint for the next run.
+     */
+    public static Result importArchive(Path archive, Set<String> existingIds,
+                                       Function<List<Activity>, CompletableFuture<Void>> batchWriter,
+                                       int batchSize, int pendingBatches, ProgressListener listener) throws IOException {
+        Path checkpointFile = archive.resolveSibling(archive.getFileName() + CHECKPOINT_SUFFIX);
+        // A checkpoint only applies to the exact archive it was written for
+        String signature = "archive " + Files.size(archive) + " " + Files.getLastModifiedTime(archive).toMillis();
+        Map<String, Integer> completed = readCheckpoint(checkpointFile, signature);
+
+        try (ZipFile zip = new ZipFile(archive.toFile());
+             BufferedWriter checkpoint = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8,
+                 StandardOpenOption.APPEND)) {
+            List<ZipEntry> entries = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (!entry.isDirectory() && isSupported(entry.getName())) {
+                    entries.add(entry);
+                }
+            }
+
+            Result result = new ArchiveImporter(zip, existingIds, batchWriter, Math.max(1, batchSize),
+                Math.max(1, pendingBatches), checkpoint, listener).run(entries, completed);
+            checkpoint.close();
+            Files.deleteIfExists(checkpointFile);
+            return result;
+        }
+    }
+
+    static boolean isSupported(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".gpx") || lower.endsWith(".tcx") || lower.endsWith(".csv");
+    }
+
+    // Each line after the signature is an entry's activity count, a tab and its name
+    private static Map<String, Integer> readCheckpoint(Path file, String signature) throws IOException {
+        Map<String, Integer> completed = new HashMap<>();
+        if (Files.exists(file)) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(signature)) {
+                // A line torn by a crash just doesn't match an entry, as the name comes last
+                for (String line : lines.subList(1, lines.size())) {
+                    int tab = line.indexOf('\t');
+                    try {
+                        completed.put(line.substring(tab + 1), Integer.parseInt(line.substring(0, Math.max(tab, 0))));
+                    } catch (NumberFormatException e) {
+                        // Not a line this importer wrote
+                    }
+                }
+                return completed;
+            }
+        }
+        Files.writeString(file, signature + System.lineSeparator(), StandardCharsets.UTF_8);
+        return completed;
+    }
+
+    // A write that has been sent, and the checkpoint lines of the entries whose last activities it carries
+    private static class PendingBatch {
+        final CompletableFuture<Void> write;
+        final List<String> completesEntries;
+        final int size;
+
+        PendingBatch(CompletableFuture<Void> write, List<String> completesEntries, int size) {
+            this.write = write;
+            this.completesEntries = completesEntries;
+            this.size = size;
+        }
+    }
+
+    private final ZipFile zip;
+    private final Set<String> existingIds;
+    private final Function<List<Activity>, CompletableFuture<Void>> batchWriter;
+    private final int batchSize;
+    private final int pendingBatches;
+    private final BufferedWriter checkpoint;
+    private final ProgressListener listener;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Set<String> seenIds = new HashSet<>();
+
+    private final Deque<PendingBatch> writes = new ArrayDeque<>();
+    private List<Activity> batch = new ArrayList<>();
+    private List<String> batchCompletes = new ArrayList<>();
+    private int batchPoints;
+    private int imported;
+    private int skipped;
+
+    private ArchiveImporter(ZipFile zip, Set<String> existingIds,
+                            Function<List<Activity>, CompletableFuture<Void>> batchWriter,
+                            int batchSize, int pendingBatches, BufferedWriter checkpoint, ProgressListener listener) {
+        this.zip = zip;
+        this.existingIds = existingIds;
+        this.batchWriter = batchWriter;
+        this.batchSize = batchSize;
+        this.pendingBatches = pendingBatches;
+        this.checkpoint = checkpoint;
+        this.listener = listener;
+    }
+
+    private Result run(List<ZipEntry> entries, Map<String, Integer> completed) throws IOException {
+        int workers = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        int window = workers * WINDOW_PER_WORKER;
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "archive-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<CompletableFuture<List<Activity>>> parsed = new ArrayDeque<>();
+        List<String> failed = new ArrayList<>();
+        int started = 0;
+
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                while (started < entries.size() && started < i + window) {
+                    ZipEntry entry = entries.get(started++);
+                    Integer written = completed.get(entry.getName());
+                    if (written != null) {
+                        // Written by the interrupted run, so its activities count as skipped
+                        skipped += written;
+                        parsed.add(CompletableFuture.completedFuture(null));
+                    } else {
+                        parsed.add(CompletableFuture.supplyAsync(() -> parse(entry), pool));
+                    }
+                }
+
+                ZipEntry entry = entries.get(i);
+                List<Activity> activities;
+                try {
+                    activities = parsed.poll().join();
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                    failed.add(entry.getName() + " (" + cause.getMessage() + ")");
+                    activities = null;
+                }
+                if (activities != null) {
+                    add(entry.getName(), activities);
+                }
+
+                if (listener != null && !listener.onProgress(i + 1, entries.size())) {
+                    throw new CancellationException("Import cancelled after " + imported + " activities");
+                }
+            }
+
+            flush();
+            while (!writes.isEmpty()) {
+                awaitOldest();
+            }
+        } finally {
+            for (CompletableFuture<List<Activity>> entry : parsed) {
+                entry.cancel(false);
+            }
+            pool.shutdownNow();
+            // Writes already sent still count; wait for them so the checkpoint is accurate
+            while (!writes.isEmpty()) {
+                try {
+                    awaitOldest();
+                } catch (RuntimeException e) {
+                    writes.clear();
+                }
+            }
+            checkpoint.flush();
+        }
+        return new Result(imported, skipped, failed);
+    }
+
+    private List<Activity> parse(ZipEntry entry) {
+        try (InputStream in = zip.getInputStream(entry)) {
+            List<Activity> activities = entry.getName().toLowerCase().endsWith(".csv") ?
+                readCsv(in) : List.of(TrackReader.read(in));
+            // The id survives a rerun as long as the entry's content is the same
+            String prefix = String.format("import-%08x%x-", entry.getCrc(), entry.getSize());
+            for (int i = 0; i < activities.size(); i++) {
+                activities.get(i).setActivityId(prefix + i);
+            }
+            return activities;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void add(String entryName, List<Activity> activities) throws IOException {
+        for (Activity activity : activities) {
+            // The same file twice in one archive yields the same ids
+            if (existingIds.contains(activity.getActivityId()) || !seenIds.add(activity.getActivityId())) {
+                skipped++;
+                continue;
+            }
+            batch.add(activity);
+            batchPoints += activity.getRoute().size();
+            if (batch.size() >= batchSize || batchPoints >= ROUTE_POINTS_PER_BATCH) {
+                flush();
+            }
+        }
+        // Recorded once the batch holding its last activity has landed
+        batchCompletes.add(activities.size() + "\t" + entryName);
+    }
+
+    private void flush() throws IOException {
+        if (batch.isEmpty()) {
+            // Nothing left to write for these entries, but they only complete after earlier batches
+            if (!batchCompletes.isEmpty()) {
+                writes.add(new PendingBatch(CompletableFuture.completedFuture(null), batchCompletes, 0));
+                batchCompletes = new ArrayList<>();
+            }
+            return;
+        }
+        // Record whatever has landed, so the checkpoint keeps up with a fast backend
+        while (!writes.isEmpty() && writes.peek().write.isDone()) {
+            awaitOldest();
+        }
+        // Backpressure: the backend is behind, so stop producing until the oldest write lands
+        while (pendingWrites() >= pendingBatches) {
+            awaitOldest();
+        }
+        writes.add(new PendingBatch(batchWriter.apply(batch), batchCompletes, batch.size()));
+        batch = new ArrayList<>();
+        batchCompletes = new ArrayList<>();
+        batchPoints = 0;
+    }
+
+    private int pendingWrites() {
+        int count = 0;
+        for (PendingBatch pending : writes) {
+            if (pending.size > 0 && !pending.write.isDone()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Writes are acknowledged in the order they were sent
+    private void awaitOldest() throws IOException {
+        PendingBatch oldest = writes.peek();
+        oldest.write.join();
+        writes.poll();
+        imported += oldest.size;
+        for (String line : oldest.completesEntries) {
+            checkpoint.write(line);
+            checkpoint.newLine();
+        }
+        checkpoint.flush();
+    }
+
+    // Header names as CsvExporter writes them; other columns are ignored
+    private List<Activity> readCsv(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            return List.of();
+        }
+        List<String> columns = readRecord(reader, header.replace("\uFEFF", ""));
+        int dateColumn = columns.indexOf("Date");
+        int typeColumn = columns.indexOf("Type");
+        int durationColumn = columns.indexOf("Duration (seconds)");
+        int stepsColumn = columns.indexOf("Steps");
+        int distanceColumn = columns.indexOf("Distance (km)");
+        if (dateColumn < 0) {
+            throw new IOException("CSV has no Date column");
+        }
+
+        List<Activity> activities = new ArrayList<>();
+        String line;
+        int row = 1;
+        while ((line = reader.readLine()) != null) {
+            row++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = readRecord(reader, line);
+            try {
+                Activity activity = new Activity();
+                activity.setTimestamp(LocalDate.parse(field(fields, dateColumn)).atStartOfDay(zone).toInstant().toEpochMilli());
+                activity.setType(parseType(field(fields, typeColumn)));
+                activity.setDuration(parseInt(field(fields, durationColumn)));
+                activity.setSteps(parseInt(field(fields, stepsColumn)));
+                activity.setDistance(parseDouble(field(fields, distanceColumn)));
+                activities.add(activity);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IOException("Bad CSV row " + row + ": " + e.getMessage());
+            }
+        }
+        return activities;
+    }
+
+    private static String field(List<String> fields, int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column).trim() : "";
+    }
+
+    // Splits a record on commas outside double quotes, where "" stands for one quote. A quoted
+    // field may hold line breaks, in which case the record continues on the following lines.
+    static List<String> readRecord(BufferedReader reader, String line) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; ; i++) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                String next = reader.readLine();
+                if (next == null) {
+                    throw new IOException("Unterminated quoted field in CSV");
+                }
+                field.append('\n');
+                line = next;
+                i = -1;
+                continue;
+            }
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int parseInt(String value) {
+        return value.isEmpty() ? 0 : Integer.parseInt(value);
+    }
+
+    private static double parseDouble(String value) {
+        return value.isEmpty() ? 0 : Double.parseDouble(value);
+    }
+
+    private static Activity.ActivityType parseType(String value) {
+        for (Activity.ActivityType type : Activity.ActivityType.values()) {
+            if (type.name().equalsIgnoreCase(value) || type.getDisplayName().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        return Activity.ActivityType.WALK;
+    }
+}
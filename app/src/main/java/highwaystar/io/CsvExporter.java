@@ -0,0 +1,195 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import highwaystar.services.ActivityTable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.CancellationException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes an activity table as CSV, newest first. Rows are formatted straight from the
+ * table's columns into a reused byte buffer, so no per-row strings are built and output
+ * starts with the first row.
+ */
+public class CsvExporter {
+    private static final byte[] HEADER =
+        "Date,Type,Duration (seconds),Steps,Distance (km),Pace,Calories\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Longest possible row is well under this
+    private static final int MAX_ROW_BYTES = 256;
+    private static final int PROGRESS_INTERVAL = 16 * 1024;
+    // Calories have always been exported for a 70 kg reference weight
+    private static final double CALORIE_WEIGHT_KG = 70.0;
+
+    private static final byte[][] TYPE_NAMES;
+
+    static {
+        Activity.ActivityType[] types = Activity.ActivityType.values();
+        TYPE_NAMES = new byte[types.length][];
+        for (Activity.ActivityType type : types) {
+            TYPE_NAMES[type.ordinal()] = type.getDisplayName().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] digits = new byte[20];
+    private final byte[] date = new byte[10];
+    private long dateEpochDay = Long.MIN_VALUE;
+    private int position;
+
+    /**
+     * Exports every row of the table to the file, gzip-compressed if requested. Returns the
+     * number of rows written; throws CancellationException if the listener cancels.
+     */
+    public static int export(ActivityTable table, Path file, boolean gzip, ProgressListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             OutputStream out = gzip ?
+                 new FastGzipOutputStream(Channels.newOutputStream(channel)) :
+                 Channels.newOutputStream(channel)) {
+            return new CsvExporter().write(table, out, listener);
+        }
+    }
+
+    // CSV compresses well even at the fastest level, which keeps gzip from dominating the export
+    private static class FastGzipOutputStream extends GZIPOutputStream {
+        FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    int write(ActivityTable table, OutputStream out, ProgressListener listener) throws IOException {
+        int total = table.size();
+        put(HEADER);
+
+        int written = 0;
+        // The table is oldest first; exports have always listed newest first
+        for (int row = total - 1; row >= 0; row--) {
+            if (position > BUFFER_SIZE - MAX_ROW_BYTES) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            writeRow(table, row);
+            written++;
+
+            if (listener != null && written % PROGRESS_INTERVAL == 0 && !listener.onProgress(written, total)) {
+                throw new CancellationException("Export cancelled after " + written + " rows");
+            }
+        }
+
+        out.write(buffer, 0, position);
+        position = 0;
+        if (listener != null) {
+            listener.onProgress(written, total);
+        }
+        return written;
+    }
+
+    private void writeRow(ActivityTable table, int row) {
+        int duration = table.getDuration(row);
+        double distance = table.getDistance(row);
+        Activity.ActivityType type = table.getType(row);
+
+        putDate(table.getEpochDay(row));
+        buffer[position++] = ',';
+        put(TYPE_NAMES[type.ordinal()]);
+        buffer[position++] = ',';
+        putLong(duration);
+        buffer[position++] = ',';
+        putLong(table.getSteps(row));
+        buffer[position++] = ',';
+        putFixed2(distance);
+        buffer[position++] = ',';
+        if (duration > 0 && distance > 0) {
+            // Minutes per km
+            putFixed2(duration / 60.0 / distance);
+        } else {
+            buffer[position++] = '0';
+        }
+        buffer[position++] = ',';
+        putLong(Activity.calculateCalories(type, duration, CALORIE_WEIGHT_KG));
+        buffer[position++] = '\n';
+    }
+
+    private void put(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    // yyyy-MM-dd; rows of the same day are adjacent, so the last one is reused
+    private void putDate(long epochDay) {
+        if (epochDay != dateEpochDay) {
+            LocalDate day = LocalDate.ofEpochDay(epochDay);
+            int year = day.getYear();
+            date[0] = (byte) ('0' + year / 1000 % 10);
+            date[1] = (byte) ('0' + year / 100 % 10);
+            date[2] = (byte) ('0' + year / 10 % 10);
+            date[3] = (byte) ('0' + year % 10);
+            date[4] = '-';
+            date[5] = (byte) ('0' + day.getMonthValue() / 10);
+            date[6] = (byte) ('0' + day.getMonthValue() % 10);
+            date[7] = '-';
+            date[8] = (byte) ('0' + day.getDayOfMonth() / 10);
+            date[9] = (byte) ('0' + day.getDayOfMonth() % 10);
+            dateEpochDay = epochDay;
+        }
+        put(date);
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            if (value == Long.MIN_VALUE) {
+                put(Long.toString(value).substring(1).getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            buffer[position++] = digits[--count];
+        }
+    }
+
+    // Two decimals as %.2f writes them: half up on the shortest decimal form of the value, so
+    // 1.005 gives 1.01 although its double is just below the tie
+    private void putFixed2(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e9) {
+            put(String.format("%.2f", value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        double scaled = Math.abs(value) * 100;
+        long hundredths;
+        if (Math.abs(scaled - Math.floor(scaled) - 0.5) < 1e-3) {
+            // Close enough to a tie that the binary value may sit on either side of it
+            hundredths = BigDecimal.valueOf(Math.abs(value)).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        } else {
+            hundredths = Math.round(scaled);
+        }
+        // %.2f keeps the sign of negative values that round to zero, and of -0.0
+        if (Double.doubleToRawLongBits(value) < 0) {
+            buffer[position++] = '-';
+        }
+        putLong(hundredths / 100);
+        buffer[position++] = '.';
+        int fraction = (int) (hundredths % 100);
+        buffer[position++] = (byte) ('0' + fraction / 10);
+        buffer[position++] = (byte) ('0' + fraction % 10);
+    }
+}
@@ -0,0 +1,55 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+
+/**
+ * Writes one activity as a GPX 1.1 track.
+ */
+public class GpxWriter {
+    // Roughly what one trkpt takes
+    private static final int BYTES_PER_POINT = 80;
+
+    public static byte[] write(Activity activity, RouteBuffer route) {
+        XmlBuffer xml = new XmlBuffer(512 + route.size() * BYTES_PER_POINT);
+        xml.ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .ascii("<gpx xmlns=\"http://www.topografix.com/GPX/1/1\" version=\"1.1\" creator=\"Highway Star\">\n")
+            .ascii(" <metadata><time>").time(activity.getTimestamp()).ascii("</time></metadata>\n")
+            .ascii(" <trk>\n")
+            .ascii("  <name>").text(title(activity)).ascii("</name>\n");
+        if (activity.getNotes() != null && !activity.getNotes().isEmpty()) {
+            xml.ascii("  <desc>").text(activity.getNotes()).ascii("</desc>\n");
+        }
+        xml.ascii("  <type>").ascii(type(activity.getType())).ascii("</type>\n")
+            .ascii("  <trkseg>\n");
+
+        for (int i = 0; i < route.size(); i++) {
+            xml.ascii("   <trkpt lat=\"").coordinateE6(route.getLatitudeE6(i))
+                .ascii("\" lon=\"").coordinateE6(route.getLongitudeE6(i))
+                .ascii("\"><time>").time(route.getTimestamp(i)).ascii("</time></trkpt>\n");
+        }
+
+        xml.ascii("  </trkseg>\n")
+            .ascii(" </trk>\n")
+            .ascii("</gpx>\n");
+        return xml.toByteArray();
+    }
+
+    static String title(Activity activity) {
+        Activity.ActivityType type = activity.getType() != null ? activity.getType() : Activity.ActivityType.WALK;
+        return activity.getDate() != null ? type.getDisplayName() + " " + activity.getDate() : type.getDisplayName();
+    }
+
+    // GPX leaves the track type free-form; these are the names most tools recognise
+    static String type(Activity.ActivityType type) {
+        if (type == null) {
+            return "walking";
+        }
+        return switch (type) {
+            case WALK -> "walking";
+            case RUN -> "running";
+            case CYCLE -> "cycling";
+            case HIKE -> "hiking";
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package highwaystar.io;
+
+import com.google.gson.stream.JsonWriter;
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Streams activities with their notes and routes to a JSON file that {@link JsonImporter}
+ * reads back. Each activity is written as soon as its route has arrived and only a few
+ * route reads are in flight at a time, so memory doesn't grow with the account.
+ *
+ * Layout: {"format": "highwaystar-activities", "version": 1, "exportedAt": ms,
+ * "activities": [{"id", "timestamp", "date", "type", "duration", "steps", "distance",
+ * "calories", "notes", "route": [[lat, lon, timestamp], ...]}, ...]}
+ */
+public class JsonExporter {
+    public static final String FORMAT = "highwaystar-activities";
+    public static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Route reads started ahead of the activity being written
+    private static final int ROUTE_PREFETCH = 8;
+    // Calories are informational; the importer ignores them
+    private static final double CALORIE_WEIGHT_KG = 70.0;
+
+    /**
+     * Writes the activities in the given order, reading each route through routeLoader.
+     * Returns the number of activities written; throws CancellationException if the
+     * listener cancels.
+     */
+    public static int export(List<Activity> activities,
+                             Function<String, CompletableFuture<RouteBuffer>> routeLoader,
+                             Path file, ProgressListener listener) throws IOException {
+        Deque<CompletableFuture<RouteBuffer>> routes = new ArrayDeque<>();
+        int prefetched = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             JsonWriter json = new JsonWriter(new BufferedWriter(
+                 new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            json.beginObject();
+            json.name("format").value(FORMAT);
+            json.name("version").value(VERSION);
+            json.name("exportedAt").value(System.currentTimeMillis());
+            json.name("activities").beginArray();
+
+            for (int i = 0; i < activities.size(); i++) {
+                while (prefetched < activities.size() && prefetched < i + ROUTE_PREFETCH) {
+                    routes.add(routeLoader.apply(activities.get(prefetched++).getActivityId()));
+                }
+                writeActivity(json, activities.get(i), routes.poll().join());
+
+                if (listener != null && !listener.onProgress(i + 1, activities.size())) {
+                    throw new CancellationException("Export cancelled after " + (i + 1) + " activities");
+                }
+            }
+
+            json.endArray();
+            json.endObject();
+        } finally {
+            for (CompletableFuture<RouteBuffer> route : routes) {
+                route.cancel(false);
+            }
+        }
+        return activities.size();
+    }
+
+    private static void writeActivity(JsonWriter json, Activity activity,
+                                      RouteBuffer route) throws IOException {
+        Activity.ActivityType type = activity.getType() != null ? activity.getType() : Activity.ActivityType.WALK;
+
+        json.beginObject();
+        json.name("id").value(activity.getActivityId());
+        json.name("timestamp").value(activity.getTimestamp());
+        json.name("date").value(activity.getDate());
+        json.name("type").value(type.name());
+        json.name("duration").value(activity.getDuration());
+        json.name("steps").value(activity.getSteps());
+        json.name("distance").value(activity.getDistance());
+        json.name("calories").value(Activity.calculateCalories(type, activity.getDuration(), CALORIE_WEIGHT_KG));
+        if (activity.getNotes() != null) {
+            json.name("notes").value(activity.getNotes());
+        }
+
+        json.name("route").beginArray();
+        if (route != null) {
+            for (int i = 0; i < route.size(); i++) {
+                json.beginArray();
+                json.value(route.getLatitude(i));
+                json.value(route.getLongitude(i));
+                json.value(route.getTimestamp(i));
+                json.endArray();
+            }
+        }
+        json.endArray();
+        json.endObject();
+    }
+}
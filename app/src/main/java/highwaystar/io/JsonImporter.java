@@ -0,0 +1,276 @@
+package highwaystar.io;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Restores activities from a file written by {@link JsonExporter}. The file is read one
+ * activity at a time and handed over in batches; the next batch is only read once the
+ * previous one has been written, so memory stays bounded by the batch size.
+ *
+ * Files from the older summary-only export (display type names, no timestamp) are
+ * accepted too; their activities are placed at the start of their date. Only activities are
+ * restored: the export carries no profile or preferences.
+ *
+ * Ids are used as database keys, so an id with a character keys can't hold (. $ # [ ] /
+ * or a control character) is escaped as %XX, the same way on every import, and counted in
+ * {@link Result#getRenamed()}. An empty id gets a new one.
+ */
+public class JsonImporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ACTIVITIES_PER_BATCH = 100;
+    // Batches also end early once they carry this many route points
+    private static final int ROUTE_POINTS_PER_BATCH = 50_000;
+
+    public static class Result {
+        private final int imported;
+        private final int skipped;
+        private final int renamed;
+
+        Result(int imported, int skipped, int renamed) {
+            this.imported = imported;
+            this.skipped = skipped;
+            this.renamed = renamed;
+        }
+
+        public int getImported() { return imported; }
+        // Already present, repeated in the file, or missing both timestamp and date
+        public int getSkipped() { return skipped; }
+        // Imported under an escaped id because the original couldn't be a database key
+        public int getRenamed() { return renamed; }
+    }
+
+    /**
+     * Reads the file and passes its activities to batchWriter, skipping ids in existingIds.
+     * Progress is reported in bytes read; throws CancellationException if the listener cancels.
+     */
+    public static Result importFile(Path file, Set<String> existingIds,
+                                    Function<List<Activity>, CompletableFuture<Void>> batchWriter,
+                                    ProgressListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            CountingInputStream counter = new CountingInputStream(Channels.newInputStream(channel));
+            try (JsonReader json = new JsonReader(new BufferedReader(
+                    new InputStreamReader(counter, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+                return new JsonImporter(existingIds, batchWriter, listener, counter, size).read(json);
+            }
+        }
+    }
+
+    private final Set<String> existingIds;
+    private final Function<List<Activity>, CompletableFuture<Void>> batchWriter;
+    private final ProgressListener listener;
+    private final CountingInputStream counter;
+    private final long size;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Set<String> seenIds = new HashSet<>();
+    private final Set<String> renamedIds = new HashSet<>();
+
+    private List<Activity> batch = new ArrayList<>();
+    private int batchPoints;
+    private int imported;
+    private int skipped;
+    private int renamed;
+
+    private JsonImporter(Set<String> existingIds, Function<List<Activity>, CompletableFuture<Void>> batchWriter,
+                         ProgressListener listener, CountingInputStream counter, long size) {
+        this.existingIds = existingIds;
+        this.batchWriter = batchWriter;
+        this.listener = listener;
+        this.counter = counter;
+        this.size = size;
+    }
+
+    private Result read(JsonReader json) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (name.equals("version")) {
+                int version = json.nextInt();
+                if (version > JsonExporter.VERSION) {
+                    throw new IOException("Export version " + version + " is newer than this app supports");
+                }
+            } else if (name.equals("activities")) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    accept(readActivity(json));
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        flush();
+        return new Result(imported, skipped, renamed);
+    }
+
+    private void accept(Activity activity) {
+        String activityId = activity != null ? activity.getActivityId() : null;
+        if (activity == null || (activityId != null && (existingIds.contains(activityId) || !seenIds.add(activityId)))) {
+            skipped++;
+            return;
+        }
+        if (activityId != null && renamedIds.contains(activityId)) {
+            renamed++;
+        }
+        batch.add(activity);
+        batchPoints += activity.getRoute().size();
+        if (batch.size() >= ACTIVITIES_PER_BATCH || batchPoints >= ROUTE_POINTS_PER_BATCH) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (!batch.isEmpty()) {
+            // Waiting here is the backpressure: nothing more is parsed until the write lands
+            batchWriter.apply(batch).join();
+            imported += batch.size();
+            batch = new ArrayList<>();
+            batchPoints = 0;
+        }
+        if (listener != null && !listener.onProgress(counter.getCount(), size)) {
+            throw new CancellationException("Import cancelled after " + imported + " activities");
+        }
+    }
+
+    // Null if the activity can't be placed in time
+    private Activity readActivity(JsonReader json) throws IOException {
+        Activity activity = new Activity();
+        Long timestamp = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id" -> activity.setActivityId(storableId(json.nextString()));
+                case "timestamp" -> timestamp = json.nextLong();
+                case "date" -> activity.setDate(json.nextString());
+                case "type" -> activity.setType(parseType(json.nextString()));
+                case "duration" -> activity.setDuration(json.nextInt());
+                case "steps" -> activity.setSteps(json.nextInt());
+                case "distance" -> activity.setDistance(json.nextDouble());
+                case "notes" -> activity.setNotes(json.nextString());
+                case "route" -> readRoute(json, activity.getRoute());
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (timestamp == null) {
+            if (activity.getDate() == null) {
+                return null;
+            }
+            timestamp = LocalDate.parse(activity.getDate()).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        activity.setTimestamp(timestamp);
+        if (activity.getType() == null) {
+            activity.setType(Activity.ActivityType.WALK);
+        }
+        return activity;
+    }
+
+    // Null for an empty id, so the repository assigns one
+    private String storableId(String activityId) {
+        if (activityId.isEmpty()) {
+            return null;
+        }
+        if (activityId.chars().noneMatch(JsonImporter::isForbidden)) {
+            return activityId;
+        }
+        // % is escaped too so two escaped ids can't end up the same
+        StringBuilder escaped = new StringBuilder();
+        for (char c : activityId.toCharArray()) {
+            if (isForbidden(c) || c == '%') {
+                escaped.append(String.format("%%%02X", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        renamedIds.add(escaped.toString());
+        return escaped.toString();
+    }
+
+    private static boolean isForbidden(int c) {
+        return c < 0x20 || c == 0x7f || ".$#[]/".indexOf(c) >= 0;
+    }
+
+    private static void readRoute(JsonReader json, RouteBuffer route) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            json.beginArray();
+            double latitude = json.nextDouble();
+            double longitude = json.nextDouble();
+            long timestamp = json.nextLong();
+            while (json.hasNext()) {
+                json.skipValue();
+            }
+            json.endArray();
+            route.add(latitude, longitude, timestamp);
+        }
+        json.endArray();
+    }
+
+    // Current exports use the enum name, older ones the display name
+    private static Activity.ActivityType parseType(String value) {
+        for (Activity.ActivityType type : Activity.ActivityType.values()) {
+            if (type.name().equalsIgnoreCase(value) || type.getDisplayName().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        return Activity.ActivityType.WALK;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
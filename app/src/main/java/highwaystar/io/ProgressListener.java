@@ -0,0 +1,9 @@
+package highwaystar.io;
+
+/**
+ * Progress callback for long-running exports and imports. Called from the worker thread.
+ */
+public interface ProgressListener {
+    // Returning false cancels the operation
+    boolean onProgress(long done, long total);
+}
@@ -0,0 +1,60 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+
+/**
+ * Writes one activity as a Garmin Training Center (TCX v2) activity with a single lap.
+ */
+public class TcxWriter {
+    // Roughly what one Trackpoint takes
+    private static final int BYTES_PER_POINT = 200;
+    // Same reference weight as the CSV export
+    private static final double CALORIE_WEIGHT_KG = 70.0;
+
+    public static byte[] write(Activity activity, RouteBuffer route) {
+        Activity.ActivityType type = activity.getType() != null ? activity.getType() : Activity.ActivityType.WALK;
+
+        XmlBuffer xml = new XmlBuffer(1024 + route.size() * BYTES_PER_POINT);
+        xml.ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .ascii("<TrainingCenterDatabase xmlns=\"http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2\">\n")
+            .ascii(" <Activities>\n")
+            .ascii("  <Activity Sport=\"").ascii(sport(type)).ascii("\">\n")
+            .ascii("   <Id>").time(activity.getTimestamp()).ascii("</Id>\n");
+
+        // Element order is fixed by the schema
+        xml.ascii("   <Lap StartTime=\"").time(activity.getTimestamp()).ascii("\">\n")
+            .ascii("    <TotalTimeSeconds>").number(activity.getDuration()).ascii("</TotalTimeSeconds>\n")
+            .ascii("    <DistanceMeters>").number(Math.round(activity.getDistance() * 1000)).ascii("</DistanceMeters>\n")
+            .ascii("    <Calories>").number(Activity.calculateCalories(type, activity.getDuration(), CALORIE_WEIGHT_KG)).ascii("</Calories>\n")
+            .ascii("    <Intensity>Active</Intensity>\n")
+            .ascii("    <TriggerMethod>Manual</TriggerMethod>\n")
+            .ascii("    <Track>\n");
+
+        for (int i = 0; i < route.size(); i++) {
+            xml.ascii("     <Trackpoint><Time>").time(route.getTimestamp(i))
+                .ascii("</Time><Position><LatitudeDegrees>").coordinateE6(route.getLatitudeE6(i))
+                .ascii("</LatitudeDegrees><LongitudeDegrees>").coordinateE6(route.getLongitudeE6(i))
+                .ascii("</LongitudeDegrees></Position></Trackpoint>\n");
+        }
+
+        xml.ascii("    </Track>\n")
+            .ascii("   </Lap>\n");
+        if (activity.getNotes() != null && !activity.getNotes().isEmpty()) {
+            xml.ascii("   <Notes>").text(activity.getNotes()).ascii("</Notes>\n");
+        }
+        xml.ascii("  </Activity>\n")
+            .ascii(" </Activities>\n")
+            .ascii("</TrainingCenterDatabase>\n");
+        return xml.toByteArray();
+    }
+
+    // The schema only knows these three sports
+    static String sport(Activity.ActivityType type) {
+        return switch (type) {
+            case RUN -> "Running";
+            case CYCLE -> "Biking";
+            case WALK, HIKE -> "Other";
+        };
+    }
+}
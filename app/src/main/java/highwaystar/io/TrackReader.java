@@ -0,0 +1,342 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import highwaystar.utils.DistanceCalculator;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.OffsetDateTime;
+import java.time.Year;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Reads a GPX or TCX file into one activity. The file is pulled through StAX and track
+ * points go straight into a {@link RouteBuffer}, so no document tree or per-point objects
+ * are built. Every track, segment and lap of the file ends up in the same activity.
+ *
+ * Distance comes from the geometry, not from any totals in the file. Steps are
+ * estimated from that distance with the activity type's stride.
+ */
+public class TrackReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        // Track files never need a DTD, and resolving external entities would let a file read local paths
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    public static Activity read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads a GPX or TCX document; the format is recognised from the root element.
+     * The stream is not closed.
+     */
+    public static Activity read(InputStream in) throws IOException {
+        XMLStreamReader xml = null;
+        try {
+            xml = INPUT_FACTORY.createXMLStreamReader(in);
+            return new TrackReader().parse(xml);
+        } catch (XMLStreamException e) {
+            throw new IOException("Not a readable GPX or TCX file: " + e.getMessage(), e);
+        } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+
+    private RouteBuffer route = new RouteBuffer(1024);
+    // Index of the first point of each track segment; distance isn't measured across the gaps
+    private int[] segmentStarts = new int[8];
+    private int segments;
+    private boolean segmentStart = true;
+    // Points read before the first timestamp, given one once it is known
+    private int untimed;
+    private long lastTime = Long.MIN_VALUE;
+
+    private Activity.ActivityType type;
+    private String notes;
+    // Declared start (GPX metadata, TCX Id or lap), used when no point has a time
+    private Long startTime;
+    private long lapSeconds;
+
+    private Activity parse(XMLStreamReader xml) throws XMLStreamException, IOException {
+        String root = null;
+        boolean inPoint = false;
+        double pointLatitude = Double.NaN;
+        double pointLongitude = Double.NaN;
+        Long pointTime = null;
+
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = xml.getLocalName();
+                if (inPoint && (name.equals("trkpt") || name.equals("rtept") || name.equals("Trackpoint"))) {
+                    // TCX pauses are written as trackpoints without a position
+                    if (!Double.isNaN(pointLatitude) && !Double.isNaN(pointLongitude)) {
+                        addPoint(pointLatitude, pointLongitude, pointTime);
+                    }
+                    inPoint = false;
+                }
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            String name = xml.getLocalName();
+            if (root == null) {
+                root = name;
+                if (!root.equals("gpx") && !root.equals("TrainingCenterDatabase")) {
+                    throw new IOException("Not a GPX or TCX file: root element is <" + root + ">");
+                }
+                continue;
+            }
+
+            if (inPoint) {
+                switch (name) {
+                    case "time", "Time" -> pointTime = parseTime(xml.getElementText());
+                    case "LatitudeDegrees" -> pointLatitude = parseCoordinate(xml.getElementText());
+                    case "LongitudeDegrees" -> pointLongitude = parseCoordinate(xml.getElementText());
+                    default -> { }
+                }
+                continue;
+            }
+
+            switch (name) {
+                case "trkpt", "rtept" -> {
+                    inPoint = true;
+                    pointLatitude = parseCoordinate(xml.getAttributeValue(null, "lat"));
+                    pointLongitude = parseCoordinate(xml.getAttributeValue(null, "lon"));
+                    pointTime = null;
+                }
+                case "Trackpoint" -> {
+                    inPoint = true;
+                    pointLatitude = Double.NaN;
+                    pointLongitude = Double.NaN;
+                    pointTime = null;
+                }
+                case "trk", "trkseg", "rte", "Track" -> segmentStart = true;
+                // GPX metadata time or TCX activity id
+                case "time", "Id" -> {
+                    Long time = parseTime(xml.getElementText());
+                    if (startTime == null) {
+                        startTime = time;
+                    }
+                }
+                case "type" -> setType(parseType(xml.getElementText()));
+                case "Activity" -> setType(parseType(xml.getAttributeValue(null, "Sport")));
+                case "Lap" -> {
+                    Long time = parseTime(xml.getAttributeValue(null, "StartTime"));
+                    if (startTime == null) {
+                        startTime = time;
+                    }
+                }
+                case "TotalTimeSeconds" -> lapSeconds += Math.round(parseNumber(xml.getElementText()));
+                case "desc", "Notes" -> {
+                    String text = xml.getElementText().trim();
+                    if (notes == null && !text.isEmpty()) {
+                        notes = text;
+                    }
+                }
+                default -> { }
+            }
+        }
+        if (root == null) {
+            throw new IOException("Empty file");
+        }
+        return toActivity();
+    }
+
+    // The first recognised type wins
+    private void setType(Activity.ActivityType parsed) {
+        if (type == null) {
+            type = parsed;
+        }
+    }
+
+    private void addPoint(double latitude, double longitude, Long time) {
+        if (segmentStart) {
+            if (segments == segmentStarts.length) {
+                segmentStarts = Arrays.copyOf(segmentStarts, segments * 2);
+            }
+            segmentStarts[segments++] = route.size();
+            segmentStart = false;
+        }
+
+        if (time != null && lastTime == Long.MIN_VALUE && untimed > 0) {
+            route = retimed(route, time);
+        }
+        if (time != null) {
+            lastTime = time;
+        } else if (lastTime == Long.MIN_VALUE) {
+            untimed++;
+        }
+        // Untimed points inherit the previous time
+        route.add(latitude, longitude, lastTime != Long.MIN_VALUE ? lastTime : 0);
+    }
+
+    // Rare: a file whose first points have no time
+    private static RouteBuffer retimed(RouteBuffer route, long time) {
+        RouteBuffer copy = new RouteBuffer(Math.max(1024, route.size() * 2));
+        for (int i = 0; i < route.size(); i++) {
+            copy.addE6(route.getLatitudeE6(i), route.getLongitudeE6(i), time);
+        }
+        return copy;
+    }
+
+    private Activity toActivity() throws IOException {
+        long firstTime = untimed < route.size() ? route.getTimestamp(untimed) : Long.MIN_VALUE;
+
+        // Some tools stamp the metadata with the export time, so the first point wins
+        long start = firstTime != Long.MIN_VALUE ? firstTime : (startTime != null ? startTime : Long.MIN_VALUE);
+        if (start == Long.MIN_VALUE) {
+            throw new IOException("File has no timestamps");
+        }
+        if (route.isEmpty() && lapSeconds == 0) {
+            throw new IOException("File has no track points");
+        }
+        if (firstTime == Long.MIN_VALUE) {
+            route = retimed(route, start);
+        }
+
+        double distance = 0;
+        for (int i = 0; i < segments; i++) {
+            int end = i + 1 < segments ? segmentStarts[i + 1] : route.size();
+            distance += DistanceCalculator.calculateDistance(route, segmentStarts[i], end);
+        }
+
+        Activity activity = new Activity();
+        activity.setType(type != null ? type : Activity.ActivityType.WALK);
+        activity.setTimestamp(start);
+        activity.setNotes(notes);
+        activity.setDistance(distance);
+        activity.setSteps((int) Math.round(distance / activity.getType().getDistancePerStep()));
+        // Lap time excludes pauses, so it is preferred over the span of the points
+        long seconds = lapSeconds > 0 ? lapSeconds :
+            (firstTime != Long.MIN_VALUE ? (lastTime - firstTime) / 1000 : 0);
+        activity.setDuration((int) Math.min(Integer.MAX_VALUE, Math.max(0, seconds)));
+
+        route.trimToSize();
+        activity.setRoute(route);
+        return activity;
+    }
+
+    // Null if the text isn't a date-time; times without an offset are taken as UTC
+    static Long parseTime(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        text = text.trim();
+        long utc = parseUtcTime(text);
+        if (utc != Long.MIN_VALUE) {
+            return utc;
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC).toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    // Fast path for yyyy-MM-ddTHH:mm:ss[.SSS]Z, which nearly every device writes on every point;
+    // Long.MIN_VALUE for anything else
+    private static long parseUtcTime(String text) {
+        int length = text.length();
+        if ((length != 20 && length != 24) || text.charAt(length - 1) != 'Z' || text.charAt(4) != '-'
+                || text.charAt(7) != '-' || text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':'
+                || (length == 24 && text.charAt(19) != '.')) {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        int millis = length == 24 ? digits(text, 20, 3) : 0;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || (day > 28 && day > Month.of(month).length(Year.isLeap(year)))
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return Long.MIN_VALUE;
+        }
+        long epochDay = LocalDate.of(year, month, day).toEpochDay();
+        return ((epochDay * 24 + hour) * 60 + minute) * 60_000L + second * 1000L + millis;
+    }
+
+    // -1 unless all characters are digits
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static double parseCoordinate(String text) {
+        double value = parseNumber(text);
+        return Double.isInfinite(value) ? Double.NaN : value;
+    }
+
+    private static double parseNumber(String text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // GPX types are free-form; TCX sports are Running, Biking or Other
+    private static Activity.ActivityType parseType(String value) {
+        if (value == null) {
+            return null;
+        }
+        String lower = value.trim().toLowerCase();
+        if (lower.contains("run")) {
+            return Activity.ActivityType.RUN;
+        }
+        if (lower.contains("cycl") || lower.contains("bik") || lower.contains("ride")) {
+            return Activity.ActivityType.CYCLE;
+        }
+        if (lower.contains("hik")) {
+            return Activity.ActivityType.HIKE;
+        }
+        if (lower.contains("walk")) {
+            return Activity.ActivityType.WALK;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,152 @@
+package highwaystar.io;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Growable UTF-8 byte buffer for the GPX and TCX writers. Markup is appended as ASCII
+ * and values are formatted straight into the buffer, which keeps serializing a long
+ * route free of per-point strings.
+ */
+final class XmlBuffer {
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // Years outside this range fall back to Instant.toString
+    private static final long MIN_EPOCH_DAY = LocalDate.of(1000, 1, 1).toEpochDay();
+    private static final long MAX_EPOCH_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+
+    private byte[] buffer;
+    private int size;
+    // yyyy-MM-ddT of the last formatted time; route points rarely cross midnight
+    private final byte[] day = new byte[11];
+    private long dayEpochDay = Long.MIN_VALUE;
+
+    XmlBuffer(int capacity) {
+        buffer = new byte[Math.max(capacity, 64)];
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    // Markup only; no escaping
+    XmlBuffer ascii(String markup) {
+        ensure(markup.length());
+        for (int i = 0; i < markup.length(); i++) {
+            buffer[size++] = (byte) markup.charAt(i);
+        }
+        return this;
+    }
+
+    // Escaped character data or attribute value; control characters XML 1.0 can't carry are dropped
+    XmlBuffer text(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(bytes.length * 6);
+        for (byte b : bytes) {
+            switch (b) {
+                case '&' -> put("&amp;");
+                case '<' -> put("&lt;");
+                case '>' -> put("&gt;");
+                case '"' -> put("&quot;");
+                case '\t', '\n', '\r' -> buffer[size++] = b;
+                default -> {
+                    if (b < 0 || b >= 0x20) {
+                        buffer[size++] = b;
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    XmlBuffer number(long value) {
+        return ascii(Long.toString(value));
+    }
+
+    // Microdegrees as fixed six decimals (about 0.1 m); Double.toString would switch to exponent
+    // notation for small values, which xsd:decimal doesn't allow
+    XmlBuffer coordinateE6(long micro) {
+        ensure(24);
+        if (micro < 0) {
+            buffer[size++] = '-';
+            micro = -micro;
+        }
+        long whole = micro / 1_000_000;
+        if (whole >= 1000) {
+            ascii(Long.toString(whole));
+        } else {
+            if (whole >= 100) buffer[size++] = (byte) ('0' + whole / 100);
+            if (whole >= 10) buffer[size++] = (byte) ('0' + whole / 10 % 10);
+            buffer[size++] = (byte) ('0' + whole % 10);
+        }
+        buffer[size++] = '.';
+        int fraction = (int) (micro % 1_000_000);
+        for (int divisor = 100_000; divisor > 0; divisor /= 10) {
+            buffer[size++] = (byte) ('0' + fraction / divisor % 10);
+        }
+        return this;
+    }
+
+    // xsd:dateTime in UTC, in the same form as Instant.toString (milliseconds only when set)
+    XmlBuffer time(long epochMillis) {
+        long epochDay = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        if (epochDay < MIN_EPOCH_DAY || epochDay > MAX_EPOCH_DAY) {
+            return ascii(Instant.ofEpochMilli(epochMillis).toString());
+        }
+        if (epochDay != dayEpochDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            int year = date.getYear();
+            day[0] = (byte) ('0' + year / 1000);
+            day[1] = (byte) ('0' + year / 100 % 10);
+            day[2] = (byte) ('0' + year / 10 % 10);
+            day[3] = (byte) ('0' + year % 10);
+            day[4] = '-';
+            day[5] = (byte) ('0' + date.getMonthValue() / 10);
+            day[6] = (byte) ('0' + date.getMonthValue() % 10);
+            day[7] = '-';
+            day[8] = (byte) ('0' + date.getDayOfMonth() / 10);
+            day[9] = (byte) ('0' + date.getDayOfMonth() % 10);
+            day[10] = 'T';
+            dayEpochDay = epochDay;
+        }
+        ensure(day.length + 13);
+        System.arraycopy(day, 0, buffer, size, day.length);
+        size += day.length;
+
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        int seconds = millisOfDay / 1000;
+        two(seconds / 3600);
+        buffer[size++] = ':';
+        two(seconds / 60 % 60);
+        buffer[size++] = ':';
+        two(seconds % 60);
+        int millis = millisOfDay % 1000;
+        if (millis != 0) {
+            buffer[size++] = '.';
+            buffer[size++] = (byte) ('0' + millis / 100);
+            buffer[size++] = (byte) ('0' + millis / 10 % 10);
+            buffer[size++] = (byte) ('0' + millis % 10);
+        }
+        buffer[size++] = 'Z';
+        return this;
+    }
+
+    private void two(int value) {
+        buffer[size++] = (byte) ('0' + value / 10);
+        buffer[size++] = (byte) ('0' + value % 10);
+    }
+
+    // Caller has already reserved room
+    private void put(String entity) {
+        for (int i = 0; i < entity.length(); i++) {
+            buffer[size++] = (byte) entity.charAt(i);
+        }
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package highwaystar.models;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class Activity {
     private String activityId;
     private String userId;
@@ -12,7 +9,8 @@ public class Activity {
     private int duration; // in seconds
     private int steps;
     private double distance; // in kilometers
-    private List<RoutePoint> route;
+    private RouteBuffer route;
+    private RouteBuffer overview; // simplified route kept with the summary; null if not stored
     private String notes;
 
     public enum ActivityType {
@@ -36,30 +34,8 @@ public class Activity {
         public String getIcon() { return icon; }
     }
 
-    public static class RoutePoint {
-        private double latitude;
-        private double longitude;
-        private long timestamp;
-
-        public RoutePoint() {}
-
-        public RoutePoint(double latitude, double longitude, long timestamp) {
-            this.latitude = latitude;
-            this.longitude = longitude;
-            this.timestamp = timestamp;
-        }
-
-        // Getters and setters
-        public double getLatitude() { return latitude; }
-        public void setLatitude(double latitude) { this.latitude = latitude; }
-        public double getLongitude() { return longitude; }
-        public void setLongitude(double longitude) { this.longitude = longitude; }
-        public long getTimestamp() { return timestamp; }
-        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
-    }
-
     public Activity() {
-        this.route = new ArrayList<>();
+        this.route = new RouteBuffer();
     }
 
     public Activity(String userId, ActivityType type) {
@@ -94,14 +70,17 @@ public class Activity {
     public double getDistance() { return distance; }
     public void setDistance(double distance) { this.distance = distance; }
 
-    public List<RoutePoint> getRoute() { return route; }
-    public void setRoute(List<RoutePoint> route) { this.route = route; }
+    public RouteBuffer getRoute() { return route; }
+    public void setRoute(RouteBuffer route) { this.route = route; }
+
+    public RouteBuffer getOverview() { return overview; }
+    public void setOverview(RouteBuffer overview) { this.overview = overview; }
 
     public String getNotes() { return notes; }
     public void setNotes(String notes) { this.notes = notes; }
 
     public void addRoutePoint(double lat, double lon) {
-        route.add(new RoutePoint(lat, lon, System.currentTimeMillis()));
+        route.add(lat, lon, System.currentTimeMillis());
     }
 
     public double calculatePace() {
@@ -110,6 +89,10 @@ public class Activity {
     }
 
     public int calculateCalories(double weightKg) {
+        return calculateCalories(type, duration, weightKg);
+    }
+
+    public static int calculateCalories(ActivityType type, int duration, double weightKg) {
         // Rough estimation based on activity type
         double met = switch (type) {
             case WALK -> 3.5;
@@ -0,0 +1,241 @@
+package highwaystar.models;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A growable route held in parallel primitive arrays: latitude and longitude as
+ * microdegrees, and timestamps as millisecond offsets from the first point. A point takes
+ * 12 bytes instead of the ~44 of a point object and its list slot, and reading one back
+ * allocates nothing. Microdegrees (about 0.1 m) are the precision routes have always been
+ * stored with, so keeping them in memory that way loses nothing.
+ *
+ * A route can also be a read-only {@link #view(ByteBuffer) view} over a direct or mapped
+ * buffer holding its {@link #writeTo(ByteBuffer) binary layout}, in which case its points
+ * stay off the Java heap and are read in place.
+ *
+ * Not thread-safe; a route is filled by one thread and only read once it is shared.
+ */
+public final class RouteBuffer {
+    private static final double MICRODEGREES = 1e6;
+    private static final int DEFAULT_CAPACITY = 16;
+    // Point count, wide-times flag and base time ahead of the arrays
+    private static final int HEADER_BYTES = 16;
+
+    // Heap routes wrap arrays; views wrap slices of a ByteBuffer
+    private IntBuffer latitudes;
+    private IntBuffer longitudes;
+    // Offsets from baseTime; replaced by times once a point is more than ~24 days away
+    private IntBuffer timeOffsets;
+    private LongBuffer times;
+    private long baseTime;
+    private int size;
+
+    public RouteBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RouteBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        latitudes = IntBuffer.wrap(new int[capacity]);
+        longitudes = IntBuffer.wrap(new int[capacity]);
+        timeOffsets = IntBuffer.wrap(new int[capacity]);
+    }
+
+    private RouteBuffer(IntBuffer latitudes, IntBuffer longitudes, IntBuffer timeOffsets, LongBuffer times,
+                        long baseTime, int size) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.timeOffsets = timeOffsets;
+        this.times = times;
+        this.baseTime = baseTime;
+        this.size = size;
+    }
+
+    /**
+     * Wraps a route written by {@link #writeTo(ByteBuffer)}, starting at the buffer's position
+     * and read in its byte order. Nothing is copied: the route reads the buffer's memory and is
+     * read-only.
+     */
+    public static RouteBuffer view(ByteBuffer source) {
+        ByteOrder order = source.order();
+        ByteBuffer bytes = source.slice().asReadOnlyBuffer().order(order);
+        if (bytes.remaining() < HEADER_BYTES) {
+            throw new IllegalArgumentException("Truncated route: " + bytes.remaining() + " bytes");
+        }
+        int size = bytes.getInt(0);
+        boolean wide = bytes.getInt(4) != 0;
+        long baseTime = bytes.getLong(8);
+        if (size < 0 || byteSize(size, wide) > bytes.remaining()) {
+            throw new IllegalArgumentException("Truncated route: " + size + " points in " + bytes.remaining() + " bytes");
+        }
+
+        int arrayBytes = size * Integer.BYTES;
+        IntBuffer latitudes = bytes.slice(HEADER_BYTES, arrayBytes).order(order).asIntBuffer();
+        IntBuffer longitudes = bytes.slice(HEADER_BYTES + arrayBytes, arrayBytes).order(order).asIntBuffer();
+        int timesAt = HEADER_BYTES + 2 * arrayBytes;
+        if (wide) {
+            LongBuffer times = bytes.slice(timesAt, size * Long.BYTES).order(order).asLongBuffer();
+            return new RouteBuffer(latitudes, longitudes, null, times, baseTime, size);
+        }
+        IntBuffer timeOffsets = bytes.slice(timesAt, arrayBytes).order(order).asIntBuffer();
+        return new RouteBuffer(latitudes, longitudes, timeOffsets, null, baseTime, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * True for views over a buffer, which can't be added to.
+     */
+    public boolean isReadOnly() {
+        return latitudes.isReadOnly();
+    }
+
+    public void add(double latitude, double longitude, long timestamp) {
+        addE6(toE6(latitude), toE6(longitude), timestamp);
+    }
+
+    public void addE6(int latitudeE6, int longitudeE6, long timestamp) {
+        if (isReadOnly()) {
+            throw new UnsupportedOperationException("Route is a read-only view");
+        }
+        if (size == latitudes.capacity()) {
+            grow(size + 1);
+        }
+        if (size == 0) {
+            baseTime = timestamp;
+        }
+        latitudes.put(size, latitudeE6);
+        longitudes.put(size, longitudeE6);
+        if (times == null) {
+            long offset = timestamp - baseTime;
+            if (offset == (int) offset) {
+                timeOffsets.put(size, (int) offset);
+            } else {
+                widenTimes();
+                times.put(size, timestamp);
+            }
+        } else {
+            times.put(size, timestamp);
+        }
+        size++;
+    }
+
+    public double getLatitude(int index) {
+        return latitudes.get(Objects.checkIndex(index, size)) / MICRODEGREES;
+    }
+
+    public double getLongitude(int index) {
+        return longitudes.get(Objects.checkIndex(index, size)) / MICRODEGREES;
+    }
+
+    public int getLatitudeE6(int index) {
+        return latitudes.get(Objects.checkIndex(index, size));
+    }
+
+    public int getLongitudeE6(int index) {
+        return longitudes.get(Objects.checkIndex(index, size));
+    }
+
+    public long getTimestamp(int index) {
+        Objects.checkIndex(index, size);
+        return times != null ? times.get(index) : baseTime + timeOffsets.get(index);
+    }
+
+    /**
+     * A heap copy of exactly this route's points, also for views.
+     */
+    public RouteBuffer copy() {
+        int capacity = Math.max(size, 1);
+        int[] latitudeCopy = new int[capacity];
+        int[] longitudeCopy = new int[capacity];
+        latitudes.get(0, latitudeCopy, 0, size);
+        longitudes.get(0, longitudeCopy, 0, size);
+        if (times != null) {
+            long[] timeCopy = new long[capacity];
+            times.get(0, timeCopy, 0, size);
+            return new RouteBuffer(IntBuffer.wrap(latitudeCopy), IntBuffer.wrap(longitudeCopy), null,
+                LongBuffer.wrap(timeCopy), baseTime, size);
+        }
+        int[] offsetCopy = new int[capacity];
+        timeOffsets.get(0, offsetCopy, 0, size);
+        return new RouteBuffer(IntBuffer.wrap(latitudeCopy), IntBuffer.wrap(longitudeCopy),
+            IntBuffer.wrap(offsetCopy), null, baseTime, size);
+    }
+
+    /**
+     * Drops spare capacity, for routes that are kept once fully loaded.
+     */
+    public void trimToSize() {
+        if (!isReadOnly() && size < latitudes.capacity()) {
+            resize(Math.max(size, 1));
+        }
+    }
+
+    /**
+     * Bytes {@link #writeTo(ByteBuffer)} will write.
+     */
+    public int byteSize() {
+        return (int) byteSize(size, times != null);
+    }
+
+    /**
+     * Writes the route at the buffer's position, in its byte order, and advances the position:
+     * the point count, a wide-times flag and the base time, then the latitude, longitude and
+     * time arrays back to back. Arrays start 8-byte aligned if the route does.
+     */
+    public void writeTo(ByteBuffer target) {
+        target.putInt(size).putInt(times != null ? 1 : 0).putLong(baseTime);
+        target.asIntBuffer().put(latitudes.slice(0, size)).put(longitudes.slice(0, size));
+        target.position(target.position() + 2 * size * Integer.BYTES);
+        if (times != null) {
+            target.asLongBuffer().put(times.slice(0, size));
+            target.position(target.position() + size * Long.BYTES);
+        } else {
+            target.asIntBuffer().put(timeOffsets.slice(0, size));
+            target.position(target.position() + size * Integer.BYTES);
+        }
+    }
+
+    public static int toE6(double degrees) {
+        return (int) Math.round(degrees * MICRODEGREES);
+    }
+
+    private static long byteSize(int size, boolean wide) {
+        return HEADER_BYTES + (long) size * (wide ? 2 * Integer.BYTES + Long.BYTES : 3 * Integer.BYTES);
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = latitudes.capacity();
+        resize(Math.max(minCapacity, capacity + (capacity >> 1)));
+    }
+
+    private void resize(int capacity) {
+        latitudes = IntBuffer.wrap(Arrays.copyOf(latitudes.array(), capacity));
+        longitudes = IntBuffer.wrap(Arrays.copyOf(longitudes.array(), capacity));
+        if (times != null) {
+            times = LongBuffer.wrap(Arrays.copyOf(times.array(), capacity));
+        } else {
+            timeOffsets = IntBuffer.wrap(Arrays.copyOf(timeOffsets.array(), capacity));
+        }
+    }
+
+    private void widenTimes() {
+        long[] widened = new long[latitudes.capacity()];
+        for (int i = 0; i < size; i++) {
+            widened[i] = baseTime + timeOffsets.get(i);
+        }
+        times = LongBuffer.wrap(widened);
+        timeOffsets = null;
+    }
+}
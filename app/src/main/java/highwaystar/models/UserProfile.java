@@ -14,6 +14,7 @@ public class UserProfile {
     private int totalActivities;
     private int currentStreak;
     private int longestStreak;
+    private String lastActiveDate; // yyyy-MM-dd of the newest day in the current streak
     private long memberSince;
     private Map<String, Integer> achievements;
     private UserPreferences preferences;
@@ -64,6 +65,41 @@ public class UserProfile {
         this.memberSince = System.currentTimeMillis();
     }
 
+    /**
+     * A copy that shares nothing mutable with this profile. Missing achievements or
+     * preferences come back as the defaults.
+     */
+    public UserProfile copy() {
+        UserProfile copy = new UserProfile();
+        copy.uid = uid;
+        copy.email = email;
+        copy.displayName = displayName;
+        copy.weight = weight;
+        copy.height = height;
+        copy.totalSteps = totalSteps;
+        copy.totalDistance = totalDistance;
+        copy.totalActivities = totalActivities;
+        copy.currentStreak = currentStreak;
+        copy.longestStreak = longestStreak;
+        copy.lastActiveDate = lastActiveDate;
+        copy.memberSince = memberSince;
+        if (achievements != null) {
+            copy.achievements = new HashMap<>(achievements);
+        }
+        if (preferences != null) {
+            UserPreferences prefs = new UserPreferences();
+            prefs.useMetric = preferences.useMetric;
+            prefs.defaultZoom = preferences.defaultZoom;
+            prefs.defaultLat = preferences.defaultLat;
+            prefs.defaultLon = preferences.defaultLon;
+            prefs.dailyStepGoal = preferences.dailyStepGoal;
+            prefs.autoPause = preferences.autoPause;
+            prefs.theme = preferences.theme;
+            copy.preferences = prefs;
+        }
+        return copy;
+    }
+
     // Getters and setters
     public String getUid() { return uid; }
     public void setUid(String uid) { this.uid = uid; }
@@ -95,6 +131,9 @@ public class UserProfile {
     public int getLongestStreak() { return longestStreak; }
     public void setLongestStreak(int longestStreak) { this.longestStreak = longestStreak; }
 
+    public String getLastActiveDate() { return lastActiveDate; }
+    public void setLastActiveDate(String lastActiveDate) { this.lastActiveDate = lastActiveDate; }
+
     public long getMemberSince() { return memberSince; }
     public void setMemberSince(long memberSince) { this.memberSince = memberSince; }
 
@@ -0,0 +1,181 @@
+package highwaystar.repository;
+
+import com.google.firebase.database.DataSnapshot;
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import highwaystar.utils.RouteCodec;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+
+/**
+ * Decodes activities from the plain value tree of a snapshot (one getValue() call)
+ * instead of a child(name).getValue(Class) lookup per field.
+ */
+public class ActivityDecoder {
+    // Below this many activities a parallel decode costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 1024;
+    private static final int SPLIT_SIZE = 512;
+
+    private static final Map<String, BiConsumer<Activity, Object>> FIELDS = new HashMap<>();
+
+    static {
+        FIELDS.put("userId", (activity, value) -> activity.setUserId((String) value));
+        FIELDS.put("timestamp", (activity, value) -> activity.setTimestamp(((Number) value).longValue()));
+        FIELDS.put("date", (activity, value) -> activity.setDate((String) value));
+        FIELDS.put("type", (activity, value) -> activity.setType(Activity.ActivityType.valueOf((String) value)));
+        FIELDS.put("duration", (activity, value) -> activity.setDuration(((Number) value).intValue()));
+        FIELDS.put("steps", (activity, value) -> activity.setSteps(((Number) value).intValue()));
+        FIELDS.put("distance", (activity, value) -> activity.setDistance(((Number) value).doubleValue()));
+        FIELDS.put("notes", (activity, value) -> activity.setNotes((String) value));
+        // Routes live under routes/{activityId}, but accounts that have not been
+        // migrated yet still carry them inline
+        FIELDS.put("route", (activity, value) -> activity.setRoute(decodeRoute(value)));
+        FIELDS.put("overview", (activity, value) -> activity.setOverview(RouteCodec.decode((String) value)));
+    }
+
+    public static Activity decode(DataSnapshot snapshot) {
+        return decode(snapshot.getKey(), snapshot.getValue());
+    }
+
+    public static Activity decode(String activityId, Object value) {
+        if (!(value instanceof Map)) {
+            return null;
+        }
+
+        try {
+            Activity activity = new Activity();
+            activity.setActivityId(activityId);
+            activity.setType(Activity.ActivityType.WALK);
+
+            boolean hasTimestamp = false;
+            for (Map.Entry<?, ?> field : ((Map<?, ?>) value).entrySet()) {
+                BiConsumer<Activity, Object> setter = FIELDS.get(field.getKey());
+                if (setter != null && field.getValue() != null) {
+                    setter.accept(activity, field.getValue());
+                    hasTimestamp |= "timestamp".equals(field.getKey());
+                }
+            }
+            return hasTimestamp ? activity : null;
+        } catch (RuntimeException e) {
+            System.err.println("Skipping malformed activity " + activityId + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes every activity in a snapshot of the activities node (or one of its buckets),
+     * in parallel for large result sets. Malformed children are skipped.
+     */
+    public static List<Activity> decodeAll(DataSnapshot snapshot) {
+        return decodeAll(snapshot.getValue());
+    }
+
+    /**
+     * Same as {@link #decodeAll(DataSnapshot)}, from the snapshot's value tree.
+     */
+    public static List<Activity> decodeAll(Object value) {
+        if (!(value instanceof Map)) {
+            return new ArrayList<>();
+        }
+
+        // Month buckets of the partitioned layout are flattened into their activities
+        List<String> idList = new ArrayList<>();
+        List<Object> valueList = new ArrayList<>();
+        for (Map.Entry<?, ?> child : ((Map<?, ?>) value).entrySet()) {
+            String key = String.valueOf(child.getKey());
+            if (FirebaseService.isActivityBucket(key) && child.getValue() instanceof Map) {
+                for (Map.Entry<?, ?> activity : ((Map<?, ?>) child.getValue()).entrySet()) {
+                    idList.add(String.valueOf(activity.getKey()));
+                    valueList.add(activity.getValue());
+                }
+            } else {
+                idList.add(key);
+                valueList.add(child.getValue());
+            }
+        }
+        String[] ids = idList.toArray(new String[0]);
+        Object[] values = valueList.toArray();
+
+        Activity[] decoded = new Activity[ids.length];
+        // A single-threaded pool only adds the cost of splitting
+        if (ids.length < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            new DecodeRange(ids, values, decoded, 0, ids.length).compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(new DecodeRange(ids, values, decoded, 0, ids.length));
+        }
+
+        List<Activity> activities = new ArrayList<>(decoded.length);
+        for (Activity activity : decoded) {
+            if (activity != null) {
+                activities.add(activity);
+            }
+        }
+        return activities;
+    }
+
+    private static class DecodeRange extends RecursiveAction {
+        private final String[] ids;
+        private final Object[] values;
+        private final Activity[] decoded;
+        private final int from;
+        private final int to;
+
+        DecodeRange(String[] ids, Object[] values, Activity[] decoded, int from, int to) {
+            this.ids = ids;
+            this.values = values;
+            this.decoded = decoded;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_SIZE) {
+                for (int i = from; i < to; i++) {
+                    decoded[i] = decode(ids[i], values[i]);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new DecodeRange(ids, values, decoded, from, mid),
+                new DecodeRange(ids, values, decoded, mid, to));
+        }
+    }
+
+    /**
+     * A route is either a RouteCodec string or, before migration, a list of point maps.
+     */
+    public static RouteBuffer decodeRoute(Object value) {
+        if (value instanceof String) {
+            return RouteCodec.decode((String) value);
+        }
+
+        Collection<?> points;
+        if (value instanceof List) {
+            points = (List<?>) value;
+        } else if (value instanceof Map) {
+            // Sparse arrays come back as maps keyed by index
+            Map<Object, Object> byIndex = new TreeMap<>(Comparator.comparingInt(key -> Integer.parseInt(key.toString())));
+            byIndex.putAll((Map<?, ?>) value);
+            points = byIndex.values();
+        } else {
+            return new RouteBuffer();
+        }
+
+        RouteBuffer route = new RouteBuffer(points.size());
+        for (Object point : points) {
+            if (!(point instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> fields = (Map<?, ?>) point;
+            route.add(
+                ((Number) fields.get("latitude")).doubleValue(),
+                ((Number) fields.get("longitude")).doubleValue(),
+                ((Number) fields.get("timestamp")).longValue());
+        }
+        return route;
+    }
+}
@@ -0,0 +1,17 @@
+package highwaystar.repository;
+
+import highwaystar.models.Activity;
+
+/**
+ * Activities the app already holds for the signed-in user, which backends consult before
+ * reading a summary or its location from storage. Registered through
+ * {@link Repositories#setActivityLookup(ActivityLookup)}.
+ */
+public interface ActivityLookup {
+
+    // Null if the activity isn't held for this user
+    Activity getActivity(String uid, String activityId);
+
+    // The location last reported through ActivityRepository.ChangeListener, or null if unknown
+    String getActivityLocation(String uid, String activityId);
+}
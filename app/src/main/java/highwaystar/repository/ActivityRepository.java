@@ -0,0 +1,73 @@
+package highwaystar.repository;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage for activity summaries, routes and the per-day rollups derived from them.
+ * Summaries returned by this interface carry no route; use {@link #getRoute(String, String)}.
+ */
+public interface ActivityRepository {
+
+    interface ChangeListener {
+        // stored maps location -> activity and removed maps activity id -> location. A location
+        // identifies where the backend keeps the activity; it changes if the activity is moved,
+        // so a removal only applies to the location it names
+        void onActivitiesChanged(Map<String, Activity> stored, Map<String, String> removed);
+        // Every activity stored when watching started has been delivered
+        void onSynced();
+    }
+
+    interface Subscription {
+        void cancel();
+    }
+
+    /**
+     * Brings the user's stored data up to the layout this backend expects.
+     */
+    CompletableFuture<Boolean> prepareUser(String uid);
+
+    /**
+     * Assigns an id if the activity has none, then stores the summary and route and counts
+     * the activity into the profile totals and its daily rollup as one change.
+     */
+    CompletableFuture<String> saveActivity(Activity activity);
+
+    /**
+     * Saves a batch of the user's activities as one change, the same as saving each in turn
+     * but without a round trip per activity. Activities that already have an id keep it; they
+     * must not be stored yet.
+     */
+    CompletableFuture<Void> saveActivities(String uid, List<Activity> activities);
+
+    CompletableFuture<Activity> getActivity(String uid, String activityId);
+
+    CompletableFuture<RouteBuffer> getRoute(String uid, String activityId);
+
+    // Newest first
+    CompletableFuture<List<Activity>> listActivities(String uid);
+
+    // Newest first, both ends inclusive
+    CompletableFuture<List<Activity>> listActivities(String uid, long startTime, long endTime);
+
+    CompletableFuture<Void> updateActivity(Activity activity);
+
+    CompletableFuture<Void> updateNotes(String uid, String activityId, String notes);
+
+    /**
+     * Removes summary and route and takes the activity back out of the totals and rollups.
+     */
+    CompletableFuture<Void> deleteActivity(String uid, String activityId);
+
+    // Steps per yyyy-MM-dd day, both ends inclusive
+    CompletableFuture<Map<String, Integer>> getStepsByDate(String uid, String fromDate, String toDate);
+
+    // yyyy-MM-dd days with at least one activity, oldest first
+    CompletableFuture<List<String>> getActiveDays(String uid);
+
+    Subscription watchActivities(String uid, ChangeListener listener);
+}
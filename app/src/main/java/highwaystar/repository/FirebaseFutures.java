@@ -0,0 +1,53 @@
+package highwaystar.repository;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.firebase.database.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bridges Firebase callbacks to CompletableFuture without parking a thread on the result.
+ * Dependent stages run on the Firebase event thread, so they must not block.
+ */
+public class FirebaseFutures {
+    private static final long READ_TIMEOUT_SECONDS = 10;
+
+    public static CompletableFuture<DataSnapshot> readOnce(Query query) {
+        CompletableFuture<DataSnapshot> future = new CompletableFuture<>();
+        try {
+            query.addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot snapshot) {
+                    future.complete(snapshot);
+                }
+
+                @Override
+                public void onCancelled(DatabaseError error) {
+                    future.completeExceptionally(error.toException());
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future.orTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static <T> CompletableFuture<T> toCompletable(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, Runnable::run);
+        return future;
+    }
+}
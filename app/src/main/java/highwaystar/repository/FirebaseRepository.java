@@ -0,0 +1,580 @@
+package highwaystar.repository;
+
+import com.google.firebase.auth.ExportedUserRecord;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.ListUsersPage;
+import com.google.firebase.database.*;
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import highwaystar.models.UserProfile;
+import highwaystar.utils.DateUtils;
+import highwaystar.utils.RouteCodec;
+import highwaystar.utils.RouteSimplifier;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Realtime Database backend. Layout under users/{uid}: activities (flat or month-bucketed,
+ * see FirebaseService), activityIndex, routes, daily, profile and schemaVersion.
+ */
+public class FirebaseRepository implements ActivityRepository, ProfileRepository {
+    private final FirebaseService firebaseService;
+
+    private static final Set<String> EDITABLE_FIELDS = Set.of(
+        "email", "displayName", "weight", "height", "preferences"
+    );
+
+    public FirebaseRepository() {
+        firebaseService = FirebaseService.getInstance();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> prepareUser(String uid) {
+        return MigrationService.getInstance().migrateUser(uid);
+    }
+
+    @Override
+    public CompletableFuture<String> saveActivity(Activity activity) {
+        return saveActivities(activity.getUserId(), List.of(activity)).thenApply(v -> activity.getActivityId());
+    }
+
+    @Override
+    public CompletableFuture<Void> saveActivities(String uid, List<Activity> activities) {
+        // Save summaries, routes, profile totals and the daily rollups in one atomic write
+        Map<String, Object> updates = new HashMap<>();
+        for (Activity activity : activities) {
+            if (activity.getActivityId() == null) {
+                activity.setActivityId(firebaseService.getActivitiesRef(uid).push().getKey());
+            }
+            String bucket = firebaseService.getNewActivityBucket(activity.getTimestamp());
+            updates.putAll(activityUpdates(activity, firebaseService.getActivityPath(bucket, activity.getActivityId())));
+            if (bucket != null) {
+                updates.put("activityIndex/" + activity.getActivityId(), bucket);
+            }
+        }
+        updates.putAll(statsUpdates(activities, 1));
+
+        return FirebaseFutures.toCompletable(firebaseService.getUserRef(uid).updateChildrenAsync(updates))
+            .thenApply(v -> null);
+    }
+
+    @Override
+    public CompletableFuture<Activity> getActivity(String uid, String activityId) {
+        return locateActivity(uid, activityId).thenCompose(path -> readSummary(uid, activityId, path));
+    }
+
+    @Override
+    public CompletableFuture<RouteBuffer> getRoute(String uid, String activityId) {
+        return FirebaseFutures.readOnce(firebaseService.getRoutesRef(uid).child(activityId))
+            .thenApply(snapshot -> snapshot.exists() ? ActivityDecoder.decodeRoute(snapshot.getValue()) : null);
+    }
+
+    @Override
+    public CompletableFuture<List<Activity>> listActivities(String uid) {
+        return FirebaseFutures.readOnce(firebaseService.getActivitiesRef(uid))
+            .thenApply(snapshot -> newestFirst(ActivityDecoder.decodeAll(snapshot)));
+    }
+
+    @Override
+    public CompletableFuture<List<Activity>> listActivities(String uid, long startTime, long endTime) {
+        List<CompletableFuture<List<Activity>>> reads = new ArrayList<>();
+
+        if (firebaseService.isActivitiesPartitioned()) {
+            // Only the month buckets overlapping the range
+            Query buckets = firebaseService.getActivitiesRef(uid)
+                .orderByKey()
+                .startAt(FirebaseService.getActivityBucket(startTime))
+                .endAt(FirebaseService.getActivityBucket(endTime));
+            reads.add(FirebaseFutures.readOnce(buckets).thenApply(ActivityDecoder::decodeAll));
+        }
+        if (!firebaseService.isActivitiesPartitioned() || firebaseService.isActivitiesDualRead()) {
+            // Served by the ".indexOn": "timestamp" rule in database.rules.json; buckets have
+            // no timestamp child so only flat-layout activities match
+            Query flat = firebaseService.getActivitiesRef(uid)
+                .orderByChild("timestamp")
+                .startAt(startTime)
+                .endAt(endTime);
+            reads.add(FirebaseFutures.readOnce(flat).thenApply(ActivityDecoder::decodeAll));
+        }
+
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<String, Activity> merged = new HashMap<>();
+            for (CompletableFuture<List<Activity>> read : reads) {
+                for (Activity activity : read.join()) {
+                    if (activity.getTimestamp() >= startTime && activity.getTimestamp() <= endTime) {
+                        merged.put(activity.getActivityId(), activity);
+                    }
+                }
+            }
+            return newestFirst(new ArrayList<>(merged.values()));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateActivity(Activity activity) {
+        String uid = activity.getUserId();
+        return locateActivity(uid, activity.getActivityId())
+            .thenCompose(path -> FirebaseFutures.toCompletable(firebaseService.getUserRef(uid)
+                .updateChildrenAsync(activityUpdates(activity, path))))
+            .thenApply(v -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateNotes(String uid, String activityId, String notes) {
+        // Repeated edits within the coalescing window go out as one write
+        return locateActivity(uid, activityId)
+            .thenCompose(path -> WriteBehindQueue.getInstance()
+                .write(firebaseService.getUserPath(uid) + "/" + path + "/notes", notes));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteActivity(String uid, String activityId) {
+        return locateActivity(uid, activityId)
+            .thenCompose(path -> readSummary(uid, activityId, path).thenCompose(activity -> {
+                Map<String, Object> updates = new HashMap<>();
+                updates.put(path, null);
+                updates.put("activityIndex/" + activityId, null);
+                updates.put("routes/" + activityId, null);
+                if (activity != null) {
+                    updates.putAll(statsUpdates(List.of(activity), -1));
+                }
+                // A notes edit still in the coalescing window would otherwise recreate the summary
+                // as a bare {notes} node after the delete
+                CompletableFuture<Void> deleted = new CompletableFuture<>();
+                WriteBehindQueue.getInstance().takePending(firebaseService.getUserPath(uid) + "/" + path, deleted);
+                FirebaseFutures.toCompletable(firebaseService.getUserRef(uid).updateChildrenAsync(updates))
+                    .whenComplete((result, error) -> {
+                        if (error == null) {
+                            deleted.complete(null);
+                        } else {
+                            deleted.completeExceptionally(error);
+                        }
+                    });
+                return deleted;
+            }))
+            .thenApply(v -> null);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getStepsByDate(String uid, String fromDate, String toDate) {
+        // Daily rollups are keyed by yyyy-MM-dd, which sorts chronologically
+        Query query = firebaseService.getDailyRef(uid)
+            .orderByKey()
+            .startAt(fromDate)
+            .endAt(toDate);
+
+        return FirebaseFutures.readOnce(query).thenApply(snapshot -> {
+            Map<String, Integer> stepsByDate = new HashMap<>();
+            for (DataSnapshot day : snapshot.getChildren()) {
+                Long steps = day.child("steps").getValue(Long.class);
+                stepsByDate.put(day.getKey(), steps != null ? steps.intValue() : 0);
+            }
+            return stepsByDate;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getActiveDays(String uid) {
+        return FirebaseFutures.readOnce(firebaseService.getDailyRef(uid).orderByKey()).thenApply(snapshot -> {
+            List<String> days = new ArrayList<>();
+            for (DataSnapshot day : snapshot.getChildren()) {
+                // Deletes leave emptied rollups behind
+                Long count = day.child("activities").getValue(Long.class);
+                if (count != null && count > 0) {
+                    days.add(day.getKey());
+                }
+            }
+            return days;
+        });
+    }
+
+    @Override
+    public Subscription watchActivities(String uid, ChangeListener listener) {
+        DatabaseReference activitiesRef = firebaseService.getActivitiesRef(uid);
+        // Which ids each month bucket held at its last event, to turn bucket events into removals
+        Map<String, Set<String>> idsByBucket = new HashMap<>();
+
+        ChildEventListener childListener = activitiesRef.addChildEventListener(new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                onChild(snapshot);
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                onChild(snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                String key = snapshot.getKey();
+                if (FirebaseService.isActivityBucket(key)) {
+                    replaceBucket(key, Collections.emptyList());
+                } else {
+                    listener.onActivitiesChanged(Collections.emptyMap(),
+                        Map.of(key, firebaseService.getActivityPath(null, key)));
+                }
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // Ordering is up to the listener
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                System.err.println("Activity watch cancelled: " + error.getMessage());
+            }
+
+            // Children are activities in the flat layout and month buckets in the partitioned one
+            private void onChild(DataSnapshot snapshot) {
+                String key = snapshot.getKey();
+                if (FirebaseService.isActivityBucket(key)) {
+                    replaceBucket(key, ActivityDecoder.decodeAll(snapshot));
+                    return;
+                }
+                Activity activity = ActivityDecoder.decode(snapshot);
+                if (activity != null) {
+                    listener.onActivitiesChanged(Map.of(firebaseService.getActivityPath(null, key), activity),
+                        Collections.emptyMap());
+                }
+            }
+
+            // A bucket event carries the whole month, so it is delivered as one change
+            private void replaceBucket(String bucket, List<Activity> activities) {
+                Map<String, Activity> stored = new HashMap<>();
+                Set<String> currentIds = new HashSet<>();
+                for (Activity activity : activities) {
+                    stored.put(firebaseService.getActivityPath(bucket, activity.getActivityId()), activity);
+                    currentIds.add(activity.getActivityId());
+                }
+
+                Map<String, String> removed = new HashMap<>();
+                Set<String> previousIds = currentIds.isEmpty() ?
+                    idsByBucket.remove(bucket) : idsByBucket.put(bucket, currentIds);
+                if (previousIds != null) {
+                    for (String activityId : previousIds) {
+                        if (!currentIds.contains(activityId)) {
+                            removed.put(activityId, firebaseService.getActivityPath(bucket, activityId));
+                        }
+                    }
+                }
+                listener.onActivitiesChanged(stored, removed);
+            }
+        });
+
+        // Value events fire after the initial child events, so this marks the end of the first sync
+        // without downloading the node a second time
+        activitiesRef.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                listener.onSynced();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                System.err.println("Activity initial sync failed: " + error.getMessage());
+            }
+        });
+
+        return () -> activitiesRef.removeEventListener(childListener);
+    }
+
+    @Override
+    public CompletableFuture<Void> createProfile(UserProfile profile) {
+        return FirebaseFutures.toCompletable(
+            firebaseService.getProfileRef(profile.getUid()).setValueAsync(profileToMap(profile)));
+    }
+
+    @Override
+    public CompletableFuture<UserProfile> getProfile(String uid) {
+        return FirebaseFutures.readOnce(firebaseService.getProfileRef(uid))
+            .thenApply(snapshot -> mapToProfile(snapshot, uid));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateProfileDetails(UserProfile profile) {
+        // Totals, streaks and achievements are owned by the activity write path and must
+        // not be overwritten with a possibly stale copy
+        Map<String, Object> profileData = profileToMap(profile);
+        profileData.keySet().retainAll(EDITABLE_FIELDS);
+
+        String profilePath = firebaseService.getProfilePath(profile.getUid());
+        Map<String, Object> updates = new HashMap<>();
+        for (Map.Entry<String, Object> field : profileData.entrySet()) {
+            updates.put(profilePath + "/" + field.getKey(), field.getValue());
+        }
+
+        // Repeated edits within the coalescing window go out as one write
+        return WriteBehindQueue.getInstance().writeAll(updates);
+    }
+
+    @Override
+    public CompletableFuture<StreakRule.Outcome> advanceStreak(String uid, String activityDate) {
+        CompletableFuture<StreakRule.Outcome> future = new CompletableFuture<>();
+        AtomicReference<StreakRule.Outcome> outcome = new AtomicReference<>();
+
+        firebaseService.getProfileRef(uid).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData data) {
+                UserProfile streak = new UserProfile();
+                streak.setLastActiveDate(data.child("lastActiveDate").getValue(String.class));
+                Integer current = data.child("currentStreak").getValue(Integer.class);
+                Integer longest = data.child("longestStreak").getValue(Integer.class);
+                Integer total = data.child("totalActivities").getValue(Integer.class);
+                streak.setCurrentStreak(current != null ? current : 0);
+                streak.setLongestStreak(longest != null ? longest : 0);
+                streak.setTotalActivities(total != null ? total : 0);
+
+                outcome.set(StreakRule.apply(streak, activityDate));
+                if (outcome.get() == StreakRule.Outcome.NEEDS_REPAIR) {
+                    // The recompute that follows reads the server anyway
+                    return Transaction.abort();
+                }
+                if (outcome.get() == StreakRule.Outcome.UNCHANGED) {
+                    // The first run may see a stale cached profile; committing it untouched has the
+                    // server check it and run the handler again on the real value if it differs
+                    return Transaction.success(data);
+                }
+
+                data.child("lastActiveDate").setValue(streak.getLastActiveDate());
+                data.child("currentStreak").setValue(streak.getCurrentStreak());
+                data.child("longestStreak").setValue(streak.getLongestStreak());
+                return Transaction.success(data);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                if (error != null) {
+                    future.completeExceptionally(error.toException());
+                } else {
+                    future.complete(outcome.get());
+                }
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> setStreak(String uid, int currentStreak, int longestStreak, String lastActiveDate) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("currentStreak", currentStreak);
+        updates.put("longestStreak", longestStreak);
+        updates.put("lastActiveDate", lastActiveDate);
+        return FirebaseFutures.toCompletable(firebaseService.getProfileRef(uid).updateChildrenAsync(updates))
+            .thenApply(v -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> addAchievements(String uid, Map<String, Integer> achievements) {
+        Map<String, Object> updates = new HashMap<>();
+        for (Map.Entry<String, Integer> achievement : achievements.entrySet()) {
+            updates.put("achievements/" + achievement.getKey(), achievement.getValue());
+        }
+        return FirebaseFutures.toCompletable(firebaseService.getProfileRef(uid).updateChildrenAsync(updates))
+            .thenApply(v -> null);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> listUserIds() {
+        return CompletableFuture.supplyAsync(() -> {
+            List<String> uids = new ArrayList<>();
+            try {
+                ListUsersPage page = FirebaseAuth.getInstance().listUsers(null);
+                for (ExportedUserRecord user : page.iterateAll()) {
+                    uids.add(user.getUid());
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return uids;
+        });
+    }
+
+    private CompletableFuture<Activity> readSummary(String uid, String activityId, String path) {
+        ActivityLookup lookup = Repositories.activityLookup();
+        Activity cached = lookup != null ? lookup.getActivity(uid, activityId) : null;
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return FirebaseFutures.readOnce(firebaseService.getUserRef(uid).child(path))
+            .thenApply(snapshot -> snapshot.exists() ? ActivityDecoder.decode(snapshot) : null);
+    }
+
+    // Path of the stored summary relative to users/{uid}, in whichever layout it is in
+    private CompletableFuture<String> locateActivity(String uid, String activityId) {
+        ActivityLookup lookup = Repositories.activityLookup();
+        String known = lookup != null ? lookup.getActivityLocation(uid, activityId) : null;
+        if (known != null) {
+            return CompletableFuture.completedFuture(known);
+        }
+        // Partitioned activities are listed in activityIndex; anything else is flat
+        return FirebaseFutures.readOnce(firebaseService.getActivityIndexRef(uid).child(activityId))
+            .thenApply(snapshot -> firebaseService.getActivityPath(snapshot.getValue(String.class), activityId));
+    }
+
+    private static List<Activity> newestFirst(List<Activity> activities) {
+        activities.sort((a1, a2) -> Long.compare(a2.getTimestamp(), a1.getTimestamp()));
+        return activities;
+    }
+
+    // Relative to users/{uid}: the summary at summaryPath and the route under routes/
+    private Map<String, Object> activityUpdates(Activity activity, String summaryPath) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(summaryPath, activityToMap(activity));
+        if (activity.getRoute() != null && !activity.getRoute().isEmpty()) {
+            updates.put("routes/" + activity.getActivityId(), RouteCodec.encode(activity.getRoute()));
+        }
+        return updates;
+    }
+
+    // Relative to users/{uid}: server-side increments of the profile totals and the activities' daily rollups,
+    // one per field however many activities share it. A sign of -1 reverses previously counted activities.
+    private Map<String, Object> statsUpdates(List<Activity> activities, int sign) {
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, Double> amounts = new HashMap<>();
+        for (Activity activity : activities) {
+            String dayPath = "daily/" + DateUtils.formatDate(activity.getTimestamp());
+            counts.merge("profile/totalSteps", (long) sign * activity.getSteps(), Long::sum);
+            amounts.merge("profile/totalDistance", sign * activity.getDistance(), Double::sum);
+            counts.merge("profile/totalActivities", (long) sign, Long::sum);
+            counts.merge(dayPath + "/steps", (long) sign * activity.getSteps(), Long::sum);
+            amounts.merge(dayPath + "/distance", sign * activity.getDistance(), Double::sum);
+            counts.merge(dayPath + "/duration", (long) sign * activity.getDuration(), Long::sum);
+            counts.merge(dayPath + "/activities", (long) sign, Long::sum);
+        }
+
+        Map<String, Object> updates = new HashMap<>();
+        counts.forEach((path, delta) -> updates.put(path, ServerValue.increment(delta)));
+        amounts.forEach((path, delta) -> updates.put(path, ServerValue.increment(delta)));
+        return updates;
+    }
+
+    private Map<String, Object> activityToMap(Activity activity) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("activityId", activity.getActivityId());
+        map.put("userId", activity.getUserId());
+        map.put("timestamp", activity.getTimestamp());
+        map.put("date", activity.getDate());
+        map.put("type", activity.getType() != null ? activity.getType().name() : Activity.ActivityType.WALK.name());
+        map.put("duration", activity.getDuration());
+        map.put("steps", activity.getSteps());
+        map.put("distance", activity.getDistance());
+        map.put("notes", activity.getNotes());
+        // A few dozen points, so lists and thumbnails can draw the route without reading routes/
+        RouteBuffer overview = activity.getRoute() != null && !activity.getRoute().isEmpty()
+            ? RouteSimplifier.overview(activity.getRoute(), RouteSimplifier.OVERVIEW_POINTS)
+            : activity.getOverview();
+        if (overview != null) {
+            map.put("overview", RouteCodec.encode(overview));
+        }
+
+        return map;
+    }
+
+    private Map<String, Object> profileToMap(UserProfile profile) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("uid", profile.getUid());
+        map.put("email", profile.getEmail());
+        map.put("displayName", profile.getDisplayName());
+        map.put("weight", profile.getWeight());
+        map.put("height", profile.getHeight());
+        map.put("totalSteps", profile.getTotalSteps());
+        map.put("totalDistance", profile.getTotalDistance());
+        map.put("totalActivities", profile.getTotalActivities());
+        map.put("currentStreak", profile.getCurrentStreak());
+        map.put("longestStreak", profile.getLongestStreak());
+        map.put("lastActiveDate", profile.getLastActiveDate());
+        map.put("memberSince", profile.getMemberSince());
+        map.put("achievements", profile.getAchievements());
+
+        // Preferences
+        if (profile.getPreferences() != null) {
+            Map<String, Object> prefsMap = new HashMap<>();
+            UserProfile.UserPreferences prefs = profile.getPreferences();
+            prefsMap.put("useMetric", prefs.isUseMetric());
+            prefsMap.put("defaultZoom", prefs.getDefaultZoom());
+            prefsMap.put("defaultLat", prefs.getDefaultLat());
+            prefsMap.put("defaultLon", prefs.getDefaultLon());
+            prefsMap.put("dailyStepGoal", prefs.getDailyStepGoal());
+            prefsMap.put("autoPause", prefs.isAutoPause());
+            prefsMap.put("theme", prefs.getTheme());
+            map.put("preferences", prefsMap);
+        }
+
+        return map;
+    }
+
+    // Throws if a stored field has the wrong type, which fails the read rather than yielding no profile
+    private UserProfile mapToProfile(DataSnapshot snapshot, String uid) {
+        UserProfile profile = new UserProfile();
+        profile.setUid(uid);
+        profile.setEmail(snapshot.child("email").getValue(String.class));
+        profile.setDisplayName(snapshot.child("displayName").getValue(String.class));
+
+        Double weight = snapshot.child("weight").getValue(Double.class);
+        profile.setWeight(weight != null ? weight : 70.0);
+
+        Double height = snapshot.child("height").getValue(Double.class);
+        profile.setHeight(height != null ? height : 170.0);
+
+        Integer totalSteps = snapshot.child("totalSteps").getValue(Integer.class);
+        profile.setTotalSteps(totalSteps != null ? totalSteps : 0);
+
+        Double totalDistance = snapshot.child("totalDistance").getValue(Double.class);
+        profile.setTotalDistance(totalDistance != null ? totalDistance : 0.0);
+
+        Integer totalActivities = snapshot.child("totalActivities").getValue(Integer.class);
+        profile.setTotalActivities(totalActivities != null ? totalActivities : 0);
+
+        Integer currentStreak = snapshot.child("currentStreak").getValue(Integer.class);
+        profile.setCurrentStreak(currentStreak != null ? currentStreak : 0);
+
+        Integer longestStreak = snapshot.child("longestStreak").getValue(Integer.class);
+        profile.setLongestStreak(longestStreak != null ? longestStreak : 0);
+        profile.setLastActiveDate(snapshot.child("lastActiveDate").getValue(String.class));
+
+        Long memberSince = snapshot.child("memberSince").getValue(Long.class);
+        profile.setMemberSince(memberSince != null ? memberSince : System.currentTimeMillis());
+
+        // Achievements
+        DataSnapshot achievementsSnapshot = snapshot.child("achievements");
+        Map<String, Integer> achievements = new HashMap<>();
+        for (DataSnapshot child : achievementsSnapshot.getChildren()) {
+            achievements.put(child.getKey(), child.getValue(Integer.class));
+        }
+        profile.setAchievements(achievements);
+
+        // Preferences
+        DataSnapshot prefsSnapshot = snapshot.child("preferences");
+        if (prefsSnapshot.exists()) {
+            UserProfile.UserPreferences prefs = new UserProfile.UserPreferences();
+            Boolean useMetric = prefsSnapshot.child("useMetric").getValue(Boolean.class);
+            if (useMetric != null) prefs.setUseMetric(useMetric);
+
+            Integer defaultZoom = prefsSnapshot.child("defaultZoom").getValue(Integer.class);
+            if (defaultZoom != null) prefs.setDefaultZoom(defaultZoom);
+
+            Double defaultLat = prefsSnapshot.child("defaultLat").getValue(Double.class);
+            if (defaultLat != null) prefs.setDefaultLat(defaultLat);
+
+            Double defaultLon = prefsSnapshot.child("defaultLon").getValue(Double.class);
+            if (defaultLon != null) prefs.setDefaultLon(defaultLon);
+
+            Integer dailyStepGoal = prefsSnapshot.child("dailyStepGoal").getValue(Integer.class);
+            if (dailyStepGoal != null) prefs.setDailyStepGoal(dailyStepGoal);
+
+            Boolean autoPause = prefsSnapshot.child("autoPause").getValue(Boolean.class);
+            if (autoPause != null) prefs.setAutoPause(autoPause);
+
+            String theme = prefsSnapshot.child("theme").getValue(String.class);
+            if (theme != null) prefs.setTheme(theme);
+
+            profile.setPreferences(prefs);
+        }
+
+        return profile;
+    }
+}
@@ -0,0 +1,138 @@
+package highwaystar.repository;
+
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.database.*;
+import highwaystar.utils.Config;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+
+public class FirebaseService {
+    private static FirebaseService instance;
+    private DatabaseReference dbRef;
+    private boolean initialized = false;
+
+    // Month buckets are UTC so every client files a given timestamp under the same key
+    private static final DateTimeFormatter BUCKET_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+    private static final Pattern BUCKET_KEY = Pattern.compile("\\d{4}-\\d{2}");
+
+    private FirebaseService() {}
+
+    public static FirebaseService getInstance() {
+        if (instance == null) {
+            instance = new FirebaseService();
+        }
+        return instance;
+    }
+
+    public void initialize() throws Exception {
+        if (initialized) {
+            return;
+        }
+
+        Config config = Config.getInstance();
+        String dbUrl = config.get("firebase.database.url");
+        String credentialsPath = config.get("firebase.credentials.path");
+
+        FirebaseOptions options = FirebaseOptions.builder()
+            .setCredentials(GoogleCredentials.fromStream(
+                getClass().getResourceAsStream(credentialsPath)))
+            .setDatabaseUrl(dbUrl)
+            .build();
+
+        FirebaseApp.initializeApp(options);
+        dbRef = FirebaseDatabase.getInstance().getReference();
+        initialized = true;
+    }
+
+    public DatabaseReference getDatabase() {
+        if (!initialized) {
+            throw new IllegalStateException("FirebaseService not initialized. Call initialize() first.");
+        }
+        return dbRef;
+    }
+
+    public DatabaseReference getUsersRef() {
+        return getDatabase().child("users");
+    }
+
+    public DatabaseReference getUserRef(String uid) {
+        return getUsersRef().child(uid);
+    }
+
+    public DatabaseReference getActivitiesRef(String uid) {
+        return getUserRef(uid).child("activities");
+    }
+
+    public DatabaseReference getActivityBucketRef(String uid, String bucket) {
+        return getActivitiesRef(uid).child(bucket);
+    }
+
+    public DatabaseReference getActivityIndexRef(String uid) {
+        return getUserRef(uid).child("activityIndex");
+    }
+
+    public DatabaseReference getRoutesRef(String uid) {
+        return getUserRef(uid).child("routes");
+    }
+
+    public DatabaseReference getDailyRef(String uid) {
+        return getUserRef(uid).child("daily");
+    }
+
+    public DatabaseReference getProfileRef(String uid) {
+        return getUserRef(uid).child("profile");
+    }
+
+    // Paths relative to the database root, for multi-path writes
+    public String getUserPath(String uid) {
+        return "users/" + uid;
+    }
+
+    public String getActivitiesPath(String uid) {
+        return getUserPath(uid) + "/activities";
+    }
+
+    public String getProfilePath(String uid) {
+        return getUserPath(uid) + "/profile";
+    }
+
+    // Activity summaries sit either directly under activities/{id} or, once a user is
+    // migrated to the partitioned layout, under activities/{yyyy-MM}/{id} with
+    // activityIndex/{id} pointing at the bucket. Readers accept both.
+    public boolean isActivitiesPartitioned() {
+        return Config.getInstance().getBoolean("activities.partitioned", false);
+    }
+
+    // While accounts are being migrated, ranged reads also query the flat layout
+    public boolean isActivitiesDualRead() {
+        return Config.getInstance().getBoolean("activities.dualread", true);
+    }
+
+    public static String getActivityBucket(long timestamp) {
+        return BUCKET_FORMATTER.format(Instant.ofEpochMilli(timestamp));
+    }
+
+    public static boolean isActivityBucket(String key) {
+        // Length check first: this runs for every key of an activities read
+        return key != null && key.length() == 7 && BUCKET_KEY.matcher(key).matches();
+    }
+
+    // Bucket for newly written activities, null in the flat layout
+    public String getNewActivityBucket(long timestamp) {
+        return isActivitiesPartitioned() ? getActivityBucket(timestamp) : null;
+    }
+
+    // Relative to users/{uid}; a null bucket is the flat layout
+    public String getActivityPath(String bucket, String activityId) {
+        return bucket != null ? "activities/" + bucket + "/" + activityId : "activities/" + activityId;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+}
@@ -0,0 +1,434 @@
+package highwaystar.repository;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import highwaystar.models.UserProfile;
+import highwaystar.utils.DateUtils;
+import highwaystar.utils.RouteSimplifier;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Keeps everything in process memory. All state is owned by one storage thread, so every
+ * operation is applied in submission order and watchers see changes in that same order.
+ * Callers only ever get copies.
+ */
+public class InMemoryRepository implements ActivityRepository, ProfileRepository {
+    private final ExecutorService storageThread;
+    private final Map<String, UserData> users = new HashMap<>();
+
+    // Per-user state; only touched on the storage thread
+    protected static class UserData {
+        UserProfile profile;
+        final Map<String, Activity> activities = new HashMap<>();
+        // The same activities by timestamp, so range reads only visit what they return
+        final TreeMap<Long, Map<String, Activity>> byTime = new TreeMap<>();
+        final Map<String, RouteBuffer> routes = new HashMap<>();
+        // Rollups keyed by yyyy-MM-dd: {steps, activities}
+        final TreeMap<String, long[]> daily = new TreeMap<>();
+        final List<ChangeListener> listeners = new ArrayList<>();
+    }
+
+    public InMemoryRepository() {
+        storageThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "repository-storage");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> prepareUser(String uid) {
+        return CompletableFuture.completedFuture(false);
+    }
+
+    @Override
+    public CompletableFuture<String> saveActivity(Activity activity) {
+        if (activity.getActivityId() == null) {
+            activity.setActivityId(UUID.randomUUID().toString());
+        }
+        Activity summary = copySummary(activity);
+        RouteBuffer route = copyRoute(activity.getRoute());
+        return submit(() -> {
+            storeActivity(summary, route);
+            activityStored(summary, route);
+            return summary.getActivityId();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveActivities(String uid, List<Activity> activities) {
+        List<Activity> summaries = new ArrayList<>();
+        List<RouteBuffer> routes = new ArrayList<>();
+        for (Activity activity : activities) {
+            if (activity.getActivityId() == null) {
+                activity.setActivityId(UUID.randomUUID().toString());
+            }
+            summaries.add(copySummary(activity));
+            routes.add(copyRoute(activity.getRoute()));
+        }
+        return submit(() -> {
+            for (int i = 0; i < summaries.size(); i++) {
+                storeActivity(summaries.get(i), routes.get(i));
+                activityStored(summaries.get(i), routes.get(i));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Activity> getActivity(String uid, String activityId) {
+        return submit(() -> {
+            Activity activity = user(uid).activities.get(activityId);
+            return activity != null ? copySummary(activity) : null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<RouteBuffer> getRoute(String uid, String activityId) {
+        return submit(() -> {
+            RouteBuffer route = user(uid).routes.get(activityId);
+            return route != null ? copyRoute(route) : null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Activity>> listActivities(String uid) {
+        return listActivities(uid, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public CompletableFuture<List<Activity>> listActivities(String uid, long startTime, long endTime) {
+        return submit(() -> {
+            List<Activity> activities = new ArrayList<>();
+            for (Map<String, Activity> sameTime : user(uid).byTime.subMap(startTime, true, endTime, true).descendingMap().values()) {
+                for (Activity activity : sameTime.values()) {
+                    activities.add(copySummary(activity));
+                }
+            }
+            return activities;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateActivity(Activity activity) {
+        Activity summary = copySummary(activity);
+        RouteBuffer route = copyRoute(activity.getRoute());
+        if (!route.isEmpty()) {
+            // Derived again from the new route
+            summary.setOverview(null);
+        }
+        return submit(() -> {
+            if (user(summary.getUserId()).activities.containsKey(summary.getActivityId())) {
+                replaceActivity(summary, route.isEmpty() ? null : route);
+                activityStored(summary, route.isEmpty() ? null : route);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateNotes(String uid, String activityId, String notes) {
+        return submit(() -> {
+            Activity stored = user(uid).activities.get(activityId);
+            if (stored != null) {
+                Activity updated = copySummary(stored);
+                updated.setNotes(notes);
+                replaceActivity(updated, null);
+                activityStored(updated, null);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteActivity(String uid, String activityId) {
+        return submit(() -> {
+            if (removeActivity(uid, activityId)) {
+                activityRemoved(uid, activityId);
+                notifyRemoved(uid, activityId);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getStepsByDate(String uid, String fromDate, String toDate) {
+        return submit(() -> {
+            Map<String, Integer> stepsByDate = new HashMap<>();
+            for (Map.Entry<String, long[]> day : user(uid).daily.subMap(fromDate, true, toDate, true).entrySet()) {
+                stepsByDate.put(day.getKey(), (int) day.getValue()[0]);
+            }
+            return stepsByDate;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getActiveDays(String uid) {
+        return submit(() -> new ArrayList<>(user(uid).daily.keySet()));
+    }
+
+    @Override
+    public Subscription watchActivities(String uid, ChangeListener listener) {
+        storageThread.execute(() -> {
+            UserData data = user(uid);
+            data.listeners.add(listener);
+
+            Map<String, Activity> stored = new HashMap<>();
+            for (Activity activity : data.activities.values()) {
+                stored.put(location(activity.getActivityId()), copySummary(activity));
+            }
+            listener.onActivitiesChanged(stored, Collections.emptyMap());
+            listener.onSynced();
+        });
+        return () -> storageThread.execute(() -> user(uid).listeners.remove(listener));
+    }
+
+    @Override
+    public CompletableFuture<Void> createProfile(UserProfile profile) {
+        UserProfile copy = profile.copy();
+        return submit(() -> {
+            user(copy.getUid()).profile = copy;
+            profileStored(copy);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<UserProfile> getProfile(String uid) {
+        return submit(() -> {
+            UserData data = user(uid);
+            if (data.profile == null) {
+                // Accounts registered against another backend start out empty here
+                data.profile = new UserProfile(uid, null);
+                profileStored(data.profile);
+            }
+            return data.profile.copy();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateProfileDetails(UserProfile profile) {
+        UserProfile details = profile.copy();
+        return submit(() -> {
+            UserProfile stored = user(details.getUid()).profile;
+            if (stored != null) {
+                stored.setEmail(details.getEmail());
+                stored.setDisplayName(details.getDisplayName());
+                stored.setWeight(details.getWeight());
+                stored.setHeight(details.getHeight());
+                stored.setPreferences(details.getPreferences());
+                profileStored(stored);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<StreakRule.Outcome> advanceStreak(String uid, String activityDate) {
+        return submit(() -> {
+            UserProfile stored = user(uid).profile;
+            if (stored == null) {
+                return StreakRule.Outcome.UNCHANGED;
+            }
+            StreakRule.Outcome outcome = StreakRule.apply(stored, activityDate);
+            if (outcome == StreakRule.Outcome.ADVANCED) {
+                profileStored(stored);
+            }
+            return outcome;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> setStreak(String uid, int currentStreak, int longestStreak, String lastActiveDate) {
+        return submit(() -> {
+            UserProfile stored = user(uid).profile;
+            if (stored != null) {
+                stored.setCurrentStreak(currentStreak);
+                stored.setLongestStreak(longestStreak);
+                stored.setLastActiveDate(lastActiveDate);
+                profileStored(stored);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> addAchievements(String uid, Map<String, Integer> achievements) {
+        Map<String, Integer> added = new HashMap<>(achievements);
+        return submit(() -> {
+            UserProfile stored = user(uid).profile;
+            if (stored != null) {
+                stored.getAchievements().putAll(added);
+                profileStored(stored);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> listUserIds() {
+        return submit(() -> {
+            List<String> uids = new ArrayList<>();
+            for (Map.Entry<String, UserData> user : users.entrySet()) {
+                if (user.getValue().profile != null) {
+                    uids.add(user.getKey());
+                }
+            }
+            return uids;
+        });
+    }
+
+    // Hooks for persistent subclasses; called on the storage thread after the change is applied
+
+    // A null route means the stored route is unchanged
+    protected void activityStored(Activity activity, RouteBuffer route) {
+    }
+
+    protected void activityRemoved(String uid, String activityId) {
+    }
+
+    protected void profileStored(UserProfile profile) {
+    }
+
+    // Replay entry points for persistent subclasses: apply a stored change without calling the hooks
+
+    protected void restoreActivity(Activity activity, RouteBuffer route) {
+        replaceActivity(activity, route);
+    }
+
+    protected void restoreRemoval(String uid, String activityId) {
+        removeActivity(uid, activityId);
+    }
+
+    protected void restoreProfile(UserProfile profile) {
+        user(profile.getUid()).profile = profile;
+    }
+
+    protected <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, storageThread);
+    }
+
+    protected Map<String, UserData> users() {
+        return users;
+    }
+
+    protected UserData user(String uid) {
+        return users.computeIfAbsent(uid, key -> new UserData());
+    }
+
+    // Stores the summary and route, counting the activity into the totals and its rollup
+    private void storeActivity(Activity activity, RouteBuffer route) {
+        String uid = activity.getUserId();
+        UserData data = user(uid);
+        unindex(data, data.activities.put(activity.getActivityId(), activity));
+        data.byTime.computeIfAbsent(activity.getTimestamp(), key -> new HashMap<>()).put(activity.getActivityId(), activity);
+        if (route != null && !route.isEmpty()) {
+            data.routes.put(activity.getActivityId(), route);
+            // Derived rather than persisted, since the route is always at hand
+            if (activity.getOverview() == null) {
+                activity.setOverview(RouteSimplifier.overview(route, RouteSimplifier.OVERVIEW_POINTS));
+            }
+        }
+        count(data, activity, 1);
+        notifyStored(uid, activity);
+    }
+
+    // Edits go through the same bookkeeping as a save so totals and rollups follow.
+    // A null route keeps the stored one and its overview.
+    private void replaceActivity(Activity activity, RouteBuffer route) {
+        UserData data = user(activity.getUserId());
+        RouteBuffer kept = route != null ? route : data.routes.get(activity.getActivityId());
+        if (route == null && activity.getOverview() == null) {
+            Activity stored = data.activities.get(activity.getActivityId());
+            activity.setOverview(stored != null ? stored.getOverview() : null);
+        }
+        removeActivity(activity.getUserId(), activity.getActivityId());
+        storeActivity(activity, kept);
+    }
+
+    private boolean removeActivity(String uid, String activityId) {
+        UserData data = user(uid);
+        Activity removed = data.activities.remove(activityId);
+        if (removed == null) {
+            return false;
+        }
+        unindex(data, removed);
+        data.routes.remove(activityId);
+        count(data, removed, -1);
+        return true;
+    }
+
+    private static void unindex(UserData data, Activity activity) {
+        if (activity == null) {
+            return;
+        }
+        Map<String, Activity> sameTime = data.byTime.get(activity.getTimestamp());
+        if (sameTime != null) {
+            sameTime.remove(activity.getActivityId());
+            if (sameTime.isEmpty()) {
+                data.byTime.remove(activity.getTimestamp());
+            }
+        }
+    }
+
+    private void count(UserData data, Activity activity, int sign) {
+        if (data.profile != null) {
+            UserProfile profile = data.profile;
+            profile.setTotalSteps(profile.getTotalSteps() + sign * activity.getSteps());
+            profile.setTotalDistance(profile.getTotalDistance() + sign * activity.getDistance());
+            profile.setTotalActivities(profile.getTotalActivities() + sign);
+        }
+
+        String date = DateUtils.formatDate(activity.getTimestamp());
+        long[] day = data.daily.computeIfAbsent(date, key -> new long[2]);
+        day[0] += (long) sign * activity.getSteps();
+        day[1] += sign;
+        // Unlike the Firebase rollups, emptied days are dropped so the key set is the active days
+        if (day[1] <= 0) {
+            data.daily.remove(date);
+        }
+    }
+
+    private void notifyStored(String uid, Activity activity) {
+        for (ChangeListener listener : user(uid).listeners) {
+            listener.onActivitiesChanged(Map.of(location(activity.getActivityId()), copySummary(activity)),
+                Collections.emptyMap());
+        }
+    }
+
+    private void notifyRemoved(String uid, String activityId) {
+        for (ChangeListener listener : user(uid).listeners) {
+            listener.onActivitiesChanged(Collections.emptyMap(), Map.of(activityId, location(activityId)));
+        }
+    }
+
+    // Activities never move between locations here
+    private static String location(String activityId) {
+        return "activities/" + activityId;
+    }
+
+    protected static Activity copySummary(Activity activity) {
+        Activity copy = new Activity();
+        copy.setActivityId(activity.getActivityId());
+        copy.setUserId(activity.getUserId());
+        copy.setTimestamp(activity.getTimestamp());
+        copy.setDate(activity.getDate());
+        copy.setType(activity.getType() != null ? activity.getType() : Activity.ActivityType.WALK);
+        copy.setDuration(activity.getDuration());
+        copy.setSteps(activity.getSteps());
+        copy.setDistance(activity.getDistance());
+        copy.setNotes(activity.getNotes());
+        copy.setOverview(activity.getOverview());
+        return copy;
+    }
+
+    // Copies are sized to the route, so stored routes carry no spare capacity
+    protected static RouteBuffer copyRoute(RouteBuffer route) {
+        return route != null ? route.copy() : new RouteBuffer();
+    }
+}
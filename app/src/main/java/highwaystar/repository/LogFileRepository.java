@@ -0,0 +1,218 @@
+package highwaystar.repository;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import highwaystar.models.UserProfile;
+import highwaystar.utils.BinaryCodec;
+import highwaystar.utils.RouteCodec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The in-memory store backed by an append-only log on local disk. Every change is appended
+ * as one record and the whole log is replayed at open, so no Firebase project is needed.
+ *
+ * Record layout: payload length (int), record type (byte), payload, CRC32 of type and
+ * payload (int). A torn record at the end from a crash is cut off at open. The log is
+ * rewritten from the replayed state when most of it is superseded records.
+ */
+public class LogFileRepository extends InMemoryRepository {
+    private static final byte ACTIVITY = 1;
+    private static final byte REMOVE = 2;
+    private static final byte PROFILE = 3;
+
+    // Rewrite at open once superseded records outnumber live ones and there are this many
+    private static final int COMPACT_MIN_GARBAGE = 1024;
+
+    private final Path file;
+    private final boolean fsync;
+    private final FileChannel channel;
+
+    public LogFileRepository(Path file, boolean fsync) throws IOException {
+        this.file = file;
+        this.fsync = fsync;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        long validLength = replay();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            System.err.println("Discarding " + (channel.size() - validLength) + " bytes of torn log records in " + file);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+    }
+
+    @Override
+    protected void activityStored(Activity activity, RouteBuffer route) {
+        append(ACTIVITY, out -> writeActivityRecord(out, activity, route));
+    }
+
+    @Override
+    protected void activityRemoved(String uid, String activityId) {
+        append(REMOVE, out -> {
+            out.writeUTF(uid);
+            out.writeUTF(activityId);
+        });
+    }
+
+    @Override
+    protected void profileStored(UserProfile profile) {
+        append(PROFILE, out -> {
+            out.writeUTF(profile.getUid());
+            BinaryCodec.writeProfile(out, profile);
+        });
+    }
+
+    // Returns the length of the intact prefix of the log
+    private long replay() throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        long size = Files.size(file);
+        long offset = 0;
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                byte type;
+                byte[] payload;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    // A torn length field can claim anything
+                    if (length < 0 || offset + 4 + 1 + length + 4 > size) {
+                        break;
+                    }
+                    type = in.readByte();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(type);
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                apply(type, new DataInputStream(new ByteArrayInputStream(payload)));
+                offset += 4 + 1 + length + 4;
+                records++;
+            }
+        }
+
+        int live = 0;
+        for (UserData data : users().values()) {
+            live += data.activities.size() + (data.profile != null ? 1 : 0);
+        }
+        if (records - live > live && records - live >= COMPACT_MIN_GARBAGE) {
+            return compact();
+        }
+        return offset;
+    }
+
+    private void apply(byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case ACTIVITY: {
+                String uid = in.readUTF();
+                Activity activity = BinaryCodec.readActivity(in, uid);
+                String route = BinaryCodec.readNullableString(in);
+                // Records written before overviews were kept end here; the overview is derived again
+                String overview = in.available() > 0 ? BinaryCodec.readNullableString(in) : null;
+                activity.setOverview(overview != null ? RouteCodec.decode(overview) : null);
+                restoreActivity(activity, route != null ? RouteCodec.decode(route) : null);
+                break;
+            }
+            case REMOVE:
+                restoreRemoval(in.readUTF(), in.readUTF());
+                break;
+            case PROFILE: {
+                String uid = in.readUTF();
+                restoreProfile(BinaryCodec.readProfile(in, uid));
+                break;
+            }
+            default:
+                throw new IOException("Unknown log record type " + type);
+        }
+    }
+
+    // Writes the replayed state as a fresh log and swaps it in; returns its length
+    private long compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (UserData data : users().values()) {
+                for (Activity activity : data.activities.values()) {
+                    RouteBuffer route = data.routes.get(activity.getActivityId());
+                    out.write(record(ACTIVITY, payload -> writeActivityRecord(payload, activity, route)));
+                }
+                // After the activities: replaying them counts into the totals, which the
+                // profile record then replaces with the final values
+                if (data.profile != null) {
+                    UserProfile profile = data.profile;
+                    out.write(record(PROFILE, payload -> {
+                        payload.writeUTF(profile.getUid());
+                        BinaryCodec.writeProfile(payload, profile);
+                    }));
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(file);
+    }
+
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // Called on the storage thread only
+    private void append(byte type, PayloadWriter writer) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(record(type, writer));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to " + file, e);
+        }
+    }
+
+    private static byte[] record(byte type, PayloadWriter writer) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        writer.write(new DataOutputStream(payloadBytes));
+        byte[] payload = payloadBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(4 + 1 + payload.length + 4);
+        record.putInt(payload.length);
+        record.put(type);
+        record.put(payload);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    // A null route leaves the stored route as it is on replay
+    private static void writeActivityRecord(DataOutputStream out, Activity activity,
+                                            RouteBuffer route) throws IOException {
+        out.writeUTF(activity.getUserId());
+        BinaryCodec.writeActivity(out, activity);
+        BinaryCodec.writeNullableString(out, route != null && !route.isEmpty() ? RouteCodec.encode(route) : null);
+        // Saves deriving it from every route at open
+        BinaryCodec.writeNullableString(out, activity.getOverview() != null ? RouteCodec.encode(activity.getOverview()) : null);
+    }
+}
@@ -0,0 +1,296 @@
+package highwaystar.repository;
+
+import com.google.firebase.auth.ExportedUserRecord;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.ListUsersPage;
+import com.google.firebase.database.*;
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import highwaystar.utils.DateUtils;
+import highwaystar.utils.RouteCodec;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+public class MigrationService {
+    private static MigrationService instance;
+    private final FirebaseService firebaseService;
+
+    // Routes moved out of activity summaries into users/{uid}/routes/{activityId}
+    public static final int SCHEMA_ROUTES_SPLIT = 1;
+    // Per-day totals kept under users/{uid}/daily/{yyyy-MM-dd}
+    public static final int SCHEMA_DAILY_ROLLUPS = 2;
+    // Activity summaries moved into month buckets users/{uid}/activities/{yyyy-MM}/{id};
+    // only applied when activities.partitioned is enabled
+    public static final int SCHEMA_MONTH_PARTITIONS = 3;
+
+    private static final int ACTIVITIES_PER_BATCH = 200;
+    // Times the daily totals are rewritten while activities keep changing underneath them
+    private static final int ROLLUP_ATTEMPTS = 5;
+
+    private MigrationService() {
+        firebaseService = FirebaseService.getInstance();
+    }
+
+    public static MigrationService getInstance() {
+        if (instance == null) {
+            instance = new MigrationService();
+        }
+        return instance;
+    }
+
+    public CompletableFuture<Boolean> migrateUser(String uid) {
+        DatabaseReference userRef = firebaseService.getUserRef(uid);
+
+        int targetVersion = getTargetSchemaVersion();
+
+        return FirebaseFutures.readOnce(userRef.child("schemaVersion")).thenCompose(versionSnapshot -> {
+            Integer storedVersion = versionSnapshot.getValue(Integer.class);
+            int version = storedVersion != null ? storedVersion : 0;
+            if (version >= targetVersion) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return FirebaseFutures.readOnce(firebaseService.getActivitiesRef(uid)).thenCompose(activities -> {
+                // Steps are applied one after another, the version marker last
+                CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+                if (version < SCHEMA_ROUTES_SPLIT) {
+                    for (Map<String, Object> batch : routeSplitBatches(activities)) {
+                        chain = chain.thenCompose(v -> applyBatch(uid, batch));
+                    }
+                }
+                if (version < SCHEMA_DAILY_ROLLUPS) {
+                    chain = chain.thenCompose(v -> rollUpDaily(uid));
+                }
+                if (version < SCHEMA_MONTH_PARTITIONS && targetVersion >= SCHEMA_MONTH_PARTITIONS) {
+                    // Each batch moves its activities atomically, and readers accept both
+                    // layouts, so the account stays usable while this runs
+                    for (Map<String, Object> batch : partitionBatches(activities)) {
+                        chain = chain.thenCompose(v -> applyBatch(uid, batch));
+                    }
+                }
+                return chain.thenCompose(v -> FirebaseFutures.toCompletable(
+                    userRef.child("schemaVersion").setValueAsync(targetVersion)));
+            });
+        }).thenApply(v -> true).exceptionally(e -> {
+            e.printStackTrace();
+            return false;
+        });
+    }
+
+    public int getTargetSchemaVersion() {
+        return firebaseService.isActivitiesPartitioned() ? SCHEMA_MONTH_PARTITIONS : SCHEMA_DAILY_ROLLUPS;
+    }
+
+    /**
+     * Migrates every account, one after another, and returns how many succeeded.
+     */
+    public CompletableFuture<Integer> migrateAllUsers() {
+        // Paging through Firebase Auth blocks, so the listing gets its own thread rather than
+        // the common pool
+        CompletableFuture<List<String>> listed = CompletableFuture.supplyAsync(() -> {
+            List<String> uids = new ArrayList<>();
+            try {
+                ListUsersPage page = FirebaseAuth.getInstance().listUsers(null);
+                for (ExportedUserRecord user : page.iterateAll()) {
+                    uids.add(user.getUid());
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return uids;
+        }, runnable -> {
+            Thread thread = new Thread(runnable, "migration");
+            thread.setDaemon(true);
+            thread.start();
+        });
+
+        // Each user starts when the previous one finishes, so no thread waits on a migration
+        return listed.thenCompose(uids -> {
+            CompletableFuture<Integer> chain = CompletableFuture.completedFuture(0);
+            for (String uid : uids) {
+                chain = chain.thenCompose(count -> migrateUser(uid).thenApply(migrated -> migrated ? count + 1 : count));
+            }
+            return chain;
+        }).exceptionally(e -> {
+            e.printStackTrace();
+            return 0;
+        });
+    }
+
+    // Queued edits to an activity this batch removes from the flat layout would recreate it as a
+    // bare node once flushed, so they are taken out of the queue and moved along with it
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Void> applyBatch(String uid, Map<String, Object> batch) {
+        String userPath = firebaseService.getUserPath(uid);
+        CompletableFuture<Void> applied = new CompletableFuture<>();
+        for (Map.Entry<String, Object> update : batch.entrySet()) {
+            String key = update.getKey();
+            if (update.getValue() != null || !key.startsWith("activities/") || key.indexOf('/', "activities/".length()) >= 0) {
+                continue;
+            }
+            Map<String, Object> queued = WriteBehindQueue.getInstance().takePending(userPath + "/" + key, applied);
+            String activityId = key.substring("activities/".length());
+            Object bucket = batch.get("activityIndex/" + activityId);
+            if (queued.isEmpty() || !(bucket instanceof String)) {
+                continue;
+            }
+            Object summary = batch.get(firebaseService.getActivityPath((String) bucket, activityId));
+            if (summary instanceof Map) {
+                queued.forEach((field, value) -> putField((Map<String, Object>) summary, field, value));
+            }
+        }
+
+        FirebaseFutures.toCompletable(firebaseService.getUserRef(uid).updateChildrenAsync(batch))
+            .whenComplete((result, error) -> {
+                if (error == null) {
+                    applied.complete(null);
+                } else {
+                    applied.completeExceptionally(error);
+                }
+            });
+        return applied;
+    }
+
+    // Sets a slash-separated field path inside a summary map
+    @SuppressWarnings("unchecked")
+    private static void putField(Map<String, Object> summary, String field, Object value) {
+        if (field.isEmpty()) {
+            return;
+        }
+        int slash = field.indexOf('/');
+        if (slash < 0) {
+            summary.put(field, value);
+            return;
+        }
+        Object child = summary.get(field.substring(0, slash));
+        Map<String, Object> nested = child instanceof Map ? new HashMap<>((Map<String, Object>) child) : new HashMap<>();
+        putField(nested, field.substring(slash + 1), value);
+        summary.put(field.substring(0, slash), nested);
+    }
+
+    private List<Map<String, Object>> routeSplitBatches(DataSnapshot activities) {
+        List<Map<String, Object>> batches = new ArrayList<>();
+        Map<String, Object> updates = new HashMap<>();
+
+        for (DataSnapshot child : activities.getChildren()) {
+            DataSnapshot routeSnapshot = child.child("route");
+            if (!routeSnapshot.exists()) {
+                continue;
+            }
+
+            String activityId = child.getKey();
+            RouteBuffer route = ActivityDecoder.decodeRoute(routeSnapshot.getValue());
+            if (!route.isEmpty()) {
+                updates.put("routes/" + activityId, RouteCodec.encode(route));
+            }
+            updates.put("activities/" + activityId + "/route", null);
+
+            if (updates.size() >= ACTIVITIES_PER_BATCH * 2) {
+                batches.add(updates);
+                updates = new HashMap<>();
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            batches.add(updates);
+        }
+        return batches;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> partitionBatches(DataSnapshot activities) {
+        List<Map<String, Object>> batches = new ArrayList<>();
+        Map<String, Object> updates = new HashMap<>();
+
+        for (DataSnapshot child : activities.getChildren()) {
+            String activityId = child.getKey();
+            Long timestamp = child.child("timestamp").getValue(Long.class);
+            if (FirebaseService.isActivityBucket(activityId) || timestamp == null) {
+                continue;
+            }
+
+            // Inline routes were split out by an earlier batch of this same run
+            Map<String, Object> summary = new HashMap<>((Map<String, Object>) child.getValue());
+            summary.remove("route");
+
+            String bucket = FirebaseService.getActivityBucket(timestamp);
+            updates.put(firebaseService.getActivityPath(bucket, activityId), summary);
+            updates.put("activityIndex/" + activityId, bucket);
+            updates.put(firebaseService.getActivityPath(null, activityId), null);
+
+            if (updates.size() >= ACTIVITIES_PER_BATCH * 3) {
+                batches.add(updates);
+                updates = new HashMap<>();
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            batches.add(updates);
+        }
+        return batches;
+    }
+
+    // Saves keep adding to daily/ with server-side increments while this runs, so the totals are
+    // written day by day rather than replacing the node, and only days the activities account
+    // for. Days left over in daily/ from deleted activities are cleared.
+    private CompletableFuture<Void> rollUpDaily(String uid) {
+        return FirebaseFutures.readOnce(firebaseService.getDailyRef(uid)).thenCompose(daily -> {
+            Set<String> storedDays = new HashSet<>();
+            for (DataSnapshot day : daily.getChildren()) {
+                storedDays.add(day.getKey());
+            }
+            // Read after daily/, so an activity counted there is also in this read
+            return FirebaseFutures.readOnce(firebaseService.getActivitiesRef(uid))
+                .thenCompose(activities -> writeDailyTotals(uid, activities, storedDays, ROLLUP_ATTEMPTS));
+        });
+    }
+
+    // An activity saved or deleted between the read and the write has its increment overwritten,
+    // so the activities are read again afterwards and the totals rewritten from that read until
+    // two reads agree
+    private CompletableFuture<Void> writeDailyTotals(String uid, DataSnapshot activities, Set<String> previousDays,
+                                                     int attemptsLeft) {
+        Map<String, Map<String, Object>> days = dailyTotals(activities);
+        Map<String, Object> updates = new HashMap<>();
+        for (String day : previousDays) {
+            if (!days.containsKey(day)) {
+                updates.put("daily/" + day, null);
+            }
+        }
+        days.forEach((day, totals) -> updates.put("daily/" + day, totals));
+
+        return FirebaseFutures.toCompletable(firebaseService.getUserRef(uid).updateChildrenAsync(updates))
+            .thenCompose(v -> FirebaseFutures.readOnce(firebaseService.getActivitiesRef(uid)))
+            .thenCompose(after -> {
+                if (dailyTotals(after).equals(days)) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                if (attemptsLeft <= 1) {
+                    // The version marker stays behind, so the next sign-in tries again
+                    throw new IllegalStateException("Activities of " + uid + " kept changing during the daily rollup");
+                }
+                return writeDailyTotals(uid, after, days.keySet(), attemptsLeft - 1);
+            });
+    }
+
+    private Map<String, Map<String, Object>> dailyTotals(DataSnapshot activities) {
+        Map<String, Map<String, Object>> days = new HashMap<>();
+
+        for (Activity activity : ActivityDecoder.decodeAll(activities)) {
+            Map<String, Object> day = days.computeIfAbsent(DateUtils.formatDate(activity.getTimestamp()), key -> {
+                Map<String, Object> totals = new HashMap<>();
+                totals.put("steps", 0L);
+                totals.put("distance", 0.0);
+                totals.put("duration", 0L);
+                totals.put("activities", 0L);
+                return totals;
+            });
+            day.put("steps", (Long) day.get("steps") + activity.getSteps());
+            day.put("distance", (Double) day.get("distance") + activity.getDistance());
+            day.put("duration", (Long) day.get("duration") + activity.getDuration());
+            day.put("activities", (Long) day.get("activities") + 1);
+        }
+        return days;
+    }
+}
@@ -0,0 +1,37 @@
+package highwaystar.repository;
+
+import highwaystar.models.UserProfile;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage for user profiles. Totals are maintained by {@link ActivityRepository}; the
+ * streak and achievements only through the dedicated methods here.
+ */
+public interface ProfileRepository {
+
+    CompletableFuture<Void> createProfile(UserProfile profile);
+
+    // Never completes with null: a user without a stored profile gets the defaults, and a stored
+    // profile that can't be read completes exceptionally
+    CompletableFuture<UserProfile> getProfile(String uid);
+
+    /**
+     * Writes the user-editable fields only: email, display name, weight, height and preferences.
+     */
+    CompletableFuture<Void> updateProfileDetails(UserProfile profile);
+
+    /**
+     * Applies {@link StreakRule} to the stored profile atomically.
+     */
+    CompletableFuture<StreakRule.Outcome> advanceStreak(String uid, String activityDate);
+
+    CompletableFuture<Void> setStreak(String uid, int currentStreak, int longestStreak, String lastActiveDate);
+
+    // Achievement id -> unlock time in epoch seconds
+    CompletableFuture<Void> addAchievements(String uid, Map<String, Integer> achievements);
+
+    CompletableFuture<List<String>> listUserIds();
+}
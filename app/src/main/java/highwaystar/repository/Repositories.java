@@ -0,0 +1,81 @@
+package highwaystar.repository;
+
+import highwaystar.utils.Config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * The storage backend chosen by storage.backend: firebase (default), local (append-only
+ * log file at storage.log.path) or memory (nothing persisted). Sign-in always goes
+ * through Firebase Auth.
+ */
+public class Repositories {
+    private static ActivityRepository activities;
+    private static ProfileRepository profiles;
+    private static ActivityLookup activityLookup;
+
+    private Repositories() {}
+
+    public static synchronized ActivityRepository activities() {
+        if (activities == null) {
+            init();
+        }
+        return activities;
+    }
+
+    public static synchronized ProfileRepository profiles() {
+        if (profiles == null) {
+            init();
+        }
+        return profiles;
+    }
+
+    /**
+     * What backends consult before reading an activity they may already hold; nothing until
+     * one is registered.
+     */
+    public static synchronized ActivityLookup activityLookup() {
+        return activityLookup;
+    }
+
+    public static synchronized void setActivityLookup(ActivityLookup lookup) {
+        activityLookup = lookup;
+    }
+
+    // One instance serves both interfaces so activity writes and the profile totals they
+    // maintain stay in the same store
+    private static void init() {
+        Config config = Config.getInstance();
+        String backend = config.get("storage.backend", "firebase");
+        switch (backend) {
+            case "firebase": {
+                FirebaseRepository repository = new FirebaseRepository();
+                activities = repository;
+                profiles = repository;
+                break;
+            }
+            case "local": {
+                String path = config.get("storage.log.path", System.getProperty("user.home") + "/.highwaystar/store.log");
+                try {
+                    LogFileRepository repository = new LogFileRepository(Paths.get(path),
+                        config.getBoolean("storage.log.fsync", false));
+                    activities = repository;
+                    profiles = repository;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not open local store " + path, e);
+                }
+                break;
+            }
+            case "memory": {
+                InMemoryRepository repository = new InMemoryRepository();
+                activities = repository;
+                profiles = repository;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown storage.backend: " + backend);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package highwaystar.repository;
+
+import highwaystar.models.UserProfile;
+import highwaystar.utils.DateUtils;
+
+/**
+ * The incremental streak update shared by every backend; each one applies it atomically
+ * to its stored profile.
+ */
+public final class StreakRule {
+    public enum Outcome { UNCHANGED, ADVANCED, NEEDS_REPAIR }
+
+    private StreakRule() {}
+
+    /**
+     * Extends the profile's streak by one activity day. Only ADVANCED changes the profile;
+     * NEEDS_REPAIR means the stored state can't be advanced incrementally and the streak
+     * has to be rebuilt from the active days.
+     */
+    public static Outcome apply(UserProfile profile, String activityDate) {
+        String lastActive = profile.getLastActiveDate();
+        int currentStreak;
+
+        if (lastActive == null) {
+            // Profiles written before lastActiveDate was tracked only have the old
+            // counters; rebuild them once unless this is the very first activity
+            if (profile.getTotalActivities() > 1) {
+                return Outcome.NEEDS_REPAIR;
+            }
+            currentStreak = 1;
+        } else {
+            long days = DateUtils.signedDaysFrom(lastActive, activityDate);
+            if (days == 0) {
+                return Outcome.UNCHANGED;
+            }
+            if (days < 0) {
+                // A backdated activity may close a gap in an older run
+                return Outcome.NEEDS_REPAIR;
+            }
+            currentStreak = days == 1 ? profile.getCurrentStreak() + 1 : 1;
+        }
+
+        profile.setLastActiveDate(activityDate);
+        profile.setCurrentStreak(currentStreak);
+        profile.setLongestStreak(Math.max(profile.getLongestStreak(), currentStreak));
+        return Outcome.ADVANCED;
+    }
+}
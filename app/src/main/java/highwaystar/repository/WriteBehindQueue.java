@@ -0,0 +1,206 @@
+package highwaystar.repository;
+
+import highwaystar.utils.Config;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+public class WriteBehindQueue {
+    private static WriteBehindQueue instance;
+    private final Function<Map<String, Object>, CompletableFuture<Void>> sender;
+    private final long windowMs;
+    private final ScheduledExecutorService scheduler;
+
+    // Keyed by database path; insertion order keeps flushes deterministic
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private static class PendingWrite {
+        private Object value;
+        private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        PendingWrite(Object value) {
+            this.value = value;
+        }
+    }
+
+    private WriteBehindQueue() {
+        this(Config.getInstance().getInt("writebehind.window.ms", 500), WriteBehindQueue::sendToDatabase);
+
+        // Don't lose writes that are still inside the coalescing window on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                flush().get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                System.err.println("Pending writes not flushed on exit: " + e.getMessage());
+            }
+        }));
+    }
+
+    // Sends each flushed batch through sender instead of the database; for tests
+    WriteBehindQueue(long windowMs, Function<Map<String, Object>, CompletableFuture<Void>> sender) {
+        this.windowMs = windowMs;
+        this.sender = sender;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static WriteBehindQueue getInstance() {
+        if (instance == null) {
+            instance = new WriteBehindQueue();
+        }
+        return instance;
+    }
+
+    public CompletableFuture<Void> write(String path, Object value) {
+        return writeAll(Collections.singletonMap(path, value));
+    }
+
+    public synchronized CompletableFuture<Void> writeAll(Map<String, Object> updates) {
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        for (Map.Entry<String, Object> update : updates.entrySet()) {
+            parts.add(enqueue(update.getKey(), update.getValue()));
+        }
+
+        if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Takes the pending writes at or below a path out of the queue, for a direct write that
+     * deletes or moves that path and would otherwise be undone by the next flush. Returns their
+     * values keyed by path relative to the given one ("" for the path itself). Their callers
+     * complete with the outcome, so the direct write should carry any values it keeps.
+     */
+    public synchronized Map<String, Object> takePending(String path, CompletableFuture<Void> outcome) {
+        Map<String, Object> taken = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        Iterator<Map.Entry<String, PendingWrite>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, PendingWrite> entry = it.next();
+            String key = entry.getKey();
+            if (key.equals(path) || key.startsWith(path + "/")) {
+                taken.put(key.length() > path.length() ? key.substring(path.length() + 1) : "", entry.getValue().value);
+                waiters.addAll(entry.getValue().waiters);
+                it.remove();
+            }
+        }
+        if (!waiters.isEmpty()) {
+            outcome.whenComplete((result, error) -> waiters.forEach(waiter -> {
+                if (error == null) {
+                    waiter.complete(null);
+                } else {
+                    waiter.completeExceptionally(error);
+                }
+            }));
+        }
+        return taken;
+    }
+
+    public CompletableFuture<Void> flush() {
+        Map<String, PendingWrite> batch;
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (batch.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+
+        Map<String, Object> updates = new HashMap<>();
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+            updates.put(entry.getKey(), entry.getValue().value);
+            waiters.addAll(entry.getValue().waiters);
+        }
+        waiters.add(done);
+
+        try {
+            sender.apply(updates)
+                .whenComplete((result, error) -> {
+                    if (error == null) {
+                        waiters.forEach(waiter -> waiter.complete(null));
+                    } else {
+                        waiters.forEach(waiter -> waiter.completeExceptionally(error));
+                    }
+                });
+        } catch (Exception e) {
+            waiters.forEach(waiter -> waiter.completeExceptionally(e));
+        }
+        return done;
+    }
+
+    private static CompletableFuture<Void> sendToDatabase(Map<String, Object> updates) {
+        return FirebaseFutures.toCompletable(FirebaseService.getInstance().getDatabase().updateChildrenAsync(updates));
+    }
+
+    private CompletableFuture<Void> enqueue(String path, Object value) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        // A pending write to an ancestor already covers this path, fold the value into it
+        String ancestor = findPendingAncestor(path);
+        if (ancestor != null) {
+            PendingWrite write = pending.get(ancestor);
+            write.value = withChild(write.value, path.substring(ancestor.length() + 1), value);
+            write.waiters.add(future);
+            return future;
+        }
+
+        // Pending writes below this path are superseded by it
+        PendingWrite write = new PendingWrite(value);
+        Iterator<Map.Entry<String, PendingWrite>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, PendingWrite> entry = it.next();
+            if (entry.getKey().equals(path) || entry.getKey().startsWith(path + "/")) {
+                write.waiters.addAll(entry.getValue().waiters);
+                it.remove();
+            }
+        }
+        write.waiters.add(future);
+        pending.put(path, write);
+        return future;
+    }
+
+    private String findPendingAncestor(String path) {
+        int slash = path.lastIndexOf('/');
+        while (slash > 0) {
+            String candidate = path.substring(0, slash);
+            if (pending.containsKey(candidate)) {
+                return candidate;
+            }
+            slash = candidate.lastIndexOf('/');
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object withChild(Object parent, String relativePath, Object value) {
+        Map<String, Object> root = parent instanceof Map ?
+            new HashMap<>((Map<String, Object>) parent) : new HashMap<>();
+
+        String[] segments = relativePath.split("/");
+        Map<String, Object> node = root;
+        for (int i = 0; i < segments.length - 1; i++) {
+            Object child = node.get(segments[i]);
+            Map<String, Object> copy = child instanceof Map ?
+                new HashMap<>((Map<String, Object>) child) : new HashMap<>();
+            node.put(segments[i], copy);
+            node = copy;
+        }
+        node.put(segments[segments.length - 1], value);
+        return root;
+    }
+}
@@ -0,0 +1,188 @@
+package highwaystar.services;
+
+import highwaystar.models.UserProfile;
+import highwaystar.repository.Repositories;
+import highwaystar.utils.Config;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Unlocks achievements from threshold rules defined in config:
+ * achievement.&lt;name&gt; = ID, achievement.&lt;name&gt;.metric = totalSteps, achievement.&lt;name&gt;.threshold = 10000
+ */
+public class AchievementEngine {
+    private static AchievementEngine instance;
+
+    private static final String RULE_PREFIX = "achievement.";
+    private static final String METRIC_SUFFIX = ".metric";
+    private static final String THRESHOLD_SUFFIX = ".threshold";
+
+    public enum Metric {
+        TOTAL_ACTIVITIES("totalActivities", UserProfile::getTotalActivities),
+        TOTAL_STEPS("totalSteps", UserProfile::getTotalSteps),
+        TOTAL_DISTANCE("totalDistance", UserProfile::getTotalDistance),
+        CURRENT_STREAK("currentStreak", UserProfile::getCurrentStreak),
+        LONGEST_STREAK("longestStreak", UserProfile::getLongestStreak);
+
+        private final String configName;
+        private final ToDoubleFunction<UserProfile> reader;
+
+        Metric(String configName, ToDoubleFunction<UserProfile> reader) {
+            this.configName = configName;
+            this.reader = reader;
+        }
+
+        public double read(UserProfile profile) {
+            return reader.applyAsDouble(profile);
+        }
+
+        static Metric fromConfigName(String name) {
+            for (Metric metric : values()) {
+                if (metric.configName.equals(name)) {
+                    return metric;
+                }
+            }
+            return null;
+        }
+    }
+
+    public static class Rule {
+        private final String achievementId;
+        private final Metric metric;
+        private final double threshold;
+
+        Rule(String achievementId, Metric metric, double threshold) {
+            this.achievementId = achievementId;
+            this.metric = metric;
+            this.threshold = threshold;
+        }
+
+        public String getAchievementId() { return achievementId; }
+        public Metric getMetric() { return metric; }
+        public double getThreshold() { return threshold; }
+    }
+
+    // Rules per metric, lowest threshold first so evaluation stops at the first one not reached
+    private final Map<Metric, List<Rule>> rulesByMetric = new EnumMap<>(Metric.class);
+
+    private AchievementEngine() {
+        loadRules(Config.getInstance());
+    }
+
+    public static AchievementEngine getInstance() {
+        if (instance == null) {
+            instance = new AchievementEngine();
+        }
+        return instance;
+    }
+
+    private void loadRules(Config config) {
+        for (String key : config.getKeys(RULE_PREFIX)) {
+            if (key.endsWith(METRIC_SUFFIX) || key.endsWith(THRESHOLD_SUFFIX)) {
+                continue;
+            }
+
+            String metricName = config.get(key + METRIC_SUFFIX);
+            Metric metric = Metric.fromConfigName(metricName);
+            double threshold = config.getDouble(key + THRESHOLD_SUFFIX, Double.NaN);
+            if (metric == null || Double.isNaN(threshold)) {
+                System.err.println("Ignoring achievement rule " + key + ": metric=" + metricName +
+                    ", threshold=" + config.get(key + THRESHOLD_SUFFIX));
+                continue;
+            }
+
+            rulesByMetric.computeIfAbsent(metric, m -> new ArrayList<>())
+                .add(new Rule(config.get(key), metric, threshold));
+        }
+
+        for (List<Rule> rules : rulesByMetric.values()) {
+            rules.sort(Comparator.comparingDouble(Rule::getThreshold));
+        }
+    }
+
+    public List<Rule> getRules() {
+        List<Rule> rules = new ArrayList<>();
+        rulesByMetric.values().forEach(rules::addAll);
+        return rules;
+    }
+
+    /**
+     * Unlocks on the profile every achievement whose rule depends on one of the changed
+     * metrics and is now met. Returns the ids unlocked by this call.
+     */
+    public List<String> evaluate(UserProfile profile, Set<Metric> changed) {
+        List<String> unlocked = new ArrayList<>();
+        for (Metric metric : changed) {
+            List<Rule> rules = rulesByMetric.get(metric);
+            if (rules == null) {
+                continue;
+            }
+
+            double value = metric.read(profile);
+            for (Rule rule : rules) {
+                if (value < rule.threshold) {
+                    break;
+                }
+                if (!profile.hasAchievement(rule.achievementId)) {
+                    profile.addAchievement(rule.achievementId);
+                    unlocked.add(rule.achievementId);
+                }
+            }
+        }
+        return unlocked;
+    }
+
+    public List<String> evaluateAll(UserProfile profile) {
+        return evaluate(profile, EnumSet.allOf(Metric.class));
+    }
+
+    /**
+     * Evaluates every rule against every stored profile, e.g. after new rules were added
+     * to config. Returns the number of profiles that gained achievements.
+     */
+    public CompletableFuture<Integer> backfillAllUsers() {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        // The coordinator and the workers block on permits and reads, so they get their own
+        // threads instead of the common pool: one to feed the workers, the rest to run them
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism + 1, runnable -> {
+            Thread thread = new Thread(runnable, "achievement-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        CompletableFuture<Integer> result = CompletableFuture.supplyAsync(() -> {
+            // Bounds how many profiles are read ahead of the workers
+            Semaphore permits = new Semaphore(parallelism * 4);
+            AtomicInteger updated = new AtomicInteger();
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+            try {
+                for (String uid : Repositories.profiles().listUserIds().join()) {
+                    permits.acquire();
+                    tasks.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            if (!ProfileService.getInstance().backfillAchievements(uid).join().isEmpty()) {
+                                updated.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            System.err.println("Achievement backfill failed for " + uid + ": " + e.getMessage());
+                        } finally {
+                            permits.release();
+                        }
+                    }, pool));
+                }
+                CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return updated.get();
+        }, pool);
+        result.whenComplete((count, error) -> pool.shutdown());
+        return result;
+    }
+}
@@ -0,0 +1,290 @@
+package highwaystar.services;
+
+import highwaystar.models.Activity;
+import highwaystar.repository.ActivityLookup;
+import highwaystar.repository.ActivityRepository;
+import highwaystar.repository.Repositories;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ActivityFeed implements ActivityLookup {
+    private static ActivityFeed instance;
+    private final ActivityRepository activityRepository;
+
+    // Newest first, ties broken by id so distinct activities never collapse
+    private static final Comparator<Activity> NEWEST_FIRST = Comparator
+        .comparingLong(Activity::getTimestamp).reversed()
+        .thenComparing(Activity::getActivityId);
+
+    private final Map<String, Activity> activitiesById = new HashMap<>();
+    // Where the repository reports each activity as stored
+    private final Map<String, String> locationsById = new HashMap<>();
+    private final NavigableSet<Activity> activities = new TreeSet<>(NEWEST_FIRST);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Rebuilt lazily after the feed changes
+    private ActivityTable table;
+
+    private String userId;
+    private ActivityRepository.Subscription subscription;
+    // loaded: there is something to show; synced: the server's initial sync has completed
+    private boolean loaded = false;
+    private boolean synced = false;
+    // Seeded from the local snapshot and not yet seen in a server event
+    private final Set<String> unconfirmedIds = new HashSet<>();
+
+    public interface Listener {
+        void onActivitiesChanged(List<Activity> activities);
+    }
+
+    private ActivityFeed() {
+        activityRepository = Repositories.activities();
+    }
+
+    public static ActivityFeed getInstance() {
+        if (instance == null) {
+            instance = new ActivityFeed();
+            // Lets the backend skip reads for activities already in the feed
+            Repositories.setActivityLookup(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Shows previously saved activities until the server sync started by {@link #start(String)}
+     * completes; seeded activities the server no longer has are dropped at that point.
+     */
+    public synchronized void seed(String uid, List<Activity> seeded) {
+        if (!uid.equals(userId)) {
+            stop();
+            userId = uid;
+        }
+        if (synced) {
+            return;
+        }
+        for (Activity activity : seeded) {
+            if (!activitiesById.containsKey(activity.getActivityId())) {
+                put(activity, null);
+                unconfirmedIds.add(activity.getActivityId());
+            }
+        }
+        loaded = true;
+        table = null;
+    }
+
+    public synchronized void start(String uid) {
+        if (uid.equals(userId) && subscription != null) {
+            return;
+        }
+        if (!uid.equals(userId)) {
+            stop();
+        }
+
+        userId = uid;
+        subscription = activityRepository.watchActivities(uid, new ActivityRepository.ChangeListener() {
+            @Override
+            public void onActivitiesChanged(Map<String, Activity> stored, Map<String, String> removed) {
+                apply(uid, stored, removed);
+            }
+
+            @Override
+            public void onSynced() {
+                markLoaded(uid);
+            }
+        });
+    }
+
+    /**
+     * Detaches from storage and forgets the current user's activities. Subscribers stay
+     * registered: panels subscribe while the first sync is still pending, before
+     * {@link #start(String)} runs.
+     */
+    public synchronized void stop() {
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        userId = null;
+        subscription = null;
+        loaded = false;
+        synced = false;
+        unconfirmedIds.clear();
+        activitiesById.clear();
+        locationsById.clear();
+        activities.clear();
+        table = null;
+    }
+
+    /**
+     * Stops the feed and drops every subscriber, for sign-out.
+     */
+    public synchronized void reset() {
+        stop();
+        listeners.clear();
+    }
+
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+        List<Activity> current;
+        synchronized (this) {
+            if (!loaded) {
+                return;
+            }
+            current = new ArrayList<>(activities);
+        }
+        listener.onActivitiesChanged(current);
+    }
+
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized List<Activity> getActivities() {
+        return new ArrayList<>(activities);
+    }
+
+    public synchronized Activity getActivity(String activityId) {
+        return activitiesById.get(activityId);
+    }
+
+    @Override
+    public synchronized Activity getActivity(String uid, String activityId) {
+        return uid.equals(userId) ? activitiesById.get(activityId) : null;
+    }
+
+    /**
+     * Storage location the repository reported for a synced activity, or null if unknown.
+     */
+    @Override
+    public synchronized String getActivityLocation(String uid, String activityId) {
+        return uid.equals(userId) ? locationsById.get(activityId) : null;
+    }
+
+    public synchronized ActivityTable getTable() {
+        if (table == null) {
+            table = ActivityTable.ofSorted(activities.descendingSet());
+        }
+        return table;
+    }
+
+    /**
+     * The table for the given user, or null when the feed isn't synced for them.
+     */
+    public synchronized ActivityTable getTable(String uid) {
+        return synced && uid.equals(userId) ? getTable() : null;
+    }
+
+    /**
+     * The server-confirmed activities for the given user, or null before the initial sync.
+     */
+    public synchronized List<Activity> getSyncedActivities(String uid) {
+        return synced && uid.equals(userId) ? new ArrayList<>(activities) : null;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    private void apply(String uid, Map<String, Activity> stored, Map<String, String> removed) {
+        List<String> staleRoutes = new ArrayList<>();
+        synchronized (this) {
+            if (!uid.equals(userId)) {
+                return;
+            }
+            boolean changed = false;
+            for (Map.Entry<String, Activity> entry : stored.entrySet()) {
+                Activity previous = put(entry.getValue(), entry.getKey());
+                // Until the initial sync completes, anything not seeded may have changed while
+                // the app was closed
+                if (previous != null ? !sameRoute(previous, entry.getValue()) : !synced) {
+                    staleRoutes.add(entry.getValue().getActivityId());
+                }
+                changed = true;
+            }
+            for (Map.Entry<String, String> entry : removed.entrySet()) {
+                if (drop(entry.getKey(), entry.getValue())) {
+                    staleRoutes.add(entry.getKey());
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                return;
+            }
+            table = null;
+        }
+        invalidateRoutes(uid, staleRoutes);
+        notifyListeners();
+    }
+
+    // Callers hold the lock
+    private Activity put(Activity activity, String location) {
+        Activity previous = activitiesById.put(activity.getActivityId(), activity);
+        if (previous != null) {
+            activities.remove(previous);
+        }
+        activities.add(activity);
+        if (location != null) {
+            locationsById.put(activity.getActivityId(), location);
+            unconfirmedIds.remove(activity.getActivityId());
+        }
+        return previous;
+    }
+
+    // Only drops the activity if it is still stored at the given location; while an account is
+    // migrated the move's add and remove events can arrive in either order
+    private boolean drop(String activityId, String location) {
+        if (!location.equals(locationsById.get(activityId))) {
+            return false;
+        }
+        activities.remove(activitiesById.remove(activityId));
+        locationsById.remove(activityId);
+        return true;
+    }
+
+    private void markLoaded(String uid) {
+        List<String> staleRoutes;
+        synchronized (this) {
+            if (!uid.equals(userId) || synced) {
+                return;
+            }
+            for (String activityId : unconfirmedIds) {
+                activities.remove(activitiesById.remove(activityId));
+                locationsById.remove(activityId);
+            }
+            staleRoutes = new ArrayList<>(unconfirmedIds);
+            unconfirmedIds.clear();
+            synced = true;
+            loaded = true;
+            table = null;
+        }
+        invalidateRoutes(uid, staleRoutes);
+        notifyListeners();
+    }
+
+    // The route cache only knows user and activity ids, so remote edits and deletes reach it from here
+    private static void invalidateRoutes(String uid, List<String> activityIds) {
+        RouteCache routeCache = RouteCache.getInstance();
+        for (String activityId : activityIds) {
+            routeCache.remove(uid, activityId);
+        }
+    }
+
+    // A route is only replaced together with the summary figures derived from it
+    private static boolean sameRoute(Activity previous, Activity current) {
+        return previous.getTimestamp() == current.getTimestamp()
+            && previous.getDuration() == current.getDuration()
+            && Double.compare(previous.getDistance(), current.getDistance()) == 0;
+    }
+
+    private void notifyListeners() {
+        List<Activity> current;
+        synchronized (this) {
+            if (!loaded) {
+                return;
+            }
+            current = new ArrayList<>(activities);
+        }
+        for (Listener listener : listeners) {
+            listener.onActivitiesChanged(current);
+        }
+    }
+}
@@ -1,20 +1,20 @@
 package highwaystar.services;
 
-import com.google.firebase.database.*;
 import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import highwaystar.repository.ActivityRepository;
+import highwaystar.repository.Repositories;
 import highwaystar.utils.DateUtils;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 
 public class ActivityService {
     private static ActivityService instance;
-    private final FirebaseService firebaseService;
+    private final ActivityRepository activityRepository;
 
     private ActivityService() {
-        firebaseService = FirebaseService.getInstance();
+        activityRepository = Repositories.activities();
     }
 
     public static ActivityService getInstance() {
@@ -24,212 +24,158 @@ public class ActivityService {
         return instance;
     }
 
-    public CompletableFuture<String> saveActivity(Activity activity) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                DatabaseReference activitiesRef = firebaseService.getActivitiesRef(activity.getUserId());
-
-                // Generate activity ID if not set
-                if (activity.getActivityId() == null) {
-                    String activityId = activitiesRef.push().getKey();
-                    activity.setActivityId(activityId);
-                }
-
-                // Set date
-                activity.setDate(DateUtils.formatDate(activity.getTimestamp()));
+    /**
+     * Brings older accounts up to the layout the storage backend expects.
+     */
+    public CompletableFuture<Boolean> prepareUser(String uid) {
+        return activityRepository.prepareUser(uid);
+    }
 
-                // Save to Firebase
-                Map<String, Object> activityData = activityToMap(activity);
-                activitiesRef.child(activity.getActivityId()).setValueAsync(activityData);
+    public CompletableFuture<String> saveActivity(Activity activity) {
+        try {
+            // Set date
+            activity.setDate(DateUtils.formatDate(activity.getTimestamp()));
+
+            return activityRepository.saveActivity(activity)
+                .thenApply(activityId -> {
+                    // Streak and achievements are derived from the committed totals
+                    ProfileService.getInstance().updateStatsAfterActivity(activity);
+                    return activityId;
+                })
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    return null;
+                });
+        } catch (Exception e) {
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
 
-                // Update user profile statistics
-                ProfileService.getInstance().updateStatsAfterActivity(activity);
+    /**
+     * Saves imported activities as one batched write. Streak and achievements are not
+     * updated per batch; call {@link ProfileService#updateStatsAfterImport(String)} once
+     * the import is done.
+     */
+    public CompletableFuture<Void> saveActivities(String uid, List<Activity> activities) {
+        for (Activity activity : activities) {
+            activity.setUserId(uid);
+            activity.setDate(DateUtils.formatDate(activity.getTimestamp()));
+        }
+        return activityRepository.saveActivities(uid, activities);
+    }
 
-                return activity.getActivityId();
-            } catch (Exception e) {
-                e.printStackTrace();
+    public CompletableFuture<Activity> getActivity(String uid, String activityId) {
+        return getSummary(uid, activityId).thenCombine(getRoute(uid, activityId), (activity, route) -> {
+            if (activity == null) {
                 return null;
             }
+            Activity detailed = copySummary(activity);
+            if (route != null) {
+                detailed.setRoute(route);
+            }
+            return detailed;
         });
     }
 
-    public CompletableFuture<List<Activity>> getActivities(String uid) {
-        return CompletableFuture.supplyAsync(() -> {
-            CountDownLatch latch = new CountDownLatch(1);
-            List<Activity> activities = new ArrayList<>();
-
-            firebaseService.getActivitiesRef(uid).addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    for (DataSnapshot child : snapshot.getChildren()) {
-                        Activity activity = mapToActivity(child);
-                        if (activity != null) {
-                            activities.add(activity);
-                        }
-                    }
-                    latch.countDown();
-                }
-
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    latch.countDown();
-                }
-            });
-
-            try {
-                latch.await(10, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            // Sort by timestamp descending
-            activities.sort((a1, a2) -> Long.compare(a2.getTimestamp(), a1.getTimestamp()));
-            return activities;
-        });
+    /**
+     * With the route cache on, routes come back as views of the mapped cache file and only
+     * misses are read from storage.
+     */
+    public CompletableFuture<RouteBuffer> getRoute(String uid, String activityId) {
+        RouteCache routeCache = RouteCache.getInstance();
+        if (!routeCache.isEnabled()) {
+            return activityRepository.getRoute(uid, activityId);
+        }
+        RouteBuffer cached = routeCache.get(uid, activityId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = routeCache.getGeneration();
+        return activityRepository.getRoute(uid, activityId)
+            .thenApplyAsync(route -> routeCache.put(uid, activityId, route, generation), routeCache.getWriter());
     }
 
-    public CompletableFuture<Activity> getActivity(String uid, String activityId) {
-        return CompletableFuture.supplyAsync(() -> {
-            CountDownLatch latch = new CountDownLatch(1);
-            Activity[] result = new Activity[1];
-
-            firebaseService.getActivitiesRef(uid).child(activityId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(DataSnapshot snapshot) {
-                        result[0] = mapToActivity(snapshot);
-                        latch.countDown();
-                    }
-
-                    @Override
-                    public void onCancelled(DatabaseError error) {
-                        latch.countDown();
-                    }
+    public CompletableFuture<Boolean> updateActivity(Activity activity) {
+        try {
+            // The update may replace the route
+            RouteCache.getInstance().remove(activity.getUserId(), activity.getActivityId());
+            return activityRepository.updateActivity(activity)
+                .thenApply(v -> true)
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    return false;
                 });
-
-            try {
-                latch.await(10, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            return result[0];
-        });
+        } catch (Exception e) {
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(false);
+        }
     }
 
-    public CompletableFuture<Boolean> updateActivity(Activity activity) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                Map<String, Object> activityData = activityToMap(activity);
-                firebaseService.getActivitiesRef(activity.getUserId())
-                    .child(activity.getActivityId())
-                    .setValueAsync(activityData);
-                return true;
-            } catch (Exception e) {
+    public CompletableFuture<Boolean> updateNotes(String uid, String activityId, String notes) {
+        return activityRepository.updateNotes(uid, activityId, notes)
+            .thenApply(v -> true)
+            .exceptionally(e -> {
                 e.printStackTrace();
                 return false;
-            }
-        });
+            });
     }
 
     public CompletableFuture<Boolean> deleteActivity(String uid, String activityId) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                firebaseService.getActivitiesRef(uid)
-                    .child(activityId)
-                    .removeValueAsync();
+        RouteCache.getInstance().remove(uid, activityId);
+        return activityRepository.deleteActivity(uid, activityId)
+            .thenApply(v -> {
+                // Profile totals were decremented with the delete, and the removed day may
+                // have been part of the streak
+                ProfileService.getInstance().recomputeStreak(uid);
                 return true;
-            } catch (Exception e) {
+            })
+            .exceptionally(e -> {
                 e.printStackTrace();
                 return false;
-            }
-        });
+            });
     }
 
     public CompletableFuture<List<Activity>> getActivitiesByDateRange(String uid, long startTime, long endTime) {
-        return getActivities(uid).thenApply(activities ->
-            activities.stream()
-                .filter(a -> a.getTimestamp() >= startTime && a.getTimestamp() <= endTime)
-                .toList()
-        );
+        return activityRepository.listActivities(uid, startTime, endTime);
     }
 
     public CompletableFuture<Map<String, Integer>> getStepsByDate(String uid, int days) {
-        return getActivities(uid).thenApply(activities -> {
-            Map<String, Integer> stepsByDate = new HashMap<>();
-            long cutoffTime = System.currentTimeMillis() - (days * 24L * 60 * 60 * 1000);
-
-            for (Activity activity : activities) {
-                if (activity.getTimestamp() >= cutoffTime) {
-                    String date = activity.getDate();
-                    stepsByDate.put(date, stepsByDate.getOrDefault(date, 0) + activity.getSteps());
-                }
-            }
+        long endTime = System.currentTimeMillis();
+        long cutoffTime = endTime - (days * 24L * 60 * 60 * 1000);
+
+        // The live feed already holds every activity in columnar form
+        ActivityTable table = ActivityFeed.getInstance().getTable(uid);
+        if (table != null) {
+            return CompletableFuture.completedFuture(
+                table.stepsByDate(DateUtils.getStartOfDay(cutoffTime), endTime));
+        }
 
-            return stepsByDate;
-        });
+        return activityRepository.getStepsByDate(uid, DateUtils.formatDate(cutoffTime), DateUtils.formatDate(endTime));
     }
 
-    private Map<String, Object> activityToMap(Activity activity) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("activityId", activity.getActivityId());
-        map.put("userId", activity.getUserId());
-        map.put("timestamp", activity.getTimestamp());
-        map.put("date", activity.getDate());
-        map.put("type", activity.getType() != null ? activity.getType().name() : Activity.ActivityType.WALK.name());
-        map.put("duration", activity.getDuration());
-        map.put("steps", activity.getSteps());
-        map.put("distance", activity.getDistance());
-        map.put("notes", activity.getNotes());
-
-        // Convert route to map
-        if (activity.getRoute() != null && !activity.getRoute().isEmpty()) {
-            List<Map<String, Object>> routeList = new ArrayList<>();
-            for (Activity.RoutePoint point : activity.getRoute()) {
-                Map<String, Object> pointMap = new HashMap<>();
-                pointMap.put("latitude", point.getLatitude());
-                pointMap.put("longitude", point.getLongitude());
-                pointMap.put("timestamp", point.getTimestamp());
-                routeList.add(pointMap);
-            }
-            map.put("route", routeList);
+    // Summaries are usually already in the live feed, so this rarely needs a read
+    private CompletableFuture<Activity> getSummary(String uid, String activityId) {
+        Activity cached = ActivityFeed.getInstance().getActivity(activityId);
+        if (cached != null && uid.equals(cached.getUserId())) {
+            return CompletableFuture.completedFuture(cached);
         }
-
-        return map;
+        return activityRepository.getActivity(uid, activityId);
     }
 
-    private Activity mapToActivity(DataSnapshot snapshot) {
-        try {
-            Activity activity = new Activity();
-            activity.setActivityId(snapshot.getKey());
-            activity.setUserId(snapshot.child("userId").getValue(String.class));
-            activity.setTimestamp(snapshot.child("timestamp").getValue(Long.class));
-            activity.setDate(snapshot.child("date").getValue(String.class));
-
-            String typeStr = snapshot.child("type").getValue(String.class);
-            activity.setType(typeStr != null ? Activity.ActivityType.valueOf(typeStr) : Activity.ActivityType.WALK);
-
-            activity.setDuration(snapshot.child("duration").getValue(Integer.class));
-            activity.setSteps(snapshot.child("steps").getValue(Integer.class));
-            activity.setDistance(snapshot.child("distance").getValue(Double.class));
-            activity.setNotes(snapshot.child("notes").getValue(String.class));
-
-            // Parse route
-            List<Activity.RoutePoint> route = new ArrayList<>();
-            DataSnapshot routeSnapshot = snapshot.child("route");
-            for (DataSnapshot pointSnapshot : routeSnapshot.getChildren()) {
-                Activity.RoutePoint point = new Activity.RoutePoint();
-                point.setLatitude(pointSnapshot.child("latitude").getValue(Double.class));
-                point.setLongitude(pointSnapshot.child("longitude").getValue(Double.class));
-                point.setTimestamp(pointSnapshot.child("timestamp").getValue(Long.class));
-                route.add(point);
-            }
-            activity.setRoute(route);
-
-            return activity;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
+    private Activity copySummary(Activity activity) {
+        Activity copy = new Activity();
+        copy.setActivityId(activity.getActivityId());
+        copy.setUserId(activity.getUserId());
+        copy.setTimestamp(activity.getTimestamp());
+        copy.setDate(activity.getDate());
+        copy.setType(activity.getType());
+        copy.setDuration(activity.getDuration());
+        copy.setSteps(activity.getSteps());
+        copy.setDistance(activity.getDistance());
+        copy.setNotes(activity.getNotes());
+        copy.setRoute(activity.getRoute().copy());
+        copy.setOverview(activity.getOverview());
+        return copy;
     }
 }
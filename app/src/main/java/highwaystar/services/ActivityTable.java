@@ -0,0 +1,199 @@
+package highwaystar.services;
+
+import highwaystar.models.Activity;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Immutable column-per-field copy of a user's activity summaries, oldest first.
+ * Time ranges resolve to row index ranges by binary search; row ranges are
+ * [from, to) and feed the primitive aggregate loops below.
+ */
+public class ActivityTable {
+    private static final Activity.ActivityType[] TYPES = Activity.ActivityType.values();
+
+    private final String[] ids;
+    private final long[] timestamps;
+    private final long[] epochDays;
+    private final int[] steps;
+    private final int[] durations;
+    private final double[] distances;
+    private final byte[] types;
+
+    private ActivityTable(int size) {
+        ids = new String[size];
+        timestamps = new long[size];
+        epochDays = new long[size];
+        steps = new int[size];
+        durations = new int[size];
+        distances = new double[size];
+        types = new byte[size];
+    }
+
+    /**
+     * Builds a table from activities in any order.
+     */
+    public static ActivityTable of(Collection<Activity> activities) {
+        List<Activity> sorted = new ArrayList<>(activities);
+        sorted.sort(Comparator.comparingLong(Activity::getTimestamp));
+        return ofSorted(sorted);
+    }
+
+    /**
+     * Builds a table from activities already sorted oldest first.
+     */
+    static ActivityTable ofSorted(Iterable<Activity> sorted) {
+        List<Activity> rows = new ArrayList<>();
+        sorted.forEach(rows::add);
+
+        ZoneId zone = ZoneId.systemDefault();
+        ActivityTable table = new ActivityTable(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Activity activity = rows.get(i);
+            table.ids[i] = activity.getActivityId();
+            table.timestamps[i] = activity.getTimestamp();
+            table.epochDays[i] = Instant.ofEpochMilli(activity.getTimestamp()).atZone(zone).toLocalDate().toEpochDay();
+            table.steps[i] = activity.getSteps();
+            table.durations[i] = activity.getDuration();
+            table.distances[i] = activity.getDistance();
+            table.types[i] = (byte) activity.getType().ordinal();
+        }
+        return table;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public String getId(int row) { return ids[row]; }
+    public long getTimestamp(int row) { return timestamps[row]; }
+    // Local day of the activity as LocalDate.toEpochDay()
+    public long getEpochDay(int row) { return epochDays[row]; }
+    public int getSteps(int row) { return steps[row]; }
+    public int getDuration(int row) { return durations[row]; }
+    public double getDistance(int row) { return distances[row]; }
+    public Activity.ActivityType getType(int row) { return TYPES[types[row]]; }
+
+    /**
+     * First row with a timestamp at or after the given time.
+     */
+    public int lowerBound(long timestamp) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First row with a timestamp after the given time.
+     */
+    public int upperBound(long timestamp) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public long sumSteps(int from, int to) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            total += steps[i];
+        }
+        return total;
+    }
+
+    public long sumDuration(int from, int to) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            total += durations[i];
+        }
+        return total;
+    }
+
+    public double sumDistance(int from, int to) {
+        double total = 0;
+        for (int i = from; i < to; i++) {
+            total += distances[i];
+        }
+        return total;
+    }
+
+    public int countByType(Activity.ActivityType type, int from, int to) {
+        byte code = (byte) type.ordinal();
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (types[i] == code) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Steps per local day for the given number of days starting at firstDay;
+     * index 0 is firstDay.
+     */
+    public long[] stepsPerDay(LocalDate firstDay, int days) {
+        long[] totals = new long[days];
+        long first = firstDay.toEpochDay();
+        int from = lowerDayBound(first);
+        for (int i = from; i < epochDays.length; i++) {
+            long offset = epochDays[i] - first;
+            if (offset >= days) {
+                break;
+            }
+            totals[(int) offset] += steps[i];
+        }
+        return totals;
+    }
+
+    /**
+     * Steps per yyyy-MM-dd date for every day with activities in the time range.
+     */
+    public Map<String, Integer> stepsByDate(long startTime, long endTime) {
+        Map<String, Integer> stepsByDate = new HashMap<>();
+        int to = upperBound(endTime);
+        int i = lowerBound(startTime);
+        // Rows are in time order, so each day is one contiguous run
+        while (i < to) {
+            long day = epochDays[i];
+            int total = 0;
+            while (i < to && epochDays[i] == day) {
+                total += steps[i++];
+            }
+            stepsByDate.put(LocalDate.ofEpochDay(day).toString(), total);
+        }
+        return stepsByDate;
+    }
+
+    private int lowerDayBound(long epochDay) {
+        int low = 0;
+        int high = epochDays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,167 @@
+package highwaystar.services;
+
+import highwaystar.models.Activity;
+import highwaystar.models.UserProfile;
+import highwaystar.utils.BinaryCodec;
+import highwaystar.utils.Config;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Last known profile and activity summaries per user, kept on disk so the next login
+ * can render before Firebase answers. Written after each sync and on exit.
+ */
+public class LocalSnapshot {
+    private static LocalSnapshot instance;
+
+    private static final int MAGIC = 0x48535331; // "HSS1"
+    private static final int FORMAT_VERSION = 1;
+    private static final long SAVE_DELAY_MS = 2000;
+
+    private final Path directory;
+    private final boolean enabled;
+    private final ScheduledExecutorService writer;
+    private final Map<String, ScheduledFuture<?>> pendingSaves = new ConcurrentHashMap<>();
+    private volatile String currentUserId;
+
+    public static class Snapshot {
+        private final long savedAt;
+        private final UserProfile profile;
+        private final List<Activity> activities;
+
+        Snapshot(long savedAt, UserProfile profile, List<Activity> activities) {
+            this.savedAt = savedAt;
+            this.profile = profile;
+            this.activities = activities;
+        }
+
+        public long getSavedAt() { return savedAt; }
+        public UserProfile getProfile() { return profile; }
+        public List<Activity> getActivities() { return activities; }
+    }
+
+    private LocalSnapshot() {
+        Config config = Config.getInstance();
+        directory = Paths.get(config.get("snapshot.dir", System.getProperty("user.home") + "/.highwaystar"));
+        enabled = config.getBoolean("snapshot.enabled", true);
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            String uid = currentUserId;
+            if (uid != null) {
+                save(uid);
+            }
+        }));
+    }
+
+    public static LocalSnapshot getInstance() {
+        if (instance == null) {
+            instance = new LocalSnapshot();
+        }
+        return instance;
+    }
+
+    public void setCurrentUser(String uid) {
+        currentUserId = uid;
+    }
+
+    /**
+     * Returns the saved snapshot for the user, or null if there is none or it can't be read.
+     */
+    public Snapshot load(String uid) {
+        Path file = fileFor(uid);
+        if (!enabled || !Files.exists(file)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !uid.equals(in.readUTF())) {
+                return null;
+            }
+            long savedAt = in.readLong();
+            UserProfile profile = in.readBoolean() ? BinaryCodec.readProfile(in, uid) : null;
+
+            int count = in.readInt();
+            List<Activity> activities = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                activities.add(BinaryCodec.readActivity(in, uid));
+            }
+            return new Snapshot(savedAt, profile, activities);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable local snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves shortly after the last of a burst of changes.
+     */
+    public void scheduleSave(String uid) {
+        if (!enabled) {
+            return;
+        }
+        ScheduledFuture<?> previous = pendingSaves.put(uid,
+            writer.schedule(() -> save(uid), SAVE_DELAY_MS, TimeUnit.MILLISECONDS));
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    /**
+     * Writes the server-confirmed activities and the last loaded profile. Nothing is written
+     * before the feed's initial sync, so a snapshot never outlives deletes made elsewhere.
+     */
+    public synchronized void save(String uid) {
+        pendingSaves.remove(uid);
+        List<Activity> activities = ActivityFeed.getInstance().getSyncedActivities(uid);
+        if (!enabled || activities == null) {
+            return;
+        }
+        UserProfile profile = ProfileService.getInstance().getProfileCache().peek(uid);
+
+        Path file = fileFor(uid);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(uid);
+                out.writeLong(System.currentTimeMillis());
+
+                out.writeBoolean(profile != null);
+                if (profile != null) {
+                    BinaryCodec.writeProfile(out, profile);
+                }
+
+                out.writeInt(activities.size());
+                for (Activity activity : activities) {
+                    BinaryCodec.writeActivity(out, activity);
+                }
+            }
+            // Readers only ever see a complete file
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not write local snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    public void delete(String uid) {
+        try {
+            Files.deleteIfExists(fileFor(uid));
+        } catch (IOException e) {
+            System.err.println("Could not delete local snapshot: " + e.getMessage());
+        }
+    }
+
+    private Path fileFor(String uid) {
+        return directory.resolve("snapshot-" + uid + ".bin");
+    }
+}
@@ -1,21 +1,33 @@
 package highwaystar.services;
 
-import com.google.firebase.database.*;
 import highwaystar.models.Activity;
 import highwaystar.models.UserProfile;
+import highwaystar.repository.ActivityRepository;
+import highwaystar.repository.ProfileRepository;
+import highwaystar.repository.Repositories;
+import highwaystar.repository.StreakRule;
+import highwaystar.utils.Config;
 import highwaystar.utils.DateUtils;
+import highwaystar.utils.SingleFlight;
+import highwaystar.utils.TtlCache;
 
+import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 
 public class ProfileService {
     private static ProfileService instance;
-    private final FirebaseService firebaseService;
+    private final ProfileRepository profileRepository;
+    private final ActivityRepository activityRepository;
+    private final SingleFlight<String, UserProfile> profileReads = new SingleFlight<>();
+    private final TtlCache<String, UserProfile> profileCache;
+    // Bumped by every invalidation, so a read that started before one can't cache what it read
+    private long cacheGeneration;
 
     private ProfileService() {
-        firebaseService = FirebaseService.getInstance();
+        profileRepository = Repositories.profiles();
+        activityRepository = Repositories.activities();
+        profileCache = new TtlCache<>(Config.getInstance().getInt("cache.profile.ttl.ms", 60000));
     }
 
     public static ProfileService getInstance() {
@@ -26,251 +38,216 @@ public class ProfileService {
     }
 
     public CompletableFuture<Boolean> createProfile(String uid, String email) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                UserProfile profile = new UserProfile(uid, email);
-                Map<String, Object> profileData = profileToMap(profile);
-                firebaseService.getProfileRef(uid).setValueAsync(profileData);
-                return true;
-            } catch (Exception e) {
+        return profileRepository.createProfile(new UserProfile(uid, email))
+            .thenApply(v -> true)
+            .exceptionally(e -> {
                 e.printStackTrace();
                 return false;
-            }
-        });
+            });
     }
 
+    /**
+     * Every caller gets its own copy, so edits to it don't reach the cache or other callers.
+     */
     public CompletableFuture<UserProfile> getProfile(String uid) {
-        return CompletableFuture.supplyAsync(() -> {
-            CountDownLatch latch = new CountDownLatch(1);
-            UserProfile[] result = new UserProfile[1];
-
-            firebaseService.getProfileRef(uid).addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    result[0] = mapToProfile(snapshot, uid);
-                    latch.countDown();
-                }
+        UserProfile cached = profileCache.get(uid);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.copy());
+        }
 
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    latch.countDown();
+        // Panels built together at login all ask for the same profile
+        return profileReads.run(uid, () -> {
+            long generation = getCacheGeneration();
+            return readProfile(uid).thenApply(profile -> {
+                if (profile != null) {
+                    cacheIfCurrent(uid, profile, generation);
                 }
+                return profile;
             });
-
-            try {
-                latch.await(10, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            return result[0];
-        });
+        }).thenApply(profile -> profile != null ? profile.copy() : null);
     }
 
-    public CompletableFuture<Boolean> updateProfile(UserProfile profile) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                Map<String, Object> profileData = profileToMap(profile);
-                firebaseService.getProfileRef(profile.getUid()).setValueAsync(profileData);
-                return true;
-            } catch (Exception e) {
-                e.printStackTrace();
-                return false;
-            }
-        });
+    private CompletableFuture<UserProfile> readProfile(String uid) {
+        return profileRepository.getProfile(uid);
     }
 
-    public void updateStatsAfterActivity(Activity activity) {
-        getProfile(activity.getUserId()).thenAccept(profile -> {
-            if (profile != null) {
-                profile.setTotalSteps(profile.getTotalSteps() + activity.getSteps());
-                profile.setTotalDistance(profile.getTotalDistance() + activity.getDistance());
-                profile.setTotalActivities(profile.getTotalActivities() + 1);
-
-                // Update streak
-                updateStreak(profile, activity);
-
-                // Check for achievements
-                checkAchievements(profile);
-
-                updateProfile(profile);
-            }
-        });
+    /**
+     * Serves a locally saved profile until {@link #refreshProfile(String)} replaces it.
+     */
+    public void seedProfile(UserProfile profile) {
+        profileCache.put(profile.getUid(), profile.copy());
     }
 
-    private void updateStreak(UserProfile profile, Activity activity) {
-        // Get activities to calculate streak
-        ActivityService.getInstance().getActivities(profile.getUid()).thenAccept(activities -> {
-            if (activities.isEmpty()) {
-                profile.setCurrentStreak(1);
-                profile.setLongestStreak(1);
-                return;
-            }
-
-            // Sort by date
-            Set<String> uniqueDates = new TreeSet<>();
-            for (Activity a : activities) {
-                uniqueDates.add(a.getDate());
-            }
-
-            // Calculate current streak
-            int currentStreak = 0;
-            String today = DateUtils.getToday();
-            List<String> dateList = new ArrayList<>(uniqueDates);
-            Collections.reverse(dateList);
-
-            for (int i = 0; i < dateList.size(); i++) {
-                String date = dateList.get(i);
-                long daysDiff = DateUtils.daysBetween(
-                    System.currentTimeMillis(),
-                    java.time.LocalDate.parse(date).atStartOfDay(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli()
-                );
-
-                if (daysDiff == i) {
-                    currentStreak++;
-                } else {
-                    break;
-                }
-            }
-
-            profile.setCurrentStreak(currentStreak);
-            if (currentStreak > profile.getLongestStreak()) {
-                profile.setLongestStreak(currentStreak);
-            }
-        });
+    public CompletableFuture<UserProfile> refreshProfile(String uid) {
+        invalidateProfile(uid);
+        return getProfile(uid);
     }
 
-    private void checkAchievements(UserProfile profile) {
-        // First activity
-        if (profile.getTotalActivities() == 1 && !profile.hasAchievement("FIRST_ACTIVITY")) {
-            profile.addAchievement("FIRST_ACTIVITY");
-        }
-
-        // Step milestones
-        if (profile.getTotalSteps() >= 10000 && !profile.hasAchievement("TEN_K_STEPS")) {
-            profile.addAchievement("TEN_K_STEPS");
-        }
-        if (profile.getTotalSteps() >= 100000 && !profile.hasAchievement("HUNDRED_K_STEPS")) {
-            profile.addAchievement("HUNDRED_K_STEPS");
-        }
-
-        // Streak achievements
-        if (profile.getCurrentStreak() >= 7 && !profile.hasAchievement("SEVEN_DAY_STREAK")) {
-            profile.addAchievement("SEVEN_DAY_STREAK");
-        }
-        if (profile.getCurrentStreak() >= 30 && !profile.hasAchievement("THIRTY_DAY_STREAK")) {
-            profile.addAchievement("THIRTY_DAY_STREAK");
+    public void invalidateProfile(String uid) {
+        synchronized (this) {
+            cacheGeneration++;
+            profileCache.invalidate(uid);
         }
+        // Reads already in flight may predate the change; later callers start a fresh one
+        profileReads.forget(uid);
+    }
 
-        // Marathon distance (42.195 km)
-        if (profile.getTotalDistance() >= 42.195 && !profile.hasAchievement("MARATHON_DISTANCE")) {
-            profile.addAchievement("MARATHON_DISTANCE");
+    public void clearProfileCache() {
+        synchronized (this) {
+            cacheGeneration++;
+            profileCache.clear();
         }
     }
 
-    private Map<String, Object> profileToMap(UserProfile profile) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("uid", profile.getUid());
-        map.put("email", profile.getEmail());
-        map.put("displayName", profile.getDisplayName());
-        map.put("weight", profile.getWeight());
-        map.put("height", profile.getHeight());
-        map.put("totalSteps", profile.getTotalSteps());
-        map.put("totalDistance", profile.getTotalDistance());
-        map.put("totalActivities", profile.getTotalActivities());
-        map.put("currentStreak", profile.getCurrentStreak());
-        map.put("longestStreak", profile.getLongestStreak());
-        map.put("memberSince", profile.getMemberSince());
-        map.put("achievements", profile.getAchievements());
+    private synchronized long getCacheGeneration() {
+        return cacheGeneration;
+    }
 
-        // Preferences
-        if (profile.getPreferences() != null) {
-            Map<String, Object> prefsMap = new HashMap<>();
-            UserProfile.UserPreferences prefs = profile.getPreferences();
-            prefsMap.put("useMetric", prefs.isUseMetric());
-            prefsMap.put("defaultZoom", prefs.getDefaultZoom());
-            prefsMap.put("defaultLat", prefs.getDefaultLat());
-            prefsMap.put("defaultLon", prefs.getDefaultLon());
-            prefsMap.put("dailyStepGoal", prefs.getDailyStepGoal());
-            prefsMap.put("autoPause", prefs.isAutoPause());
-            prefsMap.put("theme", prefs.getTheme());
-            map.put("preferences", prefsMap);
+    private synchronized void cacheIfCurrent(String uid, UserProfile profile, long generation) {
+        if (generation == cacheGeneration) {
+            profileCache.put(uid, profile);
         }
-
-        return map;
     }
 
-    private UserProfile mapToProfile(DataSnapshot snapshot, String uid) {
-        try {
-            UserProfile profile = new UserProfile();
-            profile.setUid(uid);
-            profile.setEmail(snapshot.child("email").getValue(String.class));
-            profile.setDisplayName(snapshot.child("displayName").getValue(String.class));
-
-            Double weight = snapshot.child("weight").getValue(Double.class);
-            profile.setWeight(weight != null ? weight : 70.0);
-
-            Double height = snapshot.child("height").getValue(Double.class);
-            profile.setHeight(height != null ? height : 170.0);
-
-            Integer totalSteps = snapshot.child("totalSteps").getValue(Integer.class);
-            profile.setTotalSteps(totalSteps != null ? totalSteps : 0);
-
-            Double totalDistance = snapshot.child("totalDistance").getValue(Double.class);
-            profile.setTotalDistance(totalDistance != null ? totalDistance : 0.0);
-
-            Integer totalActivities = snapshot.child("totalActivities").getValue(Integer.class);
-            profile.setTotalActivities(totalActivities != null ? totalActivities : 0);
-
-            Integer currentStreak = snapshot.child("currentStreak").getValue(Integer.class);
-            profile.setCurrentStreak(currentStreak != null ? currentStreak : 0);
-
-            Integer longestStreak = snapshot.child("longestStreak").getValue(Integer.class);
-            profile.setLongestStreak(longestStreak != null ? longestStreak : 0);
+    public SingleFlight<String, UserProfile> getProfileReads() {
+        return profileReads;
+    }
 
-            Long memberSince = snapshot.child("memberSince").getValue(Long.class);
-            profile.setMemberSince(memberSince != null ? memberSince : System.currentTimeMillis());
+    public TtlCache<String, UserProfile> getProfileCache() {
+        return profileCache;
+    }
 
-            // Achievements
-            DataSnapshot achievementsSnapshot = snapshot.child("achievements");
-            Map<String, Integer> achievements = new HashMap<>();
-            for (DataSnapshot child : achievementsSnapshot.getChildren()) {
-                achievements.put(child.getKey(), child.getValue(Integer.class));
-            }
-            profile.setAchievements(achievements);
+    public CompletableFuture<Boolean> updateProfile(UserProfile profile) {
+        // The local copy is the newest version of the editable fields
+        UserProfile updated = profile.copy();
+        synchronized (this) {
+            cacheGeneration++;
+            profileCache.put(updated.getUid(), updated);
+        }
+        profileReads.forget(updated.getUid());
 
-            // Preferences
-            DataSnapshot prefsSnapshot = snapshot.child("preferences");
-            if (prefsSnapshot.exists()) {
-                UserProfile.UserPreferences prefs = new UserProfile.UserPreferences();
-                Boolean useMetric = prefsSnapshot.child("useMetric").getValue(Boolean.class);
-                if (useMetric != null) prefs.setUseMetric(useMetric);
+        // Only user-editable fields; totals, streaks and achievements are owned by the
+        // activity write path and must not be overwritten with a possibly stale copy
+        return profileRepository.updateProfileDetails(profile)
+            .thenApply(v -> true)
+            .exceptionally(e -> {
+                e.printStackTrace();
+                return false;
+            });
+    }
 
-                Integer defaultZoom = prefsSnapshot.child("defaultZoom").getValue(Integer.class);
-                if (defaultZoom != null) prefs.setDefaultZoom(defaultZoom);
+    public void updateStatsAfterActivity(Activity activity) {
+        String uid = activity.getUserId();
+        // Totals were already incremented in the same write as the activity itself,
+        // so whatever is cached no longer matches the server
+        invalidateProfile(uid);
+
+        // Only rules fed by what this activity changed need evaluating
+        Set<AchievementEngine.Metric> changed = EnumSet.of(AchievementEngine.Metric.TOTAL_ACTIVITIES);
+        if (activity.getSteps() > 0) {
+            changed.add(AchievementEngine.Metric.TOTAL_STEPS);
+        }
+        if (activity.getDistance() > 0) {
+            changed.add(AchievementEngine.Metric.TOTAL_DISTANCE);
+        }
 
-                Double defaultLat = prefsSnapshot.child("defaultLat").getValue(Double.class);
-                if (defaultLat != null) prefs.setDefaultLat(defaultLat);
+        profileRepository.advanceStreak(uid, activity.getDate())
+            .thenCompose(outcome -> {
+                if (outcome != StreakRule.Outcome.UNCHANGED) {
+                    changed.add(AchievementEngine.Metric.CURRENT_STREAK);
+                    changed.add(AchievementEngine.Metric.LONGEST_STREAK);
+                }
+                return outcome == StreakRule.Outcome.NEEDS_REPAIR ?
+                    recomputeStreak(uid) : CompletableFuture.completedFuture(true);
+            })
+            .thenCompose(streakUpdated -> getProfile(uid))
+            .thenCompose(profile -> profile != null ?
+                saveAchievements(profile, AchievementEngine.getInstance().evaluate(profile, changed)) :
+                CompletableFuture.completedFuture(Collections.<String>emptyList()))
+            .exceptionally(e -> {
+                e.printStackTrace();
+                return null;
+            });
+    }
 
-                Double defaultLon = prefsSnapshot.child("defaultLon").getValue(Double.class);
-                if (defaultLon != null) prefs.setDefaultLon(defaultLon);
+    /**
+     * Rebuilds the streak and re-evaluates every achievement after a bulk import.
+     */
+    public CompletableFuture<Boolean> updateStatsAfterImport(String uid) {
+        invalidateProfile(uid);
+        return recomputeStreak(uid)
+            .thenCompose(streakUpdated -> backfillAchievements(uid))
+            .thenApply(unlocked -> {
+                invalidateProfile(uid);
+                return true;
+            })
+            .exceptionally(e -> {
+                e.printStackTrace();
+                return false;
+            });
+    }
 
-                Integer dailyStepGoal = prefsSnapshot.child("dailyStepGoal").getValue(Integer.class);
-                if (dailyStepGoal != null) prefs.setDailyStepGoal(dailyStepGoal);
+    /**
+     * Evaluates every achievement rule against the stored profile, bypassing the cache.
+     * Used by {@link AchievementEngine#backfillAllUsers()}.
+     */
+    CompletableFuture<List<String>> backfillAchievements(String uid) {
+        return readProfile(uid).thenCompose(profile -> profile != null ?
+            saveAchievements(profile, AchievementEngine.getInstance().evaluateAll(profile)) :
+            CompletableFuture.completedFuture(Collections.<String>emptyList()));
+    }
 
-                Boolean autoPause = prefsSnapshot.child("autoPause").getValue(Boolean.class);
-                if (autoPause != null) prefs.setAutoPause(autoPause);
+    private CompletableFuture<List<String>> saveAchievements(UserProfile profile, List<String> unlocked) {
+        if (unlocked.isEmpty()) {
+            return CompletableFuture.completedFuture(unlocked);
+        }
 
-                String theme = prefsSnapshot.child("theme").getValue(String.class);
-                if (theme != null) prefs.setTheme(theme);
+        Map<String, Integer> achievements = new HashMap<>();
+        for (String achievementId : unlocked) {
+            achievements.put(achievementId, profile.getAchievements().get(achievementId));
+        }
+        return profileRepository.addAchievements(profile.getUid(), achievements)
+            .thenApply(v -> {
+                // The unlocks were added to this copy only
+                invalidateProfile(profile.getUid());
+                return unlocked;
+            });
+    }
 
-                profile.setPreferences(prefs);
-            }
+    /**
+     * Rebuilds the streak from the daily rollups in one pass over the active days.
+     * Only needed to repair state the incremental update can't handle (deletes, backdated
+     * activities, profiles from before lastActiveDate existed).
+     */
+    public CompletableFuture<Boolean> recomputeStreak(String uid) {
+        invalidateProfile(uid);
+
+        return activityRepository.getActiveDays(uid)
+            .thenCompose(days -> {
+                LocalDate previous = null;
+                String lastActive = null;
+                int run = 0;
+                int longest = 0;
+
+                for (String day : days) {
+                    LocalDate date = LocalDate.parse(day);
+                    run = previous != null && previous.plusDays(1).equals(date) ? run + 1 : 1;
+                    longest = Math.max(longest, run);
+                    previous = date;
+                    lastActive = day;
+                }
 
-            return profile;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
+                // The last run only counts as current while it can still be extended today
+                int current = lastActive != null && DateUtils.signedDaysFrom(lastActive, DateUtils.getToday()) <= 1 ? run : 0;
+                return profileRepository.setStreak(uid, current, longest, lastActive);
+            })
+            .thenApply(v -> {
+                invalidateProfile(uid);
+                return true;
+            })
+            .exceptionally(e -> {
+                e.printStackTrace();
+                return false;
+            });
     }
 }
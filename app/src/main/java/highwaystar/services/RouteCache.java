@@ -0,0 +1,376 @@
+package highwaystar.services;
+
+import highwaystar.models.RouteBuffer;
+import highwaystar.utils.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loaded routes kept off the Java heap in a memory-mapped cache file, so years of GPS history
+ * don't add to the heap the UI's collector has to walk. A cached route is a read-only
+ * {@link RouteBuffer#view(ByteBuffer) view} of the mapping: loading it copies nothing, and the
+ * painter and distance code read its points in place. Off unless routes.cache.enabled is set.
+ *
+ * The file is a header followed by fixed-size regions, each mapped once, holding back-to-back
+ * records: marker (int), record length (int), key length (int), the key padded to 8 bytes,
+ * then the route's binary layout. Records never cross a region; a SKIP marker ends a region
+ * early and a zero marker ends the data. Replaced and removed routes are marked dead in place.
+ * The file is only ever overwritten from the start, never truncated, since mapped files can't
+ * shrink safely. The cache starts over at open if the last run didn't close it, if it was
+ * written with another byte order, if it filled up or if most of it is dead.
+ *
+ * Entries are keyed by user and activity id, with nothing about the route's content, so
+ * whoever learns that a route changed or went away, locally or on another device, has to
+ * {@link #remove(String, String) remove} it.
+ */
+public class RouteCache {
+    private static RouteCache instance;
+
+    private static final int MAGIC = 0x48535243; // "HSRC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int CLEAN = 1;
+    private static final int OPEN = 0;
+    private static final int FILE_HEADER_BYTES = 16;
+
+    private static final int END = 0;
+    private static final int LIVE = 0x4C495645;
+    private static final int DEAD = 0x44454144;
+    private static final int SKIP = 0x534B4950;
+    private static final int RECORD_HEADER_BYTES = 12;
+    private static final int MARKER_BYTES = Integer.BYTES;
+    private static final int REGION_SIZE = 64 << 20;
+
+    private final Path file;
+    private final int maxRegions;
+    private final ByteOrder order = ByteOrder.nativeOrder();
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    // Key to the position of its record; positions count from the start of the first region
+    private final Map<String, Long> index = new HashMap<>();
+    // Copying a route in can map a new region, so callers hand puts to this thread
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "route-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Bumped by every remove, so a route read before a change isn't cached after it
+    private long generation;
+    private boolean enabled;
+    private FileChannel channel;
+    private long writePosition;
+    private long liveBytes;
+    private long deadBytes;
+
+    private RouteCache() {
+        this(Paths.get(Config.getInstance().get("routes.cache.dir", System.getProperty("user.home") + "/.highwaystar"),
+                "routes.cache"),
+            Config.getInstance().getInt("routes.cache.max.mb", 1024),
+            Config.getInstance().getBoolean("routes.cache.enabled", false));
+        if (enabled) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+        }
+    }
+
+    // Opens the cache in the given file; the instance is configured from routes.cache.*
+    RouteCache(Path file, int maxMb, boolean enabled) {
+        this.file = file;
+        maxRegions = Math.max(1, maxMb / (REGION_SIZE >> 20));
+        this.enabled = enabled;
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Route cache disabled, keeping routes on the heap: " + e.getMessage());
+            this.enabled = false;
+            closeChannel();
+        }
+    }
+
+    public static synchronized RouteCache getInstance() {
+        if (instance == null) {
+            instance = new RouteCache();
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs puts off storage callback threads.
+     */
+    public ExecutorService getWriter() {
+        return writer;
+    }
+
+    /**
+     * Read before loading a route and passed to {@link #put(String, String, RouteBuffer, long)}.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * The cached route as a view of the mapped file, or null if it isn't cached.
+     */
+    public synchronized RouteBuffer get(String uid, String activityId) {
+        if (!enabled) {
+            return null;
+        }
+        Long position = index.get(key(uid, activityId));
+        return position != null ? view(position) : null;
+    }
+
+    /**
+     * Copies the route into the cache and returns the cached view, which the caller should
+     * keep instead of the heap route. Returns the route itself if the cache is off, full or
+     * the route is empty or too large for a region.
+     */
+    public synchronized RouteBuffer put(String uid, String activityId, RouteBuffer route) {
+        return put(uid, activityId, route, generation);
+    }
+
+    /**
+     * Like {@link #put(String, String, RouteBuffer)}, but leaves the route uncached if anything
+     * was removed since the generation was read, as the route may be the one removed.
+     */
+    public synchronized RouteBuffer put(String uid, String activityId, RouteBuffer route, long readAt) {
+        if (!enabled || route == null || route.isEmpty() || readAt != generation) {
+            return route;
+        }
+        String key = key(uid, activityId);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int routeOffset = align(RECORD_HEADER_BYTES + keyBytes.length);
+        long length = align((long) routeOffset + route.byteSize());
+        // Every record leaves room for the marker after it
+        if (length + MARKER_BYTES > REGION_SIZE) {
+            return route;
+        }
+
+        try {
+            int offset = regionOffset(writePosition);
+            if (offset + length + MARKER_BYTES > REGION_SIZE) {
+                region(writePosition).putInt(offset, SKIP);
+                writePosition = nextRegion(writePosition);
+                offset = 0;
+            }
+            if (writePosition / REGION_SIZE >= maxRegions) {
+                return route;
+            }
+            MappedByteBuffer region = region(writePosition);
+
+            ByteBuffer record = region.slice(offset, (int) length).order(order);
+            record.putInt(4, (int) length).putInt(8, keyBytes.length);
+            record.put(RECORD_HEADER_BYTES, keyBytes);
+            record.position(routeOffset);
+            route.writeTo(record);
+            // The record only counts once its end is marked and its marker set
+            region.putInt(offset + (int) length, END);
+            record.putInt(0, LIVE);
+
+            Long previous = index.put(key, writePosition);
+            if (previous != null) {
+                markDead(previous);
+            }
+            long position = writePosition;
+            writePosition += length;
+            liveBytes += length;
+            return view(position);
+        } catch (IOException e) {
+            System.err.println("Could not cache route " + key + ": " + e.getMessage());
+            return route;
+        }
+    }
+
+    /**
+     * Drops a route that was changed or deleted. Views already handed out keep reading the
+     * old points, which stay in the file until it starts over.
+     */
+    public synchronized void remove(String uid, String activityId) {
+        if (!enabled) {
+            return;
+        }
+        generation++;
+        Long position = index.remove(key(uid, activityId));
+        if (position != null) {
+            markDead(position);
+        }
+    }
+
+    /**
+     * Flushes the mapping and marks the file as cleanly closed. Runs at exit.
+     */
+    public synchronized void close() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+            writeHeader(CLEAN);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not close route cache " + file + ": " + e.getMessage());
+        }
+        enabled = false;
+        index.clear();
+        closeChannel();
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+            throw new IOException(file + " is in use by another instance");
+        }
+
+        long regionCount = Math.max(0, (channel.size() - FILE_HEADER_BYTES + REGION_SIZE - 1) / REGION_SIZE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(order);
+        boolean intact = channel.read(header, 0) == FILE_HEADER_BYTES && header.getInt(0) == MAGIC
+            && header.getInt(4) == FORMAT_VERSION && header.getInt(8) == CLEAN;
+        for (long r = 0; r < regionCount; r++) {
+            regions.add(map(r));
+        }
+
+        if (!intact || !scan() || deadBytes > liveBytes || writePosition / REGION_SIZE >= maxRegions) {
+            reset();
+        }
+        // Marked open until close, so a crash in between discards whatever was half written
+        writeHeader(OPEN);
+    }
+
+    // Rebuilds the index from the records; false if the file isn't well-formed
+    private boolean scan() {
+        long position = 0;
+        while (true) {
+            if (position / REGION_SIZE >= regions.size()) {
+                writePosition = position;
+                return true;
+            }
+            MappedByteBuffer region = regions.get((int) (position / REGION_SIZE));
+            int offset = regionOffset(position);
+            int marker = region.getInt(offset);
+            if (marker == END) {
+                writePosition = position;
+                return true;
+            }
+            if (marker == SKIP) {
+                position = nextRegion(position);
+                continue;
+            }
+            int length = region.getInt(offset + 4);
+            if ((marker != LIVE && marker != DEAD) || length < RECORD_HEADER_BYTES || length % 8 != 0
+                    || (long) offset + length + MARKER_BYTES > REGION_SIZE) {
+                return false;
+            }
+
+            int keyLength = region.getInt(offset + 8);
+            if (keyLength < 0 || keyLength > length - RECORD_HEADER_BYTES) {
+                return false;
+            }
+
+            if (marker == LIVE) {
+                byte[] keyBytes = new byte[keyLength];
+                region.get(offset + RECORD_HEADER_BYTES, keyBytes);
+                Long previous = index.put(new String(keyBytes, StandardCharsets.UTF_8), position);
+                if (previous != null) {
+                    markDead(previous);
+                }
+                liveBytes += length;
+            } else {
+                deadBytes += length;
+            }
+            position += length;
+        }
+    }
+
+    private void reset() throws IOException {
+        index.clear();
+        liveBytes = 0;
+        deadBytes = 0;
+        writePosition = 0;
+        region(writePosition).putInt(regionOffset(writePosition), END);
+    }
+
+    private RouteBuffer view(long position) {
+        MappedByteBuffer region = regions.get((int) (position / REGION_SIZE));
+        int offset = regionOffset(position);
+        int length = region.getInt(offset + 4);
+        int routeOffset = align(RECORD_HEADER_BYTES + region.getInt(offset + 8));
+        return RouteBuffer.view(region.slice(offset + routeOffset, length - routeOffset).order(order));
+    }
+
+    private void markDead(long position) {
+        MappedByteBuffer region = regions.get((int) (position / REGION_SIZE));
+        int offset = regionOffset(position);
+        region.putInt(offset, DEAD);
+        int length = region.getInt(offset + 4);
+        liveBytes -= length;
+        deadBytes += length;
+    }
+
+    private MappedByteBuffer region(long position) throws IOException {
+        int r = (int) (position / REGION_SIZE);
+        while (regions.size() <= r) {
+            regions.add(map(regions.size()));
+        }
+        return regions.get(r);
+    }
+
+    // Region r covers the file from just after the header; mapping it grows the file
+    private MappedByteBuffer map(long r) throws IOException {
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, FILE_HEADER_BYTES + r * REGION_SIZE, REGION_SIZE);
+        region.order(order);
+        return region;
+    }
+
+    private void writeHeader(int state) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(order);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(state).putInt(0).flip();
+        channel.write(header, 0);
+        channel.force(false);
+    }
+
+    private void closeChannel() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String key(String uid, String activityId) {
+        return uid + "/" + activityId;
+    }
+
+    private static int regionOffset(long position) {
+        return (int) (position % REGION_SIZE);
+    }
+
+    private static long nextRegion(long position) {
+        return (position / REGION_SIZE + 1) * REGION_SIZE;
+    }
+
+    private static int align(int value) {
+        return (value + 7) & ~7;
+    }
+
+    private static long align(long value) {
+        return (value + 7) & ~7L;
+    }
+}
@@ -2,6 +2,9 @@ package highwaystar.ui;
 
 import com.formdev.flatlaf.FlatLightLaf;
 import highwaystar.models.UserProfile;
+import highwaystar.services.ActivityFeed;
+import highwaystar.services.ActivityService;
+import highwaystar.services.LocalSnapshot;
 import highwaystar.services.ProfileService;
 import highwaystar.ui.panels.*;
 
@@ -46,6 +49,12 @@ public class MainFrame extends JFrame {
     }
 
     public void showAuthPanel() {
+        if (currentUserId != null) {
+            LocalSnapshot.getInstance().save(currentUserId);
+        }
+        LocalSnapshot.getInstance().setCurrentUser(null);
+        ActivityFeed.getInstance().reset();
+        ProfileService.getInstance().clearProfileCache();
         currentUserId = null;
         currentUserProfile = null;
         cardLayout.show(contentPanel, AUTH_PANEL);
@@ -54,6 +63,28 @@ public class MainFrame extends JFrame {
     public void loginUser(String uid) {
         this.currentUserId = uid;
 
+        // Render the last saved state right away; the feed and a profile refresh reconcile it
+        LocalSnapshot localSnapshot = LocalSnapshot.getInstance();
+        localSnapshot.setCurrentUser(uid);
+        LocalSnapshot.Snapshot saved = localSnapshot.load(uid);
+        boolean seededProfile = saved != null && saved.getProfile() != null;
+        if (saved != null) {
+            ActivityFeed.getInstance().seed(uid, saved.getActivities());
+        }
+        if (seededProfile) {
+            ProfileService.getInstance().seedProfile(saved.getProfile());
+        }
+
+        // Bring older accounts up to the current layout before attaching the live activity listeners
+        ActivityService.getInstance().prepareUser(uid)
+            .whenComplete((migrated, error) -> {
+                if (uid.equals(currentUserId)) {
+                    ActivityFeed.getInstance().start(uid);
+                    // Subscribed once the feed belongs to this user, so the snapshot follows every sync
+                    ActivityFeed.getInstance().subscribe(activities -> localSnapshot.scheduleSave(uid));
+                }
+            });
+
         // Load user profile
         ProfileService.getInstance().getProfile(uid).thenAccept(profile -> {
             currentUserProfile = profile;
@@ -73,6 +104,34 @@ public class MainFrame extends JFrame {
                 contentPanel.add(new SettingsPanel(this, uid), SETTINGS_PANEL);
 
                 showDashboard();
+
+                if (seededProfile) {
+                    refreshSeededProfile(uid);
+                }
+            });
+        }).exceptionally(e -> {
+            SwingUtilities.invokeLater(() ->
+                JOptionPane.showMessageDialog(this,
+                    "Failed to load profile: " + e.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE));
+            return null;
+        });
+    }
+
+    private void refreshSeededProfile(String uid) {
+        ProfileService.getInstance().refreshProfile(uid).thenAccept(profile -> {
+            if (profile == null || !uid.equals(currentUserId)) {
+                return;
+            }
+            currentUserProfile = profile;
+            LocalSnapshot.getInstance().scheduleSave(uid);
+            SwingUtilities.invokeLater(() -> {
+                for (Component comp : contentPanel.getComponents()) {
+                    if (comp instanceof DashboardPanel) {
+                        ((DashboardPanel) comp).refreshData();
+                    }
+                }
             });
         });
     }
@@ -82,12 +141,7 @@ public class MainFrame extends JFrame {
     }
 
     public void showHistory() {
-        // Refresh history panel
-        for (Component comp : contentPanel.getComponents()) {
-            if (comp instanceof HistoryPanel) {
-                ((HistoryPanel) comp).refreshData();
-            }
-        }
+        // History panel stays current through the activity feed
         cardLayout.show(contentPanel, HISTORY_PANEL);
     }
 
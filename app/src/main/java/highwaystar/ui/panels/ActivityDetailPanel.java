@@ -1,24 +1,24 @@
 package highwaystar.ui.panels;
 
 import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
 import highwaystar.services.ActivityService;
 import highwaystar.ui.MainFrame;
 import highwaystar.utils.DateUtils;
 import highwaystar.utils.DistanceCalculator;
+import highwaystar.utils.RouteSimplifier;
 import org.jxmapviewer.JXMapViewer;
 import org.jxmapviewer.OSMTileFactoryInfo;
-import org.jxmapviewer.painter.CompoundPainter;
 import org.jxmapviewer.painter.Painter;
 import org.jxmapviewer.viewer.*;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.net.URL;
 
 public class ActivityDetailPanel extends JPanel {
     private final MainFrame mainFrame;
@@ -84,7 +84,10 @@ public class ActivityDetailPanel extends JPanel {
     }
 
     private void loadActivity() {
-        ActivityService.getInstance().getActivity(userId, activityId).thenAccept(act -> {
+        ActivityService.getInstance().getActivity(userId, activityId).whenComplete((act, error) -> {
+            if (error != null) {
+                System.err.println("Failed to load activity: " + error.getMessage());
+            }
             this.activity = act;
             SwingUtilities.invokeLater(this::createContent);
         });
@@ -191,33 +194,11 @@ public class ActivityDetailPanel extends JPanel {
         mapViewer.setZoom(12);
 
         // If activity has route, display it
-        if (activity.getRoute() != null && !activity.getRoute().isEmpty()) {
-            List<GeoPosition> track = new ArrayList<>();
-            for (Activity.RoutePoint point : activity.getRoute()) {
-                track.add(new GeoPosition(point.getLatitude(), point.getLongitude()));
-            }
-
+        RouteBuffer route = activity.getRoute();
+        if (route != null && !route.isEmpty()) {
             // Set map center to first point
-            mapViewer.setAddressLocation(track.get(0));
-
-            // Create waypoint set
-            Set<Waypoint> waypoints = new HashSet<>();
-            for (GeoPosition pos : track) {
-                waypoints.add(new DefaultWaypoint(pos));
-            }
-
-            WaypointPainter<Waypoint> waypointPainter = new WaypointPainter<>();
-            waypointPainter.setWaypoints(waypoints);
-
-            // Create route painter
-            RoutePainter routePainter = new RoutePainter(track);
-
-            List<Painter<JXMapViewer>> painters = new ArrayList<>();
-            painters.add(routePainter);
-            painters.add(waypointPainter);
-
-            CompoundPainter<JXMapViewer> compoundPainter = new CompoundPainter<>(painters);
-            mapViewer.setOverlayPainter(compoundPainter);
+            mapViewer.setAddressLocation(new GeoPosition(route.getLatitude(0), route.getLongitude(0)));
+            mapViewer.setOverlayPainter(new RoutePainter(route));
 
         } else {
             // Default location
@@ -227,7 +208,7 @@ public class ActivityDetailPanel extends JPanel {
 
     private void saveNotes() {
         activity.setNotes(notesArea.getText());
-        ActivityService.getInstance().updateActivity(activity).thenAccept(success -> {
+        ActivityService.getInstance().updateNotes(userId, activityId, activity.getNotes()).thenAccept(success -> {
             SwingUtilities.invokeLater(() -> {
                 if (success) {
                     JOptionPane.showMessageDialog(this, "Notes saved successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -259,34 +240,103 @@ public class ActivityDetailPanel extends JPanel {
         }
     }
 
-    // Simple route painter
-    private class RoutePainter implements Painter<JXMapViewer> {
-        private final List<GeoPosition> track;
-
-        public RoutePainter(List<GeoPosition> track) {
-            this.track = track;
+    // Draws the route line and markers for the points that matter at the current zoom. Point
+    // significance is computed once; each zoom level selects and projects its points in one
+    // pass, and repaints only shift them by the viewport.
+    private static class RoutePainter implements Painter<JXMapViewer> {
+        private static final Color LINE_COLOR = new Color(255, 0, 0, 150);
+        private static final Image MARKER = loadMarker();
+        // Detail finer than this many pixels is dropped from the line
+        private static final double TOLERANCE_PIXELS = 0.5;
+        // Markers go only on the route's main turns: the points still kept at this coarser tolerance
+        private static final double MARKER_TOLERANCE_PIXELS = 24;
+
+        private final RouteBuffer route;
+        private final float[] significance;
+        private final int[] indexes;
+        private final double[] pixelX;
+        private final double[] pixelY;
+        private final boolean[] marked;
+        private final int[] screenX;
+        private final int[] screenY;
+        private int projectedZoom = Integer.MIN_VALUE;
+        private int count;
+
+        RoutePainter(RouteBuffer route) {
+            this.route = route;
+            significance = RouteSimplifier.significance(route);
+            indexes = new int[route.size()];
+            pixelX = new double[route.size()];
+            pixelY = new double[route.size()];
+            marked = new boolean[route.size()];
+            screenX = new int[route.size()];
+            screenY = new int[route.size()];
         }
 
         @Override
         public void paint(Graphics2D g, JXMapViewer map, int width, int height) {
+            int zoom = map.getZoom();
+            if (zoom != projectedZoom) {
+                project(map.getTileFactory().getInfo(), zoom);
+                projectedZoom = zoom;
+            }
+
+            Rectangle viewportBounds = map.getViewportBounds();
+            for (int i = 0; i < count; i++) {
+                screenX[i] = (int) (pixelX[i] - viewportBounds.x);
+                screenY[i] = (int) (pixelY[i] - viewportBounds.y);
+            }
+
             g = (Graphics2D) g.create();
-            g.setColor(new Color(255, 0, 0, 150));
+            g.setColor(LINE_COLOR);
             g.setStroke(new BasicStroke(3));
-
-            for (int i = 0; i < track.size() - 1; i++) {
-                Point2D pt1 = map.getTileFactory().geoToPixel(track.get(i), map.getZoom());
-                Point2D pt2 = map.getTileFactory().geoToPixel(track.get(i + 1), map.getZoom());
-
-                Rectangle viewportBounds = map.getViewportBounds();
-                g.drawLine(
-                    (int) (pt1.getX() - viewportBounds.x),
-                    (int) (pt1.getY() - viewportBounds.y),
-                    (int) (pt2.getX() - viewportBounds.x),
-                    (int) (pt2.getY() - viewportBounds.y)
-                );
+            g.drawPolyline(screenX, screenY, count);
+
+            int markerWidth = MARKER != null ? MARKER.getWidth(null) : 6;
+            int markerHeight = MARKER != null ? MARKER.getHeight(null) : 6;
+            for (int i = 0; i < count; i++) {
+                int x = screenX[i];
+                int y = screenY[i];
+                if (!marked[i] || x < -markerWidth || x > width + markerWidth || y < 0 || y > height + markerHeight) {
+                    continue;
+                }
+                if (MARKER != null) {
+                    g.drawImage(MARKER, x - markerWidth / 2, y - markerHeight, null);
+                } else {
+                    g.fillOval(x - 3, y - 3, 6, 6);
+                }
             }
 
             g.dispose();
         }
+
+        // The same Mercator projection as TileFactory.geoToPixel, for the points kept at this zoom
+        private void project(TileFactoryInfo info, int zoom) {
+            Point2D center = info.getMapCenterInPixelsAtZoom(zoom);
+            double degreeWidth = info.getLongitudeDegreeWidthInPixels(zoom);
+            double radianWidth = info.getLongitudeRadianWidthInPixels(zoom);
+            // Significance is in map widths
+            double mapWidth = degreeWidth * 360;
+            count = RouteSimplifier.select(significance, TOLERANCE_PIXELS / mapWidth, indexes);
+            double markerTolerance = MARKER_TOLERANCE_PIXELS / mapWidth;
+
+            for (int j = 0; j < count; j++) {
+                int i = indexes[j];
+                pixelX[j] = center.getX() + route.getLongitudeE6(i) / 1e6 * degreeWidth;
+                double e = Math.max(-0.9999, Math.min(0.9999, Math.sin(Math.toRadians(route.getLatitudeE6(i) / 1e6))));
+                pixelY[j] = center.getY() - 0.5 * Math.log((1 + e) / (1 - e)) * radianWidth;
+                marked[j] = significance[i] > markerTolerance;
+            }
+        }
+
+        // The pin WaypointPainter draws by default
+        private static Image loadMarker() {
+            try {
+                URL url = WaypointPainter.class.getResource("/images/standard_waypoint.png");
+                return url != null ? ImageIO.read(url) : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
     }
 }
@@ -2,6 +2,8 @@ package highwaystar.ui.panels;
 
 import highwaystar.models.Activity;
 import highwaystar.models.UserProfile;
+import highwaystar.services.ActivityFeed;
+import highwaystar.services.ActivityTable;
 import highwaystar.services.ActivityService;
 import highwaystar.services.GeoLocationService;
 import highwaystar.services.ProfileService;
@@ -19,7 +21,6 @@ import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
-import java.util.List;
 
 public class DashboardPanel extends JPanel {
     private final MainFrame mainFrame;
@@ -65,6 +66,13 @@ public class DashboardPanel extends JPanel {
         createTopBar();
         createStatsPanel();
         createMainContent();
+
+        ActivityFeed.getInstance().subscribe(activities ->
+            SwingUtilities.invokeLater(this::updateTotalsCards));
+    }
+
+    public void refreshData() {
+        loadUserProfile();
     }
 
     private void loadUserProfile() {
@@ -332,10 +340,14 @@ public class DashboardPanel extends JPanel {
 
     private void updateStatsCards() {
         if (userProfile != null) {
-            totalStepsCard.setValue(String.format("%,d", userProfile.getTotalSteps()));
-            totalDistanceCard.setValue(String.format("%.2f km", userProfile.getTotalDistance()));
-            totalActivitiesCard.setValue(String.valueOf(userProfile.getTotalActivities()));
             currentStreakCard.setValue(userProfile.getCurrentStreak() + " days");
         }
     }
+
+    private void updateTotalsCards() {
+        ActivityTable table = ActivityFeed.getInstance().getTable();
+        totalStepsCard.setValue(String.format("%,d", table.sumSteps(0, table.size())));
+        totalDistanceCard.setValue(String.format("%.2f km", table.sumDistance(0, table.size())));
+        totalActivitiesCard.setValue(String.valueOf(table.size()));
+    }
 }
@@ -1,7 +1,8 @@
 package highwaystar.ui.panels;
 
 import highwaystar.models.Activity;
-import highwaystar.services.ActivityService;
+import highwaystar.services.ActivityFeed;
+import highwaystar.services.ActivityTable;
 import highwaystar.ui.MainFrame;
 import highwaystar.utils.DateUtils;
 import highwaystar.utils.DistanceCalculator;
@@ -11,7 +12,6 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.util.List;
 
 public class HistoryPanel extends JPanel {
     private final MainFrame mainFrame;
@@ -31,6 +31,8 @@ public class HistoryPanel extends JPanel {
         createFilterPanel();
         createTable();
         loadActivities();
+
+        ActivityFeed.getInstance().subscribe(activities -> SwingUtilities.invokeLater(this::loadActivities));
     }
 
     private void createTopBar() {
@@ -121,57 +123,47 @@ public class HistoryPanel extends JPanel {
     private void loadActivities() {
         tableModel.setRowCount(0);
 
-        ActivityService.getInstance().getActivities(userId).thenAccept(activities -> {
-            List<Activity> filtered = filterActivities(activities);
-
-            SwingUtilities.invokeLater(() -> {
-                for (Activity activity : filtered) {
-                    Object[] row = new Object[7];
-                    row[0] = DateUtils.formatDisplayDate(activity.getTimestamp());
-                    row[1] = activity.getType().getIcon() + " " + activity.getType().getDisplayName();
-                    row[2] = DistanceCalculator.formatDuration(activity.getDuration());
-                    row[3] = String.format("%,d", activity.getSteps());
-                    row[4] = String.format("%.2f km", activity.getDistance());
-                    row[5] = activity.getDuration() > 0 && activity.getDistance() > 0 ?
-                        DistanceCalculator.calculatePace(activity.getDistance(), activity.getDuration(), true) : "-";
-                    row[6] = activity.getActivityId(); // Store activity ID for button action
-
-                    tableModel.addRow(row);
-                }
-
-                if (filtered.isEmpty()) {
-                    Object[] emptyRow = new Object[7];
-                    emptyRow[0] = "No activities found";
-                    for (int i = 1; i < 7; i++) {
-                        emptyRow[i] = "";
-                    }
-                    tableModel.addRow(emptyRow);
-                }
-            });
-        });
+        // Table rows are oldest first; the window is a suffix, listed newest first
+        ActivityTable table = ActivityFeed.getInstance().getTable();
+        int from = table.lowerBound(filterStartTime());
+        for (int i = table.size() - 1; i >= from; i--) {
+            Activity.ActivityType type = table.getType(i);
+            int duration = table.getDuration(i);
+            double distance = table.getDistance(i);
+
+            Object[] row = new Object[7];
+            row[0] = DateUtils.formatDisplayDate(table.getTimestamp(i));
+            row[1] = type.getIcon() + " " + type.getDisplayName();
+            row[2] = DistanceCalculator.formatDuration(duration);
+            row[3] = String.format("%,d", table.getSteps(i));
+            row[4] = String.format("%.2f km", distance);
+            row[5] = duration > 0 && distance > 0 ?
+                DistanceCalculator.calculatePace(distance, duration, true) : "-";
+            row[6] = table.getId(i); // Store activity ID for button action
+
+            tableModel.addRow(row);
+        }
+
+        if (from == table.size()) {
+            Object[] emptyRow = new Object[7];
+            emptyRow[0] = ActivityFeed.getInstance().isLoaded() ? "No activities found" : "Loading...";
+            for (int i = 1; i < 7; i++) {
+                emptyRow[i] = "";
+            }
+            tableModel.addRow(emptyRow);
+        }
     }
 
-    private List<Activity> filterActivities(List<Activity> activities) {
+    private long filterStartTime() {
         String filter = (String) filterComboBox.getSelectedItem();
         long currentTime = System.currentTimeMillis();
 
         return switch (filter) {
-            case "Last 7 Days" -> activities.stream()
-                .filter(a -> a.getTimestamp() >= currentTime - (7L * 24 * 60 * 60 * 1000))
-                .toList();
-            case "Last 30 Days" -> activities.stream()
-                .filter(a -> a.getTimestamp() >= currentTime - (30L * 24 * 60 * 60 * 1000))
-                .toList();
-            case "This Month" -> activities.stream()
-                .filter(a -> {
-                    java.time.LocalDate activityDate = java.time.Instant.ofEpochMilli(a.getTimestamp())
-                        .atZone(java.time.ZoneId.systemDefault()).toLocalDate();
-                    java.time.LocalDate now = java.time.LocalDate.now();
-                    return activityDate.getYear() == now.getYear() &&
-                           activityDate.getMonth() == now.getMonth();
-                })
-                .toList();
-            default -> activities;
+            case "Last 7 Days" -> currentTime - (7L * 24 * 60 * 60 * 1000);
+            case "Last 30 Days" -> currentTime - (30L * 24 * 60 * 60 * 1000);
+            case "This Month" -> java.time.LocalDate.now().withDayOfMonth(1)
+                .atStartOfDay(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+            default -> Long.MIN_VALUE;
         };
     }
 
@@ -1,22 +1,46 @@
 package highwaystar.ui.panels;
 
+import highwaystar.io.ArchiveImporter;
+import highwaystar.io.CsvExporter;
+import highwaystar.io.JsonExporter;
+import highwaystar.io.JsonImporter;
+import highwaystar.io.RouteArchiveExporter;
+import highwaystar.io.TrackReader;
 import highwaystar.models.Activity;
 import highwaystar.models.UserProfile;
+import highwaystar.services.ActivityFeed;
 import highwaystar.services.ActivityService;
+import highwaystar.services.ActivityTable;
 import highwaystar.services.ProfileService;
 import highwaystar.ui.MainFrame;
+import highwaystar.utils.Config;
 import highwaystar.utils.DateUtils;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SettingsPanel extends JPanel {
+    // Imports and exports run one at a time, off the EDT and off the shared common pool
+    private static final ExecutorService TRANSFERS = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "data-transfer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final MainFrame mainFrame;
     private final String userId;
     private UserProfile userProfile;
@@ -26,6 +50,7 @@ public class SettingsPanel extends JPanel {
     private JSpinner stepGoalSpinner;
     private JCheckBox autoPauseCheckBox;
     private JComboBox<String> themeComboBox;
+    private JProgressBar stepGoalProgressBar;
 
     public SettingsPanel(MainFrame mainFrame, String userId) {
         this.mainFrame = mainFrame;
@@ -36,6 +61,9 @@ public class SettingsPanel extends JPanel {
 
         createTopBar();
         loadProfile();
+
+        ActivityFeed.getInstance().subscribe(activities ->
+            SwingUtilities.invokeLater(this::updateStepGoalProgress));
     }
 
     private void createTopBar() {
@@ -201,12 +229,10 @@ public class SettingsPanel extends JPanel {
         gbc.gridwidth = 2;
         gbc.weightx = 1;
 
-        int todaySteps = 0; // You would calculate this from today's activities
-        JProgressBar progressBar = new JProgressBar(0, prefs.getDailyStepGoal());
-        progressBar.setValue(todaySteps);
-        progressBar.setStringPainted(true);
-        progressBar.setString(String.format("%d / %d steps", todaySteps, prefs.getDailyStepGoal()));
-        panel.add(progressBar, gbc);
+        stepGoalProgressBar = new JProgressBar(0, prefs.getDailyStepGoal());
+        stepGoalProgressBar.setStringPainted(true);
+        updateStepGoalProgress();
+        panel.add(stepGoalProgressBar, gbc);
 
         // Save button
         gbc.gridy = 2;
@@ -251,8 +277,36 @@ public class SettingsPanel extends JPanel {
         exportJSONBtn.addActionListener(e -> exportToJSON());
         panel.add(exportJSONBtn, gbc);
 
-        // Statistics
         gbc.gridy = 2;
+        JButton exportRoutesBtn = new JButton("Export Routes to GPX/TCX (ZIP)");
+        exportRoutesBtn.setBackground(new Color(60, 179, 113));
+        exportRoutesBtn.setForeground(Color.WHITE);
+        exportRoutesBtn.addActionListener(e -> exportRoutes());
+        panel.add(exportRoutesBtn, gbc);
+
+        gbc.gridy = 3;
+        JButton importJSONBtn = new JButton("Import Activities from JSON");
+        importJSONBtn.setBackground(new Color(70, 130, 180));
+        importJSONBtn.setForeground(Color.WHITE);
+        importJSONBtn.addActionListener(e -> importFromJSON());
+        panel.add(importJSONBtn, gbc);
+
+        gbc.gridy = 4;
+        JButton importTracksBtn = new JButton("Import Activities from GPX/TCX");
+        importTracksBtn.setBackground(new Color(70, 130, 180));
+        importTracksBtn.setForeground(Color.WHITE);
+        importTracksBtn.addActionListener(e -> importTracks());
+        panel.add(importTracksBtn, gbc);
+
+        gbc.gridy = 5;
+        JButton importArchiveBtn = new JButton("Import Archive (ZIP of GPX/TCX/CSV)");
+        importArchiveBtn.setBackground(new Color(70, 130, 180));
+        importArchiveBtn.setForeground(Color.WHITE);
+        importArchiveBtn.addActionListener(e -> importArchive());
+        panel.add(importArchiveBtn, gbc);
+
+        // Statistics
+        gbc.gridy = 6;
         JPanel statsPanel = new JPanel(new GridLayout(3, 1, 5, 5));
         statsPanel.setBackground(new Color(240, 248, 255));
         statsPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
@@ -268,6 +322,18 @@ public class SettingsPanel extends JPanel {
         return panel;
     }
 
+    private void updateStepGoalProgress() {
+        if (stepGoalProgressBar == null) return;
+
+        ActivityTable table = ActivityFeed.getInstance().getTable();
+        long startOfToday = DateUtils.getStartOfDay(System.currentTimeMillis());
+        int todaySteps = (int) table.sumSteps(table.lowerBound(startOfToday), table.size());
+
+        int goal = stepGoalProgressBar.getMaximum();
+        stepGoalProgressBar.setValue(Math.min(todaySteps, goal));
+        stepGoalProgressBar.setString(String.format("%d / %d steps", todaySteps, goal));
+    }
+
     private void savePreferences() {
         if (userProfile == null) return;
 
@@ -301,53 +367,62 @@ public class SettingsPanel extends JPanel {
     }
 
     private void exportToCSV() {
+        // Exported from the server-confirmed activities, never from a partly synced feed
+        ActivityTable table = ActivityFeed.getInstance().getTable(userId);
+        if (table == null) {
+            showStillLoading("Export");
+            return;
+        }
+
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Export Activities to CSV");
         fileChooser.setSelectedFile(new File("activities_" + DateUtils.getToday() + ".csv"));
+        JCheckBox gzipCheckBox = new JCheckBox("Compress (gzip)");
+        fileChooser.setAccessory(gzipCheckBox);
 
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-
-            ActivityService.getInstance().getActivities(userId).thenAccept(activities -> {
-                try (FileWriter writer = new FileWriter(file)) {
-                    // Write header
-                    writer.write("Date,Type,Duration (seconds),Steps,Distance (km),Pace,Calories\n");
-
-                    // Write data
-                    for (Activity activity : activities) {
-                        writer.write(String.format("%s,%s,%d,%d,%.2f,%s,%d\n",
-                            activity.getDate(),
-                            activity.getType().getDisplayName(),
-                            activity.getDuration(),
-                            activity.getSteps(),
-                            activity.getDistance(),
-                            activity.getDuration() > 0 && activity.getDistance() > 0 ?
-                                String.format("%.2f", activity.getDuration() / 60.0 / activity.getDistance()) : "0",
-                            activity.calculateCalories(70.0)
-                        ));
-                    }
-
-                    SwingUtilities.invokeLater(() ->
+            boolean gzip = gzipCheckBox.isSelected();
+            File chosen = fileChooser.getSelectedFile();
+            File file = gzip && !chosen.getName().endsWith(".gz") ?
+                new File(chosen.getPath() + ".gz") : chosen;
+
+            TransferProgress progress = new TransferProgress(this, "Exporting activities", table.size());
+            TRANSFERS.execute(() -> {
+                try {
+                    CsvExporter.export(table, file.toPath(), gzip, progress::update);
+
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
                         JOptionPane.showMessageDialog(this,
                             "Activities exported successfully!",
                             "Success",
-                            JOptionPane.INFORMATION_MESSAGE)
-                    );
+                            JOptionPane.INFORMATION_MESSAGE);
+                    });
 
+                } catch (CancellationException e) {
+                    file.delete();
+                    progress.close();
                 } catch (IOException e) {
-                    SwingUtilities.invokeLater(() ->
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
                         JOptionPane.showMessageDialog(this,
                             "Export failed: " + e.getMessage(),
                             "Error",
-                            JOptionPane.ERROR_MESSAGE)
-                    );
+                            JOptionPane.ERROR_MESSAGE);
+                    });
                 }
             });
         }
     }
 
     private void exportToJSON() {
+        List<Activity> activities = ActivityFeed.getInstance().getSyncedActivities(userId);
+        if (activities == null) {
+            showStillLoading("Export");
+            return;
+        }
+
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Export Activities to JSON");
         fileChooser.setSelectedFile(new File("activities_" + DateUtils.getToday() + ".json"));
@@ -356,41 +431,350 @@ public class SettingsPanel extends JPanel {
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
 
-            ActivityService.getInstance().getActivities(userId).thenAccept(activities -> {
-                try (FileWriter writer = new FileWriter(file)) {
-                    writer.write("{\n  \"activities\": [\n");
-
-                    for (int i = 0; i < activities.size(); i++) {
-                        Activity activity = activities.get(i);
-                        writer.write("    {\n");
-                        writer.write(String.format("      \"id\": \"%s\",\n", activity.getActivityId()));
-                        writer.write(String.format("      \"date\": \"%s\",\n", activity.getDate()));
-                        writer.write(String.format("      \"type\": \"%s\",\n", activity.getType().getDisplayName()));
-                        writer.write(String.format("      \"duration\": %d,\n", activity.getDuration()));
-                        writer.write(String.format("      \"steps\": %d,\n", activity.getSteps()));
-                        writer.write(String.format("      \"distance\": %.2f,\n", activity.getDistance()));
-                        writer.write(String.format("      \"calories\": %d\n", activity.calculateCalories(70.0)));
-                        writer.write(i < activities.size() - 1 ? "    },\n" : "    }\n");
-                    }
-
-                    writer.write("  ]\n}");
+            TransferProgress progress = new TransferProgress(this, "Exporting activities", activities.size());
+            TRANSFERS.execute(() -> {
+                try {
+                    JsonExporter.export(activities,
+                        activityId -> ActivityService.getInstance().getRoute(userId, activityId),
+                        file.toPath(),
+                        progress::update);
 
-                    SwingUtilities.invokeLater(() ->
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
                         JOptionPane.showMessageDialog(this,
                             "Activities exported successfully!",
                             "Success",
-                            JOptionPane.INFORMATION_MESSAGE)
-                    );
+                            JOptionPane.INFORMATION_MESSAGE);
+                    });
+
+                } catch (CancellationException e) {
+                    file.delete();
+                    progress.close();
+                } catch (IOException | CompletionException e) {
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
+                        JOptionPane.showMessageDialog(this,
+                            "Export failed: " + e.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    });
+                }
+            });
+        }
+    }
 
-                } catch (IOException e) {
-                    SwingUtilities.invokeLater(() ->
+    private void exportRoutes() {
+        List<Activity> activities = ActivityFeed.getInstance().getSyncedActivities(userId);
+        if (activities == null) {
+            showStillLoading("Export");
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export Routes to GPX/TCX");
+        fileChooser.setSelectedFile(new File("routes_" + DateUtils.getToday() + ".zip"));
+        JComboBox<RouteArchiveExporter.Format> formatComboBox = new JComboBox<>(RouteArchiveExporter.Format.values());
+        fileChooser.setAccessory(formatComboBox);
+
+        int result = fileChooser.showSaveDialog(this);
+        if (result == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            RouteArchiveExporter.Format format = (RouteArchiveExporter.Format) formatComboBox.getSelectedItem();
+
+            TransferProgress progress = new TransferProgress(this, "Exporting routes", activities.size());
+            TRANSFERS.execute(() -> {
+                try {
+                    RouteArchiveExporter.Result exported = RouteArchiveExporter.export(activities,
+                        activityId -> ActivityService.getInstance().getRoute(userId, activityId),
+                        format,
+                        file.toPath(),
+                        progress::update);
+
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
+                        JOptionPane.showMessageDialog(this,
+                            String.format("Exported %d routes (%d activities without a route).",
+                                exported.getWritten(), exported.getSkipped()),
+                            "Success",
+                            JOptionPane.INFORMATION_MESSAGE);
+                    });
+
+                } catch (CancellationException e) {
+                    file.delete();
+                    progress.close();
+                } catch (IOException | CompletionException e) {
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
                         JOptionPane.showMessageDialog(this,
                             "Export failed: " + e.getMessage(),
                             "Error",
-                            JOptionPane.ERROR_MESSAGE)
-                    );
+                            JOptionPane.ERROR_MESSAGE);
+                    });
+                }
+            });
+        }
+    }
+
+    private void importFromJSON() {
+        // Ids already stored are skipped, which needs the complete list from the server
+        List<Activity> existing = ActivityFeed.getInstance().getSyncedActivities(userId);
+        if (existing == null) {
+            showStillLoading("Import");
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Activities from JSON");
+
+        int result = fileChooser.showOpenDialog(this);
+        if (result == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+
+            Set<String> existingIds = new HashSet<>();
+            for (Activity activity : existing) {
+                existingIds.add(activity.getActivityId());
+            }
+
+            // Progress is in KB so large files fit the monitor's int range
+            TransferProgress progress = new TransferProgress(this, "Importing activities",
+                Math.max(1, file.length() / 1024));
+            TRANSFERS.execute(() -> {
+                try {
+                    JsonImporter.Result imported = JsonImporter.importFile(file.toPath(), existingIds,
+                        batch -> ActivityService.getInstance().saveActivities(userId, batch),
+                        (read, total) -> progress.update(read / 1024, Math.max(1, total / 1024)));
+                    ProfileService.getInstance().updateStatsAfterImport(userId);
+
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
+                        JOptionPane.showMessageDialog(this,
+                            importSummary(imported),
+                            "Success",
+                            JOptionPane.INFORMATION_MESSAGE);
+                    });
+
+                } catch (CancellationException e) {
+                    // Batches already written stay imported
+                    ProfileService.getInstance().updateStatsAfterImport(userId);
+                    progress.close();
+                } catch (IOException | RuntimeException e) {
+                    ProfileService.getInstance().updateStatsAfterImport(userId);
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
+                        JOptionPane.showMessageDialog(this,
+                            "Import failed: " + e.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    });
+                }
+            });
+        }
+    }
+
+    private void importTracks() {
+        // Start times already stored are skipped, which needs the complete list from the server
+        List<Activity> existing = ActivityFeed.getInstance().getSyncedActivities(userId);
+        if (existing == null) {
+            showStillLoading("Import");
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Activities from GPX/TCX");
+        fileChooser.setMultiSelectionEnabled(true);
+        fileChooser.setFileFilter(new FileNameExtensionFilter("GPS tracks (*.gpx, *.tcx)", "gpx", "tcx"));
+
+        int result = fileChooser.showOpenDialog(this);
+        if (result == JFileChooser.APPROVE_OPTION) {
+            File[] files = fileChooser.getSelectedFiles();
+
+            // A file whose start time is already recorded was imported before
+            Set<Long> existingStarts = new HashSet<>();
+            for (Activity activity : existing) {
+                existingStarts.add(activity.getTimestamp());
+            }
+            int batchSize = Math.max(1, Config.getInstance().getInt("import.batch.size", 200));
+
+            TransferProgress progress = new TransferProgress(this, "Importing tracks", files.length);
+            TRANSFERS.execute(() -> {
+                int imported = 0;
+                int skipped = 0;
+                List<String> failed = new ArrayList<>();
+                List<Activity> batch = new ArrayList<>();
+                List<String> batchFiles = new ArrayList<>();
+                try {
+                    for (int i = 0; i < files.length && !progress.isCanceled(); i++) {
+                        // One bad file is reported and the rest are still imported
+                        try {
+                            Activity activity = TrackReader.read(files[i].toPath());
+                            if (!existingStarts.add(activity.getTimestamp())) {
+                                skipped++;
+                            } else {
+                                batch.add(activity);
+                                batchFiles.add(files[i].getName());
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            failed.add(files[i].getName() + " (" + e.getMessage() + ")");
+                        }
+
+                        if (batch.size() >= batchSize) {
+                            imported += saveTracks(batch, batchFiles, failed);
+                        }
+                        progress.update(i + 1, files.length);
+                    }
+                    imported += saveTracks(batch, batchFiles, failed);
+                } finally {
+                    // Streak and achievements are rebuilt once for all the files
+                    ProfileService.getInstance().updateStatsAfterImport(userId);
+                    progress.close();
+                }
+
+                String message = String.format("Imported %d activities (%d already present).", imported, skipped);
+                if (!failed.isEmpty()) {
+                    message += "\n\nCould not import:\n" + String.join("\n", failed);
+                }
+                String summary = message;
+                SwingUtilities.invokeLater(() -> {
+                    JOptionPane.showMessageDialog(this,
+                        summary,
+                        "Import",
+                        failed.isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                });
+            });
+        }
+    }
+
+    // Writes and empties the batch, returning how many were saved; a failed write fails its files
+    private int saveTracks(List<Activity> batch, List<String> batchFiles, List<String> failed) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int saved = batch.size();
+        try {
+            ActivityService.getInstance().saveActivities(userId, new ArrayList<>(batch)).join();
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            for (String name : batchFiles) {
+                failed.add(name + " (" + cause.getMessage() + ")");
+            }
+            saved = 0;
+        }
+        batch.clear();
+        batchFiles.clear();
+        return saved;
+    }
+
+    private void importArchive() {
+        // Ids already stored are skipped, which needs the complete list from the server
+        List<Activity> existing = ActivityFeed.getInstance().getSyncedActivities(userId);
+        if (existing == null) {
+            showStillLoading("Import");
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Archive");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("ZIP archives (*.zip)", "zip"));
+
+        int result = fileChooser.showOpenDialog(this);
+        if (result == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+
+            Set<String> existingIds = new HashSet<>();
+            for (Activity activity : existing) {
+                existingIds.add(activity.getActivityId());
+            }
+
+            Config config = Config.getInstance();
+            int batchSize = config.getInt("import.batch.size", 200);
+            int pendingBatches = config.getInt("import.pending.batches", 2);
+
+            TransferProgress progress = new TransferProgress(this, "Importing archive", 1);
+            TRANSFERS.execute(() -> {
+                try {
+                    ArchiveImporter.Result imported = ArchiveImporter.importArchive(file.toPath(), existingIds,
+                        batch -> ActivityService.getInstance().saveActivities(userId, batch),
+                        batchSize, pendingBatches,
+                        progress::update);
+                    // Streak and achievements are rebuilt once for the whole archive
+                    ProfileService.getInstance().updateStatsAfterImport(userId);
+
+                    String message = String.format("Imported %d activities (%d skipped).",
+                        imported.getImported(), imported.getSkipped());
+                    if (!imported.getFailed().isEmpty()) {
+                        message += "\n\nCould not read:\n" + String.join("\n", imported.getFailed());
+                    }
+                    String summary = message;
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
+                        JOptionPane.showMessageDialog(this,
+                            summary,
+                            "Import",
+                            imported.getFailed().isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                    });
+
+                } catch (CancellationException e) {
+                    // Written batches stay; importing the same archive again resumes from the checkpoint
+                    ProfileService.getInstance().updateStatsAfterImport(userId);
+                    progress.close();
+                } catch (IOException | RuntimeException e) {
+                    ProfileService.getInstance().updateStatsAfterImport(userId);
+                    progress.close();
+                    SwingUtilities.invokeLater(() -> {
+                        JOptionPane.showMessageDialog(this,
+                            "Import failed: " + e.getMessage() + "\n\nImporting the same archive again resumes where this stopped.",
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    });
                 }
             });
         }
     }
+
+    private static String importSummary(JsonImporter.Result imported) {
+        String message = String.format("Imported %d activities (%d skipped).",
+            imported.getImported(), imported.getSkipped());
+        if (imported.getRenamed() > 0) {
+            message += String.format("\n%d of them had ids that can't be stored and were imported under escaped ids.",
+                imported.getRenamed());
+        }
+        return message + "\n\nThe file holds activities only; your profile and settings were not changed.";
+    }
+
+    private void showStillLoading(String title) {
+        JOptionPane.showMessageDialog(this,
+            "Activities are still loading, please try again in a moment.",
+            title,
+            JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    // A ProgressMonitor driven from a transfer thread; the monitor is only touched on the EDT,
+    // and a cancel there is seen by the transfer at its next update
+    private static class TransferProgress {
+        private final ProgressMonitor monitor;
+        private final AtomicBoolean canceled = new AtomicBoolean();
+
+        TransferProgress(Component parent, String message, long total) {
+            monitor = new ProgressMonitor(parent, message, null, 0, (int) total);
+        }
+
+        boolean update(long done, long total) {
+            SwingUtilities.invokeLater(() -> {
+                monitor.setMaximum((int) total);
+                monitor.setProgress((int) done);
+                if (monitor.isCanceled()) {
+                    canceled.set(true);
+                }
+            });
+            return !canceled.get();
+        }
+
+        boolean isCanceled() {
+            return canceled.get();
+        }
+
+        void close() {
+            SwingUtilities.invokeLater(monitor::close);
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package highwaystar.utils;
+
+import highwaystar.models.Activity;
+import highwaystar.models.UserProfile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary field layout for activity summaries and profiles, shared by the local snapshot
+ * and the log-file store. Changing it changes both on-disk formats.
+ */
+public class BinaryCodec {
+
+    public static void writeActivity(DataOutputStream out, Activity activity) throws IOException {
+        out.writeUTF(activity.getActivityId());
+        out.writeLong(activity.getTimestamp());
+        writeNullableString(out, activity.getDate());
+        out.writeUTF(activity.getType().name());
+        out.writeInt(activity.getDuration());
+        out.writeInt(activity.getSteps());
+        out.writeDouble(activity.getDistance());
+        writeNullableString(out, activity.getNotes());
+    }
+
+    public static Activity readActivity(DataInputStream in, String uid) throws IOException {
+        Activity activity = new Activity();
+        activity.setUserId(uid);
+        activity.setActivityId(in.readUTF());
+        activity.setTimestamp(in.readLong());
+        activity.setDate(readNullableString(in));
+        activity.setType(Activity.ActivityType.valueOf(in.readUTF()));
+        activity.setDuration(in.readInt());
+        activity.setSteps(in.readInt());
+        activity.setDistance(in.readDouble());
+        activity.setNotes(readNullableString(in));
+        return activity;
+    }
+
+    public static void writeProfile(DataOutputStream out, UserProfile profile) throws IOException {
+        writeNullableString(out, profile.getEmail());
+        writeNullableString(out, profile.getDisplayName());
+        out.writeDouble(profile.getWeight());
+        out.writeDouble(profile.getHeight());
+        out.writeInt(profile.getTotalSteps());
+        out.writeDouble(profile.getTotalDistance());
+        out.writeInt(profile.getTotalActivities());
+        out.writeInt(profile.getCurrentStreak());
+        out.writeInt(profile.getLongestStreak());
+        writeNullableString(out, profile.getLastActiveDate());
+        out.writeLong(profile.getMemberSince());
+
+        // Profiles built from partial data may lack these; written as empty and as the defaults
+        Map<String, Integer> achievements = profile.getAchievements() != null ?
+            profile.getAchievements() : Collections.emptyMap();
+        out.writeInt(achievements.size());
+        for (Map.Entry<String, Integer> achievement : achievements.entrySet()) {
+            out.writeUTF(achievement.getKey());
+            out.writeInt(achievement.getValue() != null ? achievement.getValue() : 0);
+        }
+
+        UserProfile.UserPreferences prefs = profile.getPreferences() != null ?
+            profile.getPreferences() : new UserProfile.UserPreferences();
+        out.writeBoolean(prefs.isUseMetric());
+        out.writeInt(prefs.getDefaultZoom());
+        out.writeDouble(prefs.getDefaultLat());
+        out.writeDouble(prefs.getDefaultLon());
+        out.writeInt(prefs.getDailyStepGoal());
+        out.writeBoolean(prefs.isAutoPause());
+        writeNullableString(out, prefs.getTheme());
+    }
+
+    public static UserProfile readProfile(DataInputStream in, String uid) throws IOException {
+        UserProfile profile = new UserProfile();
+        profile.setUid(uid);
+        profile.setEmail(readNullableString(in));
+        profile.setDisplayName(readNullableString(in));
+        profile.setWeight(in.readDouble());
+        profile.setHeight(in.readDouble());
+        profile.setTotalSteps(in.readInt());
+        profile.setTotalDistance(in.readDouble());
+        profile.setTotalActivities(in.readInt());
+        profile.setCurrentStreak(in.readInt());
+        profile.setLongestStreak(in.readInt());
+        profile.setLastActiveDate(readNullableString(in));
+        profile.setMemberSince(in.readLong());
+
+        int achievementCount = in.readInt();
+        Map<String, Integer> achievements = new HashMap<>();
+        for (int i = 0; i < achievementCount; i++) {
+            achievements.put(in.readUTF(), in.readInt());
+        }
+        profile.setAchievements(achievements);
+
+        UserProfile.UserPreferences prefs = new UserProfile.UserPreferences();
+        prefs.setUseMetric(in.readBoolean());
+        prefs.setDefaultZoom(in.readInt());
+        prefs.setDefaultLat(in.readDouble());
+        prefs.setDefaultLon(in.readDouble());
+        prefs.setDailyStepGoal(in.readInt());
+        prefs.setAutoPause(in.readBoolean());
+        prefs.setTheme(readNullableString(in));
+        profile.setPreferences(prefs);
+        return profile;
+    }
+
+    // Length-prefixed UTF-8, -1 for null; unlike writeUTF not capped at 64 KB (notes)
+    public static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readNullableString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
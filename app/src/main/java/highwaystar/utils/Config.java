@@ -2,6 +2,8 @@ package highwaystar.utils;
 
 import java.io.*;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class Config {
     private static Config instance;
@@ -30,12 +32,39 @@ public class Config {
         properties.setProperty("default.longitude", "103.8198");
         properties.setProperty("default.zoom", "12");
         properties.setProperty("default.step.goal", "10000");
+        properties.setProperty("writebehind.window.ms", "500");
+        properties.setProperty("cache.profile.ttl.ms", "60000");
+        properties.setProperty("activities.partitioned", "false");
+        properties.setProperty("activities.dualread", "true");
+        properties.setProperty("snapshot.enabled", "true");
+        // firebase, local (append-only log file) or memory; sign-in always uses Firebase Auth
+        properties.setProperty("storage.backend", "firebase");
+        properties.setProperty("storage.log.fsync", "false");
+        // Keep loaded routes off the heap in a memory-mapped file (routes.cache.dir), up to this size
+        properties.setProperty("routes.cache.enabled", "false");
+        properties.setProperty("routes.cache.max.mb", "1024");
+        // Archive import: activities per batched write, and batches allowed in flight
+        properties.setProperty("import.batch.size", "200");
+        properties.setProperty("import.pending.batches", "2");
+        // achievement.<name> = id, unlocked once <metric> reaches <threshold>
         properties.setProperty("achievement.first.activity", "FIRST_ACTIVITY");
+        properties.setProperty("achievement.first.activity.metric", "totalActivities");
+        properties.setProperty("achievement.first.activity.threshold", "1");
         properties.setProperty("achievement.ten.k.steps", "TEN_K_STEPS");
+        properties.setProperty("achievement.ten.k.steps.metric", "totalSteps");
+        properties.setProperty("achievement.ten.k.steps.threshold", "10000");
         properties.setProperty("achievement.hundred.k.steps", "HUNDRED_K_STEPS");
+        properties.setProperty("achievement.hundred.k.steps.metric", "totalSteps");
+        properties.setProperty("achievement.hundred.k.steps.threshold", "100000");
         properties.setProperty("achievement.seven.day.streak", "SEVEN_DAY_STREAK");
+        properties.setProperty("achievement.seven.day.streak.metric", "currentStreak");
+        properties.setProperty("achievement.seven.day.streak.threshold", "7");
         properties.setProperty("achievement.thirty.day.streak", "THIRTY_DAY_STREAK");
+        properties.setProperty("achievement.thirty.day.streak.metric", "currentStreak");
+        properties.setProperty("achievement.thirty.day.streak.threshold", "30");
         properties.setProperty("achievement.marathon.distance", "MARATHON_DISTANCE");
+        properties.setProperty("achievement.marathon.distance.metric", "totalDistance");
+        properties.setProperty("achievement.marathon.distance.threshold", "42.195");
     }
 
     private void loadFromFile() {
@@ -56,6 +85,16 @@ public class Config {
         return properties.getProperty(key, defaultValue);
     }
 
+    public Set<String> getKeys(String prefix) {
+        Set<String> keys = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
     public int getInt(String key, int defaultValue) {
         try {
             return Integer.parseInt(properties.getProperty(key, String.valueOf(defaultValue)));
@@ -42,6 +42,12 @@ public class DateUtils {
         return Math.abs((int) java.time.temporal.ChronoUnit.DAYS.between(date1, date2));
     }
 
+    // Signed day count from one yyyy-MM-dd date to another; negative if toDate is earlier
+    public static long signedDaysFrom(String fromDate, String toDate) {
+        return java.time.temporal.ChronoUnit.DAYS.between(
+            LocalDate.parse(fromDate, DATE_FORMATTER), LocalDate.parse(toDate, DATE_FORMATTER));
+    }
+
     public static long getStartOfDay(long timestamp) {
         return Instant.ofEpochMilli(timestamp)
                 .atZone(ZoneId.systemDefault())
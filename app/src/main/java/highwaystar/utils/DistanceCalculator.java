@@ -1,6 +1,7 @@
 package highwaystar.utils;
 
 import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
 
 public class DistanceCalculator {
 
@@ -29,6 +30,18 @@ public class DistanceCalculator {
         return EARTH_RADIUS_KM * c;
     }
 
+    /**
+     * Length in km of the route between point from (inclusive) and point to (exclusive)
+     */
+    public static double calculateDistance(RouteBuffer route, int from, int to) {
+        double distance = 0;
+        for (int i = from + 1; i < to; i++) {
+            distance += calculateDistance(route.getLatitude(i - 1), route.getLongitude(i - 1),
+                route.getLatitude(i), route.getLongitude(i));
+        }
+        return distance;
+    }
+
     /**
      * Convert kilometers to miles
      */
@@ -0,0 +1,104 @@
+package highwaystar.utils;
+
+import highwaystar.models.RouteBuffer;
+
+/**
+ * Compact string encoding for activity routes.
+ *
+ * Version 1 layout: the version character, the point count, then one triple per point of
+ * zig-zag deltas (latitude and longitude in microdegrees, timestamp in milliseconds).
+ * Every number is written as 5-bit groups offset into printable ASCII, as in the
+ * Google polyline format, so the whole route is stored as a single string value.
+ */
+public class RouteCodec {
+    public static final char VERSION_1 = '1';
+
+    public static String encode(RouteBuffer route) {
+        StringBuilder sb = new StringBuilder(2 + route.size() * 8);
+        sb.append(VERSION_1);
+        writeVarint(sb, route.size());
+
+        // The buffer already holds microdegrees, so the deltas need no rounding
+        long prevLat = 0;
+        long prevLon = 0;
+        long prevTime = 0;
+        for (int i = 0; i < route.size(); i++) {
+            long lat = route.getLatitudeE6(i);
+            long lon = route.getLongitudeE6(i);
+            long time = route.getTimestamp(i);
+
+            writeVarint(sb, zigZag(lat - prevLat));
+            writeVarint(sb, zigZag(lon - prevLon));
+            writeVarint(sb, zigZag(time - prevTime));
+
+            prevLat = lat;
+            prevLon = lon;
+            prevTime = time;
+        }
+        return sb.toString();
+    }
+
+    public static RouteBuffer decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return new RouteBuffer();
+        }
+        if (encoded.charAt(0) != VERSION_1) {
+            throw new IllegalArgumentException("Unsupported route encoding version: " + encoded.charAt(0));
+        }
+
+        int[] pos = {1};
+        long size = readVarint(encoded, pos);
+        // Every point takes at least three characters, so a corrupt count can't size the buffer
+        if (size < 0 || size > (encoded.length() - pos[0]) / 3) {
+            throw new IllegalArgumentException("Route encoding claims " + size + " points in "
+                + (encoded.length() - pos[0]) + " characters");
+        }
+        RouteBuffer route = new RouteBuffer((int) size);
+
+        long lat = 0;
+        long lon = 0;
+        long time = 0;
+        for (int i = 0; i < size; i++) {
+            lat += unZigZag(readVarint(encoded, pos));
+            lon += unZigZag(readVarint(encoded, pos));
+            time += unZigZag(readVarint(encoded, pos));
+
+            route.addE6((int) lat, (int) lon, time);
+        }
+        return route;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(StringBuilder sb, long value) {
+        while ((value & ~0x1FL) != 0) {
+            sb.append((char) ((0x20 | (value & 0x1F)) + 63));
+            value >>>= 5;
+        }
+        sb.append((char) (value + 63));
+    }
+
+    private static long readVarint(String encoded, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            if (pos[0] >= encoded.length()) {
+                throw new IllegalArgumentException("Truncated route encoding");
+            }
+            if (shift >= Long.SIZE) {
+                throw new IllegalArgumentException("Route encoding has an overlong number at " + pos[0]);
+            }
+            chunk = encoded.charAt(pos[0]++) - 63;
+            result |= (long) (chunk & 0x1F) << shift;
+            shift += 5;
+        } while ((chunk & 0x20) != 0);
+        return result;
+    }
+}
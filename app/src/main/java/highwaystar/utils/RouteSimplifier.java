@@ -0,0 +1,144 @@
+package highwaystar.utils;
+
+import highwaystar.models.RouteBuffer;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification with the tolerances precomputed once per route. Each point
+ * gets a significance: the largest tolerance at which Douglas-Peucker still keeps it, capped
+ * by the point that split its segment so that coarser levels are always subsets of finer
+ * ones. Any level of detail is then a single pass over the significances.
+ *
+ * Distances are measured in web Mercator units where the map is 1 wide, so a tolerance of
+ * one pixel at a zoom level is 1 / (map width in pixels at that zoom).
+ */
+public class RouteSimplifier {
+    // Points kept in the overview stored with an activity's summary
+    public static final int OVERVIEW_POINTS = 64;
+
+    /**
+     * Per-point significance; the first and last points are always kept.
+     */
+    public static float[] significance(RouteBuffer route) {
+        int size = route.size();
+        float[] significance = new float[size];
+        if (size == 0) {
+            return significance;
+        }
+        double[] x = new double[size];
+        double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = mercatorX(route.getLongitudeE6(i));
+            y[i] = mercatorY(route.getLatitudeE6(i));
+        }
+
+        significance[0] = Float.POSITIVE_INFINITY;
+        significance[size - 1] = Float.POSITIVE_INFINITY;
+        // Pending segments as (first, last) pairs; iterative so long routes can't overflow the stack
+        int[] segments = new int[64];
+        int top = 0;
+        if (size > 2) {
+            segments[top++] = 0;
+            segments[top++] = size - 1;
+        }
+        while (top > 0) {
+            int last = segments[--top];
+            int first = segments[--top];
+
+            int split = first + 1;
+            double max = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > max) {
+                    max = distance;
+                    split = i;
+                }
+            }
+            significance[split] = Math.min((float) Math.sqrt(max), Math.min(significance[first], significance[last]));
+
+            if (top + 4 > segments.length) {
+                segments = Arrays.copyOf(segments, segments.length * 2);
+            }
+            if (split - first > 1) {
+                segments[top++] = first;
+                segments[top++] = split;
+            }
+            if (last - split > 1) {
+                segments[top++] = split;
+                segments[top++] = last;
+            }
+        }
+        return significance;
+    }
+
+    /**
+     * Writes the indexes of the points kept at the tolerance, in route order, and returns how
+     * many there are. indexes must be as long as the route.
+     */
+    public static int select(float[] significance, double tolerance, int[] indexes) {
+        int count = 0;
+        for (int i = 0; i < significance.length; i++) {
+            if (significance[i] > tolerance) {
+                indexes[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The route reduced to its most significant points, at most maxPoints (at least 2) of
+     * them. Null for a missing or empty route.
+     */
+    public static RouteBuffer overview(RouteBuffer route, int maxPoints) {
+        if (route == null || route.isEmpty()) {
+            return null;
+        }
+        int limit = Math.max(2, maxPoints);
+        if (route.size() <= limit) {
+            return route.copy();
+        }
+
+        float[] significance = significance(route);
+        float[] sorted = significance.clone();
+        Arrays.sort(sorted);
+        float threshold = sorted[sorted.length - limit];
+        // Points tied with the threshold fill whatever room the stronger ones leave
+        int ties = limit;
+        for (float value : significance) {
+            if (value > threshold) {
+                ties--;
+            }
+        }
+
+        RouteBuffer overview = new RouteBuffer(limit);
+        for (int i = 0; i < significance.length; i++) {
+            if (significance[i] > threshold || (significance[i] == threshold && ties-- > 0)) {
+                overview.addE6(route.getLatitudeE6(i), route.getLongitudeE6(i), route.getTimestamp(i));
+            }
+        }
+        return overview;
+    }
+
+    private static double mercatorX(int longitudeE6) {
+        return longitudeE6 / 1e6 / 360 + 0.5;
+    }
+
+    // Clamped like the tile projection, which stops short of the poles
+    private static double mercatorY(int latitudeE6) {
+        double e = Math.max(-0.9999, Math.min(0.9999, Math.sin(Math.toRadians(latitudeE6 / 1e6))));
+        return 0.5 - 0.25 * Math.log((1 + e) / (1 - e)) / Math.PI;
+    }
+
+    // Distance to the segment rather than its line, so out-and-back routes keep their far end
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,67 @@
+package highwaystar.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent requests for the same key onto one in-flight load
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    public CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> loader) {
+        calls.incrementAndGet();
+
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            collapsed.incrementAndGet();
+            return existing.copy();
+        }
+
+        try {
+            loader.get().whenComplete((value, error) -> {
+                inFlight.remove(key, created);
+                if (error != null) {
+                    created.completeExceptionally(error);
+                } else {
+                    created.complete(value);
+                }
+            });
+        } catch (Exception e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        // Callers get their own view so one of them can't complete or cancel it for the others
+        return created.copy();
+    }
+
+    /**
+     * Detaches the in-flight load for the key, so later callers start a new one. Callers
+     * already waiting still get its result.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getCollapsed() {
+        return collapsed.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d, collapsed=%d, inFlight=%d", getCalls(), getCollapsed(), getInFlight());
+    }
+}
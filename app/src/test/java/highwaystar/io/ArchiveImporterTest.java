@@ -0,0 +1,97 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveImporterTest {
+
+    @Test
+    void quotedFieldsKeepTheirCommasAndQuotes() throws Exception {
+        assertEquals(List.of("2024-03-10", "Run, easy", "say \"hi\"", ""),
+            ArchiveImporter.readRecord(reader(""), "2024-03-10,\"Run, easy\",\"say \"\"hi\"\"\","));
+        assertEquals(List.of("a", "two\nlines", "b"),
+            ArchiveImporter.readRecord(reader("lines\",b"), "a,\"two"));
+    }
+
+    @Test
+    void csvColumnsStayAlignedPastAQuotedComma() throws Exception {
+        Path archive = archive(Map.of("log.csv", """
+            Date,Notes,Type,Steps
+            2024-03-10,"Park, then river",Run,4200
+            2024-03-11,plain,Walk,1500
+            """));
+        List<Activity> written = new ArrayList<>();
+        try {
+            ArchiveImporter.Result result = importArchive(archive, written);
+            assertEquals(2, result.getImported());
+            assertTrue(result.getFailed().isEmpty());
+            written.sort(Comparator.comparingLong(Activity::getTimestamp));
+            assertEquals(4200, written.get(0).getSteps());
+            assertEquals(Activity.ActivityType.RUN, written.get(0).getType());
+            assertEquals(1500, written.get(1).getSteps());
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    @Test
+    void entriesInTheCheckpointCountAsSkipped() throws Exception {
+        Path archive = archive(Map.of(
+            "done.csv", "Date,Steps\n2024-03-10,100\n2024-03-11,200\n",
+            "todo.csv", "Date,Steps\n2024-03-12,300\n"));
+        Path checkpoint = archive.resolveSibling(archive.getFileName() + ArchiveImporter.CHECKPOINT_SUFFIX);
+        try {
+            String signature = "archive " + Files.size(archive) + " " + Files.getLastModifiedTime(archive).toMillis();
+            // As an interrupted run leaves it, the last line torn by the crash
+            Files.writeString(checkpoint, signature + "\n2\tdone.csv\n1\ttod", StandardCharsets.UTF_8);
+
+            List<Activity> written = new ArrayList<>();
+            ArchiveImporter.Result result = importArchive(archive, written);
+            assertEquals(1, result.getImported());
+            assertEquals(2, result.getSkipped());
+            assertEquals(300, written.get(0).getSteps());
+            assertFalse(Files.exists(checkpoint));
+        } finally {
+            Files.deleteIfExists(checkpoint);
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    private static ArchiveImporter.Result importArchive(Path archive, List<Activity> written) throws Exception {
+        return ArchiveImporter.importArchive(archive, Set.of(), batch -> {
+            synchronized (written) {
+                written.addAll(batch);
+            }
+            return CompletableFuture.completedFuture(null);
+        }, 10, 2, null);
+    }
+
+    private static Path archive(Map<String, String> entries) throws Exception {
+        Path file = Files.createTempFile("import", ".zip");
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static BufferedReader reader(String remaining) {
+        return new BufferedReader(new StringReader(remaining));
+    }
+}
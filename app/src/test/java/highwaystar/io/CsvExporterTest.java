@@ -0,0 +1,109 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import highwaystar.services.ActivityTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvExporterTest {
+    private static final String HEADER = "Date,Type,Duration (seconds),Steps,Distance (km),Pace,Calories";
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+    @Test
+    void decimalsMatchFormatOnTiesZeroAndNegatives() throws Exception {
+        List<Activity> activities = new ArrayList<>();
+        for (double distance : new double[] {1.005, 2.675, 1.115, 0.125, 0.0, -0.0, -0.001, -1.005, -3.5}) {
+            activities.add(activity(activities.size(), distance, 1800, Activity.ActivityType.RUN));
+        }
+        // Every thousandth up to 20 km, which covers a tie each hundredth
+        for (int i = 0; i <= 20_000; i++) {
+            activities.add(activity(activities.size(), i / 1000.0, 900 + i % 7200, Activity.ActivityType.WALK));
+        }
+
+        assertEquals(expected(activities), export(activities, false));
+    }
+
+    @Test
+    void paceIsMinutesPerKilometre() throws Exception {
+        List<Activity> activities = List.of(
+            activity(0, 5.0, 1500, Activity.ActivityType.RUN),
+            activity(1, 3.0, 1001, Activity.ActivityType.CYCLE),
+            activity(2, 0.0, 600, Activity.ActivityType.WALK),
+            activity(3, 2.0, 0, Activity.ActivityType.HIKE));
+
+        List<String> rows = export(activities, false);
+        assertEquals(expected(activities), rows);
+        // Newest first
+        assertEquals("5.00", rows.get(4).split(",")[5]);
+        assertEquals("0", rows.get(2).split(",")[5]);
+        assertEquals("0", rows.get(1).split(",")[5]);
+    }
+
+    @Test
+    void gzipHoldsTheSameRows() throws Exception {
+        List<Activity> activities = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            activities.add(activity(i, random.nextInt(30_000) / 1000.0, random.nextInt(10_000),
+                Activity.ActivityType.values()[random.nextInt(Activity.ActivityType.values().length)]));
+        }
+
+        assertEquals(export(activities, false), export(activities, true));
+    }
+
+    private static List<String> expected(List<Activity> activities) {
+        List<String> rows = new ArrayList<>();
+        rows.add(HEADER);
+        for (int i = activities.size() - 1; i >= 0; i--) {
+            Activity activity = activities.get(i);
+            int duration = activity.getDuration();
+            double distance = activity.getDistance();
+            String pace = duration > 0 && distance > 0 ? String.format("%.2f", duration / 60.0 / distance) : "0";
+            rows.add(String.join(",",
+                DAY.plusDays(i / 3).toString(),
+                activity.getType().getDisplayName(),
+                Integer.toString(duration),
+                Integer.toString(activity.getSteps()),
+                String.format("%.2f", distance),
+                pace,
+                Long.toString(Activity.calculateCalories(activity.getType(), duration, 70.0))));
+        }
+        return rows;
+    }
+
+    private static List<String> export(List<Activity> activities, boolean gzip) throws Exception {
+        Path file = Files.createTempFile("export", gzip ? ".csv.gz" : ".csv");
+        try {
+            int written = CsvExporter.export(ActivityTable.of(activities), file, gzip, null);
+            assertEquals(activities.size(), written);
+            try (InputStream in = gzip ? new GZIPInputStream(Files.newInputStream(file)) : Files.newInputStream(file)) {
+                return Arrays.asList(new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Three activities a day, an hour apart, in list order
+    private static Activity activity(int index, double distance, int duration, Activity.ActivityType type) {
+        Activity activity = new Activity();
+        activity.setActivityId("a" + index);
+        activity.setTimestamp(DAY.plusDays(index / 3).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli()
+            + (index % 3) * 3_600_000L);
+        activity.setDistance(distance);
+        activity.setDuration(duration);
+        activity.setSteps(index * 10);
+        activity.setType(type);
+        return activity;
+    }
+}
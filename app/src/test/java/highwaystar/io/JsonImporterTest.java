@@ -0,0 +1,68 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonImporterTest {
+
+    @Test
+    void idsThatCantBeKeysAreEscaped() throws Exception {
+        List<Activity> written = new ArrayList<>();
+        JsonImporter.Result result = importJson("""
+            {"version": 1, "activities": [
+              {"id": "plain-id", "timestamp": 1000},
+              {"id": "run.2024#1", "timestamp": 2000},
+              {"id": "a/b[0]$", "timestamp": 3000},
+              {"id": "50%", "timestamp": 4000},
+              {"id": "", "timestamp": 5000}
+            ]}
+            """, Set.of(), written);
+
+        assertEquals(5, result.getImported());
+        assertEquals(0, result.getSkipped());
+        assertEquals(2, result.getRenamed());
+        List<String> ids = new ArrayList<>();
+        for (Activity activity : written) {
+            ids.add(activity.getActivityId());
+        }
+        assertEquals(Arrays.asList("plain-id", "run%2E2024%231", "a%2Fb%5B0%5D%24", "50%", null), ids);
+    }
+
+    @Test
+    void escapedIdsAreSkippedOnReimport() throws Exception {
+        List<Activity> written = new ArrayList<>();
+        JsonImporter.Result result = importJson("""
+            {"version": 1, "activities": [
+              {"id": "run.1", "timestamp": 1000},
+              {"id": "run.2", "timestamp": 2000}
+            ]}
+            """, Set.of("run%2E1"), written);
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getSkipped());
+        assertEquals(1, result.getRenamed());
+        assertEquals("run%2E2", written.get(0).getActivityId());
+    }
+
+    private static JsonImporter.Result importJson(String json, Set<String> existingIds, List<Activity> written)
+            throws Exception {
+        Path file = Files.createTempFile("import", ".json");
+        try {
+            Files.writeString(file, json, StandardCharsets.UTF_8);
+            return JsonImporter.importFile(file, existingIds, batch -> {
+                written.addAll(batch);
+                return CompletableFuture.completedFuture(null);
+            }, null);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package highwaystar.io;
+
+import highwaystar.models.Activity;
+import highwaystar.models.RouteBuffer;
+import highwaystar.utils.DistanceCalculator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackReaderTest {
+    private static final long START = Instant.parse("2024-03-10T08:00:00Z").toEpochMilli();
+
+    @Test
+    void utcTimesMatchTheJavaTimeParser() {
+        for (String text : new String[] {"2024-03-10T08:00:00Z", "2024-03-10T08:00:00.250Z", "1999-12-31T23:59:59Z",
+                "2024-02-29T12:00:00Z", "2000-02-29T00:00:00.001Z", "2023-04-30T10:20:30Z"}) {
+            assertEquals(Long.valueOf(Instant.parse(text).toEpochMilli()), TrackReader.parseTime(text), text);
+        }
+        // Other forms go through java.time; without an offset the time is UTC
+        assertEquals(Long.valueOf(Instant.parse("2024-03-10T06:00:00Z").toEpochMilli()),
+            TrackReader.parseTime("2024-03-10T08:00:00+02:00"));
+        assertEquals(Long.valueOf(START), TrackReader.parseTime(" 2024-03-10T08:00:00 "));
+    }
+
+    @Test
+    void impossibleTimesAreRejected() {
+        for (String text : new String[] {"2023-02-29T12:00:00Z", "1900-02-29T12:00:00Z", "2024-04-31T12:00:00Z",
+                "2024-13-01T12:00:00Z", "2024-00-10T12:00:00Z", "2024-03-00T12:00:00Z", "2024-03-10T24:00:00Z",
+                "2024-03-10T08:60:00Z", "2024-03-10T08:00:60Z", "2024-03-10T08:00:00.2x0Z", "not a time", "", null}) {
+            assertNull(TrackReader.parseTime(text), text);
+        }
+    }
+
+    @Test
+    void gpxPointsTypeAndNotes() throws Exception {
+        Activity activity = read("""
+            <?xml version="1.0"?>
+            <gpx version="1.1" xmlns="http://www.topografix.com/GPX/1/1">
+             <metadata><time>2024-03-10T12:00:00Z</time></metadata>
+             <trk><desc>Morning loop</desc><type>running</type><trkseg>
+              <trkpt lat="51.500000" lon="-0.100000"><time>2024-03-10T08:00:00Z</time></trkpt>
+              <trkpt lat="51.501000" lon="-0.100000"><time>2024-03-10T08:00:30Z</time></trkpt>
+              <trkpt lat="51.502000" lon="-0.100000"><time>2024-03-10T08:01:00.500Z</time></trkpt>
+             </trkseg></trk>
+            </gpx>
+            """);
+
+        // The first point wins over the metadata time
+        assertEquals(START, activity.getTimestamp());
+        assertEquals(Activity.ActivityType.RUN, activity.getType());
+        assertEquals("Morning loop", activity.getNotes());
+        assertEquals(60, activity.getDuration());
+        assertEquals(3, activity.getRoute().size());
+        assertEquals(51_501_000, activity.getRoute().getLatitudeE6(1));
+        assertEquals(START + 60_500, activity.getRoute().getTimestamp(2));
+        assertEquals(DistanceCalculator.calculateDistance(activity.getRoute(), 0, 3), activity.getDistance(), 1e-9);
+        assertEquals(Math.round(activity.getDistance() / Activity.ActivityType.RUN.getDistancePerStep()),
+            activity.getSteps());
+    }
+
+    @Test
+    void distanceSkipsTheGapBetweenSegments() throws Exception {
+        Activity activity = read("""
+            <gpx><trk><trkseg>
+              <trkpt lat="51.500" lon="-0.100"><time>2024-03-10T08:00:00Z</time></trkpt>
+              <trkpt lat="51.510" lon="-0.100"><time>2024-03-10T08:10:00Z</time></trkpt>
+             </trkseg><trkseg>
+              <trkpt lat="52.000" lon="-0.100"><time>2024-03-10T09:00:00Z</time></trkpt>
+              <trkpt lat="52.010" lon="-0.100"><time>2024-03-10T09:10:00Z</time></trkpt>
+            </trkseg></trk></gpx>
+            """);
+
+        double first = DistanceCalculator.calculateDistance(51.500, -0.100, 51.510, -0.100);
+        double second = DistanceCalculator.calculateDistance(52.000, -0.100, 52.010, -0.100);
+        assertEquals(first + second, activity.getDistance(), 1e-9);
+        assertEquals(4, activity.getRoute().size());
+        // Without laps the duration is the span of the points, gap included
+        assertEquals(70 * 60, activity.getDuration());
+    }
+
+    @Test
+    void leadingUntimedPointsTakeTheFirstTime() throws Exception {
+        Activity activity = read("""
+            <gpx><trk><trkseg>
+              <trkpt lat="51.500" lon="-0.100"/>
+              <trkpt lat="51.501" lon="-0.100"/>
+              <trkpt lat="51.502" lon="-0.100"><time>2024-03-10T08:00:00Z</time></trkpt>
+              <trkpt lat="51.503" lon="-0.100"/>
+              <trkpt lat="51.504" lon="-0.100"><time>2024-03-10T08:02:00Z</time></trkpt>
+            </trkseg></trk></gpx>
+            """);
+
+        RouteBuffer route = activity.getRoute();
+        assertEquals(5, route.size());
+        assertEquals(START, route.getTimestamp(0));
+        assertEquals(START, route.getTimestamp(1));
+        // Later untimed points inherit the previous time
+        assertEquals(START, route.getTimestamp(3));
+        assertEquals(START, activity.getTimestamp());
+        assertEquals(120, activity.getDuration());
+    }
+
+    @Test
+    void untimedTrackFallsBackToTheMetadataTime() throws Exception {
+        Activity activity = read("""
+            <gpx><metadata><time>2024-03-10T08:00:00Z</time></metadata><trk><trkseg>
+              <trkpt lat="51.500" lon="-0.100"/>
+              <trkpt lat="51.501" lon="-0.100"/>
+            </trkseg></trk></gpx>
+            """);
+
+        assertEquals(START, activity.getTimestamp());
+        assertEquals(START, activity.getRoute().getTimestamp(1));
+        assertEquals(0, activity.getDuration());
+    }
+
+    @Test
+    void tcxPausesAreSkippedAndLapTimeIsTheDuration() throws Exception {
+        Activity activity = read("""
+            <TrainingCenterDatabase xmlns="http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2">
+             <Activities><Activity Sport="Biking">
+              <Id>2024-03-10T07:59:00Z</Id>
+              <Lap StartTime="2024-03-10T08:00:00Z">
+               <TotalTimeSeconds>1200.4</TotalTimeSeconds>
+               <Track>
+                <Trackpoint><Time>2024-03-10T08:00:00Z</Time>
+                 <Position><LatitudeDegrees>51.5</LatitudeDegrees><LongitudeDegrees>-0.1</LongitudeDegrees></Position>
+                </Trackpoint>
+                <Trackpoint><Time>2024-03-10T08:05:00Z</Time></Trackpoint>
+                <Trackpoint><Time>2024-03-10T08:30:00Z</Time>
+                 <Position><LatitudeDegrees>51.6</LatitudeDegrees><LongitudeDegrees>-0.1</LongitudeDegrees></Position>
+                </Trackpoint>
+               </Track>
+              </Lap>
+              <Notes>Commute</Notes>
+             </Activity></Activities>
+            </TrainingCenterDatabase>
+            """);
+
+        assertEquals(Activity.ActivityType.CYCLE, activity.getType());
+        assertEquals(2, activity.getRoute().size());
+        assertEquals(START, activity.getTimestamp());
+        // Lap time leaves out the pause, where the points span 30 minutes
+        assertEquals(1200, activity.getDuration());
+        assertEquals("Commute", activity.getNotes());
+    }
+
+    @Test
+    void unreadableFilesFail() {
+        assertThrows(IOException.class, () -> read("<kml><Document/></kml>"));
+        assertThrows(IOException.class, () -> read("<gpx><trk><trkseg/></trk></gpx>"));
+        assertThrows(IOException.class, () -> read("<gpx><trk><trkseg><trkpt lat=\"1\" lon=\"2\"/></trkseg></trk></gpx>"));
+        assertThrows(IOException.class, () -> read("<gpx><trk>"));
+    }
+
+    @Test
+    void gpxWriterOutputReadsBack() throws Exception {
+        RouteBuffer route = new RouteBuffer();
+        for (int i = 0; i < 120; i++) {
+            route.add(51.5 + i * 1e-4, -0.1 - i * 2e-4, START + i * 1000L + (i % 4) * 250);
+        }
+        Activity original = new Activity();
+        original.setType(Activity.ActivityType.HIKE);
+        original.setTimestamp(START);
+        original.setDate("2024-03-10");
+        original.setNotes("Ridge & valley <east>");
+
+        Activity read = TrackReader.read(new ByteArrayInputStream(GpxWriter.write(original, route)));
+
+        assertEquals(Activity.ActivityType.HIKE, read.getType());
+        assertEquals("Ridge & valley <east>", read.getNotes());
+        assertEquals(START, read.getTimestamp());
+        assertEquals(route.size(), read.getRoute().size());
+        for (int i = 0; i < route.size(); i++) {
+            assertEquals(route.getLatitudeE6(i), read.getRoute().getLatitudeE6(i), "latitude " + i);
+            assertEquals(route.getLongitudeE6(i), read.getRoute().getLongitudeE6(i), "longitude " + i);
+            assertEquals(route.getTimestamp(i), read.getRoute().getTimestamp(i), "time " + i);
+        }
+        assertEquals(DistanceCalculator.calculateDistance(route, 0, route.size()), read.getDistance(), 1e-9);
+        assertEquals((route.getTimestamp(route.size() - 1) - START) / 1000, read.getDuration());
+    }
+
+    private static Activity read(String xml) throws IOException {
+        return TrackReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,78 @@
+package highwaystar.repository;
+
+import highwaystar.models.Activity;
+import highwaystar.models.UserProfile;
+import highwaystar.services.ProfileService;
+import highwaystar.utils.DateUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentSaveTest {
+    private static final int SAVES = 100;
+    private static final int DAYS = 5;
+
+    @Test
+    void concurrentSavesKeepTotalsAndStreak() throws Exception {
+        // The test configuration selects the memory backend, which ProfileService shares
+        InMemoryRepository repository = (InMemoryRepository) Repositories.activities();
+        String uid = "stress-user";
+        repository.createProfile(new UserProfile(uid, "stress@example.com")).join();
+
+        LocalDate today = LocalDate.now();
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<StreakRule.Outcome>> results = new ArrayList<>();
+        long expectedSteps = 0;
+        Map<String, Integer> expectedByDate = new HashMap<>();
+
+        for (int i = 0; i < SAVES; i++) {
+            Activity activity = activity(uid, today.minusDays(i % DAYS), 100 + i);
+            expectedSteps += activity.getSteps();
+            expectedByDate.merge(activity.getDate(), activity.getSteps(), Integer::sum);
+            // Saved and counted into the streak the way the app does after every recorded activity
+            results.add(callers.submit(() -> {
+                start.await();
+                repository.saveActivity(activity).join();
+                return repository.advanceStreak(uid, activity.getDate()).join();
+            }));
+        }
+        start.countDown();
+
+        boolean needsRepair = false;
+        for (Future<StreakRule.Outcome> result : results) {
+            needsRepair |= result.get(30, TimeUnit.SECONDS) == StreakRule.Outcome.NEEDS_REPAIR;
+        }
+        callers.shutdown();
+        if (needsRepair) {
+            assertTrue(ProfileService.getInstance().recomputeStreak(uid).join());
+        }
+
+        UserProfile profile = repository.getProfile(uid).join();
+        assertEquals(SAVES, profile.getTotalActivities());
+        assertEquals(expectedSteps, profile.getTotalSteps());
+        assertEquals(SAVES * 0.5, profile.getTotalDistance(), 1e-6);
+        assertEquals(DAYS, profile.getCurrentStreak());
+        assertEquals(DAYS, profile.getLongestStreak());
+        assertEquals(today.toString(), profile.getLastActiveDate());
+
+        assertEquals(SAVES, repository.listActivities(uid).join().size());
+        assertEquals(expectedByDate, repository.getStepsByDate(uid,
+            today.minusDays(DAYS - 1).toString(), today.toString()).join());
+    }
+
+    private static Activity activity(String uid, LocalDate day, int steps) {
+        Activity activity = new Activity(uid, Activity.ActivityType.WALK);
+        activity.setTimestamp(day.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        activity.setDate(DateUtils.formatDate(activity.getTimestamp()));
+        activity.setSteps(steps);
+        activity.setDistance(0.5);
+        activity.setDuration(600);
+        return activity;
+    }
+}
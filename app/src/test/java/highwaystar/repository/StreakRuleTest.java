@@ -0,0 +1,70 @@
+package highwaystar.repository;
+
+import highwaystar.models.UserProfile;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreakRuleTest {
+
+    @Test
+    void firstActivityStartsStreak() {
+        UserProfile profile = profile(1);
+        assertEquals(StreakRule.Outcome.ADVANCED, StreakRule.apply(profile, "2024-03-10"));
+        assertStreak(profile, 1, 1, "2024-03-10");
+    }
+
+    @Test
+    void sameDayLeavesStreakUnchanged() {
+        UserProfile profile = profile(1);
+        StreakRule.apply(profile, "2024-03-10");
+        assertEquals(StreakRule.Outcome.UNCHANGED, StreakRule.apply(profile, "2024-03-10"));
+        assertStreak(profile, 1, 1, "2024-03-10");
+    }
+
+    @Test
+    void consecutiveDaysExtendStreak() {
+        UserProfile profile = profile(1);
+        StreakRule.apply(profile, "2024-02-28");
+        assertEquals(StreakRule.Outcome.ADVANCED, StreakRule.apply(profile, "2024-02-29"));
+        assertEquals(StreakRule.Outcome.ADVANCED, StreakRule.apply(profile, "2024-03-01"));
+        assertStreak(profile, 3, 3, "2024-03-01");
+    }
+
+    @Test
+    void gapRestartsStreakAndKeepsLongest() {
+        UserProfile profile = profile(1);
+        StreakRule.apply(profile, "2024-03-01");
+        StreakRule.apply(profile, "2024-03-02");
+        assertEquals(StreakRule.Outcome.ADVANCED, StreakRule.apply(profile, "2024-03-05"));
+        assertStreak(profile, 1, 2, "2024-03-05");
+    }
+
+    @Test
+    void backdatedActivityNeedsRepair() {
+        UserProfile profile = profile(1);
+        StreakRule.apply(profile, "2024-03-05");
+        assertEquals(StreakRule.Outcome.NEEDS_REPAIR, StreakRule.apply(profile, "2024-03-04"));
+        assertStreak(profile, 1, 1, "2024-03-05");
+    }
+
+    @Test
+    void profileWithoutLastActiveDateNeedsRepair() {
+        UserProfile profile = profile(5);
+        profile.setCurrentStreak(3);
+        assertEquals(StreakRule.Outcome.NEEDS_REPAIR, StreakRule.apply(profile, "2024-03-05"));
+        assertNull(profile.getLastActiveDate());
+    }
+
+    private static UserProfile profile(int totalActivities) {
+        UserProfile profile = new UserProfile("streak-user", null);
+        profile.setTotalActivities(totalActivities);
+        return profile;
+    }
+
+    private static void assertStreak(UserProfile profile, int current, int longest, String lastActive) {
+        assertEquals(current, profile.getCurrentStreak());
+        assertEquals(longest, profile.getLongestStreak());
+        assertEquals(lastActive, profile.getLastActiveDate());
+    }
+}
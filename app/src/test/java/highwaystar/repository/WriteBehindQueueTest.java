@@ -0,0 +1,101 @@
+package highwaystar.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindQueueTest {
+    private List<Map<String, Object>> batches;
+    private CompletableFuture<Void> sent;
+    private WriteBehindQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        batches = new ArrayList<>();
+        sent = new CompletableFuture<>();
+        // A window long enough that only flush() sends
+        queue = new WriteBehindQueue(60_000, updates -> {
+            batches.add(updates);
+            return sent;
+        });
+    }
+
+    @Test
+    void writesWithinTheWindowGoOutAsOneBatch() {
+        CompletableFuture<Void> first = queue.write("users/u1/profile/displayName", "A");
+        CompletableFuture<Void> second = queue.write("users/u1/profile/weight", 70.0);
+        CompletableFuture<Void> third = queue.write("users/u1/profile/displayName", "B");
+
+        queue.flush();
+        assertEquals(1, batches.size());
+        assertEquals(Map.of("users/u1/profile/displayName", "B", "users/u1/profile/weight", 70.0), batches.get(0));
+        assertFalse(first.isDone());
+
+        sent.complete(null);
+        assertTrue(first.isDone() && second.isDone() && third.isDone());
+        assertFalse(first.isCompletedExceptionally());
+    }
+
+    @Test
+    void childWriteFoldsIntoPendingAncestor() {
+        queue.write("users/u1/activities/a1", Map.of("steps", 100, "notes", "old"));
+        queue.write("users/u1/activities/a1/notes", "new");
+
+        queue.flush();
+        assertEquals(Map.of("users/u1/activities/a1", Map.of("steps", 100, "notes", "new")), batches.get(0));
+    }
+
+    @Test
+    void ancestorWriteSupersedesPendingChildren() {
+        CompletableFuture<Void> child = queue.write("users/u1/activities/a1/notes", "draft");
+        queue.write("users/u1/activities/a1", Map.of("steps", 200));
+
+        queue.flush();
+        assertEquals(Map.of("users/u1/activities/a1", Map.of("steps", 200)), batches.get(0));
+
+        sent.complete(null);
+        assertTrue(child.isDone());
+    }
+
+    @Test
+    void takePendingRemovesWritesUnderThePath() {
+        CompletableFuture<Void> notes = queue.write("users/u1/activities/a1/notes", "hi");
+        queue.write("users/u1/activities/a10/notes", "other");
+        queue.write("users/u1/profile/weight", 70.0);
+
+        CompletableFuture<Void> outcome = new CompletableFuture<>();
+        Map<String, Object> taken = queue.takePending("users/u1/activities/a1", outcome);
+        assertEquals(Map.of("notes", "hi"), taken);
+
+        queue.flush();
+        assertEquals(Map.of("users/u1/activities/a10/notes", "other", "users/u1/profile/weight", 70.0), batches.get(0));
+
+        sent.complete(null);
+        assertFalse(notes.isDone());
+        outcome.complete(null);
+        assertTrue(notes.isDone());
+    }
+
+    @Test
+    void failedSendFailsEveryWriter() {
+        CompletableFuture<Void> first = queue.write("users/u1/profile/displayName", "A");
+        CompletableFuture<Void> second = queue.write("users/u1/profile/weight", 70.0);
+
+        CompletableFuture<Void> flushed = queue.flush();
+        sent.completeExceptionally(new IllegalStateException("offline"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertTrue(flushed.isCompletedExceptionally());
+    }
+
+    @Test
+    void flushWithNothingPendingSendsNothing() {
+        assertTrue(queue.flush().isDone());
+        assertTrue(batches.isEmpty());
+    }
+}
@@ -0,0 +1,52 @@
+package highwaystar.services;
+
+import highwaystar.models.UserProfile;
+import highwaystar.repository.ProfileRepository;
+import highwaystar.repository.Repositories;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the memory backend selected by the test configuration
+class AchievementBackfillTest {
+    private final ProfileRepository profiles = Repositories.profiles();
+
+    @Test
+    void backfillUnlocksForEveryQualifyingUser() {
+        List<String> qualifying = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            qualifying.add(user(3, 20000));
+        }
+        String idle = user(0, 0);
+
+        int updated = AchievementEngine.getInstance().backfillAllUsers().join();
+        assertTrue(updated >= qualifying.size());
+
+        for (String uid : qualifying) {
+            UserProfile profile = profiles.getProfile(uid).join();
+            assertTrue(profile.hasAchievement("FIRST_ACTIVITY"), uid);
+            assertTrue(profile.hasAchievement("TEN_K_STEPS"), uid);
+            assertFalse(profile.hasAchievement("HUNDRED_K_STEPS"), uid);
+        }
+        assertTrue(profiles.getProfile(idle).join().getAchievements().isEmpty());
+
+        // Nothing left to unlock for these users on a second pass
+        AchievementEngine.getInstance().backfillAllUsers().join();
+        for (String uid : qualifying) {
+            assertEquals(2, profiles.getProfile(uid).join().getAchievements().size());
+        }
+    }
+
+    private String user(int activities, int steps) {
+        String uid = "backfill-" + UUID.randomUUID();
+        UserProfile profile = new UserProfile(uid, uid + "@example.com");
+        profile.setTotalActivities(activities);
+        profile.setTotalSteps(steps);
+        profiles.createProfile(profile).join();
+        return uid;
+    }
+}
@@ -0,0 +1,133 @@
+package highwaystar.services;
+
+import highwaystar.models.Activity;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivityTableTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+    @Test
+    void rowsAreOldestFirstWhateverTheInputOrder() {
+        ActivityTable table = ActivityTable.of(List.of(
+            activity("c", at(DAY, 18), 300, Activity.ActivityType.RUN),
+            activity("a", at(DAY, 8), 100, Activity.ActivityType.WALK),
+            activity("b", at(DAY, 12), 200, Activity.ActivityType.CYCLE)));
+
+        assertEquals(3, table.size());
+        assertEquals("a", table.getId(0));
+        assertEquals("b", table.getId(1));
+        assertEquals("c", table.getId(2));
+        assertEquals(Activity.ActivityType.CYCLE, table.getType(1));
+        assertEquals(DAY.toEpochDay(), table.getEpochDay(2));
+    }
+
+    @Test
+    void boundsTreatEqualTimestampsAsOneRange() {
+        long noon = at(DAY, 12);
+        ActivityTable table = ActivityTable.of(List.of(
+            activity("a", at(DAY, 8), 1, Activity.ActivityType.WALK),
+            activity("b", noon, 2, Activity.ActivityType.WALK),
+            activity("c", noon, 4, Activity.ActivityType.WALK),
+            activity("d", at(DAY, 18), 8, Activity.ActivityType.WALK)));
+
+        assertEquals(1, table.lowerBound(noon));
+        assertEquals(3, table.upperBound(noon));
+        assertEquals(6, table.sumSteps(table.lowerBound(noon), table.upperBound(noon)));
+        assertEquals(0, table.lowerBound(Long.MIN_VALUE));
+        assertEquals(4, table.upperBound(Long.MAX_VALUE));
+    }
+
+    @Test
+    void aggregatesMatchAPlainLoop() {
+        Random random = new Random(3);
+        List<Activity> activities = new ArrayList<>();
+        Activity.ActivityType[] types = Activity.ActivityType.values();
+        for (int i = 0; i < 500; i++) {
+            Activity activity = activity("a" + i, at(DAY.minusDays(random.nextInt(60)), random.nextInt(24)),
+                random.nextInt(20000), types[random.nextInt(types.length)]);
+            activity.setDuration(random.nextInt(7200));
+            activity.setDistance(random.nextDouble() * 20);
+            activities.add(activity);
+        }
+        ActivityTable table = ActivityTable.of(activities);
+
+        long start = at(DAY.minusDays(30), 0);
+        long end = at(DAY.minusDays(10), 0);
+        long steps = 0;
+        long duration = 0;
+        double distance = 0;
+        int running = 0;
+        for (Activity activity : activities) {
+            if (activity.getTimestamp() >= start && activity.getTimestamp() <= end) {
+                steps += activity.getSteps();
+                duration += activity.getDuration();
+                distance += activity.getDistance();
+                if (activity.getType() == Activity.ActivityType.RUN) {
+                    running++;
+                }
+            }
+        }
+
+        int from = table.lowerBound(start);
+        int to = table.upperBound(end);
+        assertEquals(steps, table.sumSteps(from, to));
+        assertEquals(duration, table.sumDuration(from, to));
+        assertEquals(distance, table.sumDistance(from, to), 1e-9);
+        assertEquals(running, table.countByType(Activity.ActivityType.RUN, from, to));
+    }
+
+    @Test
+    void stepsPerDayCoversOnlyTheWindow() {
+        ActivityTable table = ActivityTable.of(List.of(
+            activity("before", at(DAY.minusDays(1), 23), 1, Activity.ActivityType.WALK),
+            activity("first", at(DAY, 0), 10, Activity.ActivityType.WALK),
+            activity("first-again", at(DAY, 22), 20, Activity.ActivityType.RUN),
+            activity("third", at(DAY.plusDays(2), 9), 40, Activity.ActivityType.WALK),
+            activity("after", at(DAY.plusDays(3), 1), 80, Activity.ActivityType.WALK)));
+
+        assertArrayEquals(new long[] {30, 0, 40}, table.stepsPerDay(DAY, 3));
+    }
+
+    @Test
+    void stepsByDateGroupsEachDayInTheRange() {
+        ActivityTable table = ActivityTable.of(List.of(
+            activity("a", at(DAY, 7), 100, Activity.ActivityType.WALK),
+            activity("b", at(DAY, 19), 50, Activity.ActivityType.WALK),
+            activity("c", at(DAY.plusDays(1), 7), 25, Activity.ActivityType.WALK),
+            activity("d", at(DAY.plusDays(5), 7), 5, Activity.ActivityType.WALK)));
+
+        Map<String, Integer> stepsByDate = table.stepsByDate(at(DAY, 0), at(DAY.plusDays(2), 0));
+        assertEquals(Map.of(DAY.toString(), 150, DAY.plusDays(1).toString(), 25), stepsByDate);
+    }
+
+    @Test
+    void emptyTable() {
+        ActivityTable table = ActivityTable.of(Collections.emptyList());
+        assertEquals(0, table.size());
+        assertEquals(0, table.lowerBound(0));
+        assertEquals(0, table.sumSteps(0, 0));
+        assertArrayEquals(new long[2], table.stepsPerDay(DAY, 2));
+        assertTrue(table.stepsByDate(Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+    }
+
+    private static long at(LocalDate day, int hour) {
+        return LocalDateTime.of(day.getYear(), day.getMonth(), day.getDayOfMonth(), hour, 0)
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static Activity activity(String id, long timestamp, int steps, Activity.ActivityType type) {
+        Activity activity = new Activity();
+        activity.setActivityId(id);
+        activity.setTimestamp(timestamp);
+        activity.setSteps(steps);
+        activity.setType(type);
+        return activity;
+    }
+}
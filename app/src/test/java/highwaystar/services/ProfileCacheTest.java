@@ -0,0 +1,64 @@
+package highwaystar.services;
+
+import highwaystar.models.UserProfile;
+import highwaystar.repository.ProfileRepository;
+import highwaystar.repository.Repositories;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the memory backend selected by the test configuration
+class ProfileCacheTest {
+    private final ProfileRepository profiles = Repositories.profiles();
+    private final ProfileService profileService = ProfileService.getInstance();
+
+    @Test
+    void callersGetTheirOwnCopies() {
+        String uid = user();
+        UserProfile first = profileService.getProfile(uid).join();
+        first.setDisplayName("Changed locally");
+        first.getAchievements().put("local_only", 1);
+        first.getPreferences().setDailyStepGoal(1);
+
+        UserProfile second = profileService.getProfile(uid).join();
+        assertNotSame(first, second);
+        assertEquals("Runner", second.getDisplayName());
+        assertFalse(second.getAchievements().containsKey("local_only"));
+        assertEquals(10000, second.getPreferences().getDailyStepGoal());
+    }
+
+    @Test
+    void updateIsServedFromTheCacheWithoutSharingTheCallersObject() {
+        String uid = user();
+        UserProfile profile = profileService.getProfile(uid).join();
+        profile.setDisplayName("Renamed");
+        assertTrue(profileService.updateProfile(profile).join());
+
+        profile.setDisplayName("Edited after saving");
+        assertEquals("Renamed", profileService.getProfile(uid).join().getDisplayName());
+    }
+
+    @Test
+    void invalidationServesTheStoredProfile() {
+        String uid = user();
+        profileService.getProfile(uid).join();
+        profiles.setStreak(uid, 4, 9, "2024-03-10").join();
+
+        // Still the cached copy until invalidated
+        assertEquals(0, profileService.getProfile(uid).join().getCurrentStreak());
+        profileService.invalidateProfile(uid);
+        UserProfile refreshed = profileService.getProfile(uid).join();
+        assertEquals(4, refreshed.getCurrentStreak());
+        assertEquals(9, refreshed.getLongestStreak());
+    }
+
+    private String user() {
+        String uid = "cache-" + UUID.randomUUID();
+        UserProfile profile = new UserProfile(uid, uid + "@example.com");
+        profile.setDisplayName("Runner");
+        profiles.createProfile(profile).join();
+        return uid;
+    }
+}
@@ -0,0 +1,80 @@
+package highwaystar.services;
+
+import highwaystar.models.Activity;
+import highwaystar.models.UserProfile;
+import highwaystar.repository.ActivityRepository;
+import highwaystar.repository.ProfileRepository;
+import highwaystar.repository.Repositories;
+import highwaystar.utils.DateUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the memory backend selected by the test configuration
+class RecomputeStreakTest {
+    private final ActivityRepository activities = Repositories.activities();
+    private final ProfileRepository profiles = Repositories.profiles();
+
+    @Test
+    void runEndingYesterdayIsCurrent() {
+        LocalDate today = LocalDate.now();
+        String uid = user(today.minusDays(10), today.minusDays(3), today.minusDays(2), today.minusDays(1));
+
+        assertTrue(ProfileService.getInstance().recomputeStreak(uid).join());
+        UserProfile profile = profiles.getProfile(uid).join();
+        assertEquals(3, profile.getCurrentStreak());
+        assertEquals(3, profile.getLongestStreak());
+        assertEquals(today.minusDays(1).toString(), profile.getLastActiveDate());
+    }
+
+    @Test
+    void runEndingTodayIsCurrent() {
+        LocalDate today = LocalDate.now();
+        String uid = user(today.minusDays(1), today);
+
+        assertTrue(ProfileService.getInstance().recomputeStreak(uid).join());
+        assertEquals(2, profiles.getProfile(uid).join().getCurrentStreak());
+    }
+
+    @Test
+    void brokenRunIsNotCurrent() {
+        LocalDate today = LocalDate.now();
+        String uid = user(today.minusDays(6), today.minusDays(5), today.minusDays(4), today.minusDays(2));
+
+        assertTrue(ProfileService.getInstance().recomputeStreak(uid).join());
+        UserProfile profile = profiles.getProfile(uid).join();
+        assertEquals(0, profile.getCurrentStreak());
+        assertEquals(3, profile.getLongestStreak());
+        assertEquals(today.minusDays(2).toString(), profile.getLastActiveDate());
+    }
+
+    @Test
+    void noActivitiesMeansNoStreak() {
+        String uid = user();
+
+        assertTrue(ProfileService.getInstance().recomputeStreak(uid).join());
+        UserProfile profile = profiles.getProfile(uid).join();
+        assertEquals(0, profile.getCurrentStreak());
+        assertEquals(0, profile.getLongestStreak());
+    }
+
+    private String user(LocalDate... days) {
+        String uid = "recompute-" + System.nanoTime();
+        profiles.createProfile(new UserProfile(uid, null)).join();
+        List<Activity> saved = new ArrayList<>();
+        for (LocalDate day : days) {
+            Activity activity = new Activity(uid, Activity.ActivityType.RUN);
+            activity.setTimestamp(day.atTime(8, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            activity.setDate(DateUtils.formatDate(activity.getTimestamp()));
+            activity.setSteps(1000);
+            saved.add(activity);
+        }
+        activities.saveActivities(uid, saved).join();
+        return uid;
+    }
+}
@@ -0,0 +1,162 @@
+package highwaystar.services;
+
+import highwaystar.models.RouteBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteCacheTest {
+    private Path dir;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("routes");
+        file = dir.resolve("routes.cache");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void cachedViewHoldsTheSamePoints() {
+        RouteCache cache = open();
+        try {
+            RouteBuffer route = route(500, 0);
+            RouteBuffer cached = cache.put("u1", "a1", route);
+
+            assertTrue(cached.isReadOnly());
+            assertSamePoints(route, cached);
+            assertSamePoints(route, cache.get("u1", "a1"));
+            // Keys include the user
+            assertNull(cache.get("u2", "a1"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void replacingARouteServesTheNewOne() {
+        RouteCache cache = open();
+        try {
+            cache.put("u1", "a1", route(100, 0));
+            RouteBuffer replacement = route(50, 1);
+            cache.put("u1", "a1", replacement);
+            assertSamePoints(replacement, cache.get("u1", "a1"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void removeBlocksAPutReadBeforeIt() {
+        RouteCache cache = open();
+        try {
+            cache.put("u1", "a1", route(100, 0));
+            long readAt = cache.getGeneration();
+
+            cache.remove("u1", "a1");
+            assertEquals(readAt + 1, cache.getGeneration());
+            assertNull(cache.get("u1", "a1"));
+
+            // A route loaded before the remove comes back uncached
+            RouteBuffer stale = route(100, 0);
+            assertSame(stale, cache.put("u1", "a1", stale, readAt));
+            assertNull(cache.get("u1", "a1"));
+
+            RouteBuffer fresh = route(80, 2);
+            assertNotSame(fresh, cache.put("u1", "a1", fresh, cache.getGeneration()));
+            assertSamePoints(fresh, cache.get("u1", "a1"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void cleanCloseKeepsTheRoutes() {
+        RouteBuffer route = route(200, 0);
+        RouteCache first = open();
+        first.put("u1", "a1", route);
+        first.close();
+
+        RouteCache reopened = open();
+        try {
+            assertSamePoints(route, reopened.get("u1", "a1"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void uncleanCloseStartsOver() throws IOException {
+        RouteCache first = open();
+        first.put("u1", "a1", route(200, 0));
+        first.close();
+        // As a crash leaves the file: still marked open
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.nativeOrder()).putInt(0, 0), 8);
+        }
+
+        RouteCache reopened = open();
+        try {
+            assertTrue(reopened.isEnabled());
+            assertNull(reopened.get("u1", "a1"));
+            RouteBuffer route = route(10, 3);
+            reopened.put("u1", "a2", route);
+            assertSamePoints(route, reopened.get("u1", "a2"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void disabledCacheHandsRoutesBack() {
+        RouteCache cache = new RouteCache(file, 64, false);
+        RouteBuffer route = route(10, 0);
+        assertSame(route, cache.put("u1", "a1", route));
+        assertNull(cache.get("u1", "a1"));
+        assertFalse(Files.exists(file));
+    }
+
+    private RouteCache open() {
+        RouteCache cache = new RouteCache(file, 64, true);
+        assertTrue(cache.isEnabled());
+        return cache;
+    }
+
+    private static RouteBuffer route(int points, int seed) {
+        RouteBuffer route = new RouteBuffer(points);
+        for (int i = 0; i < points; i++) {
+            route.add(51.5 + (i + seed) * 1e-4, -0.1 + i * 2e-4, 1_700_000_000_000L + i * 1000L + seed);
+        }
+        return route;
+    }
+
+    private static void assertSamePoints(RouteBuffer expected, RouteBuffer actual) {
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getLatitudeE6(i), actual.getLatitudeE6(i));
+            assertEquals(expected.getLongitudeE6(i), actual.getLongitudeE6(i));
+            assertEquals(expected.getTimestamp(i), actual.getTimestamp(i));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package highwaystar.utils;
+
+import highwaystar.models.UserProfile;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+
+    @Test
+    void profileRoundTrip() throws IOException {
+        UserProfile profile = new UserProfile("u1", "runner@example.com");
+        profile.setDisplayName("Runner");
+        profile.setTotalSteps(12345);
+        profile.setCurrentStreak(3);
+        profile.setLongestStreak(7);
+        profile.setLastActiveDate("2024-03-10");
+        profile.getAchievements().put("first_run", 1);
+        profile.getPreferences().setDailyStepGoal(8000);
+
+        UserProfile read = roundTrip(profile);
+        assertEquals("runner@example.com", read.getEmail());
+        assertEquals("Runner", read.getDisplayName());
+        assertEquals(12345, read.getTotalSteps());
+        assertEquals(3, read.getCurrentStreak());
+        assertEquals(7, read.getLongestStreak());
+        assertEquals("2024-03-10", read.getLastActiveDate());
+        assertEquals(Integer.valueOf(1), read.getAchievements().get("first_run"));
+        assertEquals(8000, read.getPreferences().getDailyStepGoal());
+    }
+
+    @Test
+    void profileWithoutAchievementsOrPreferencesIsWrittenWithDefaults() throws IOException {
+        UserProfile profile = new UserProfile("u1", "runner@example.com");
+        profile.setAchievements(null);
+        profile.setPreferences(null);
+
+        UserProfile read = roundTrip(profile);
+        assertTrue(read.getAchievements().isEmpty());
+        assertEquals(new UserProfile.UserPreferences().getDailyStepGoal(), read.getPreferences().getDailyStepGoal());
+    }
+
+    private static UserProfile roundTrip(UserProfile profile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            BinaryCodec.writeProfile(out, profile);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return BinaryCodec.readProfile(in, profile.getUid());
+        }
+    }
+}
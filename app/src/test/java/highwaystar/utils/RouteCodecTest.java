@@ -0,0 +1,74 @@
+package highwaystar.utils;
+
+import highwaystar.models.RouteBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteCodecTest {
+
+    @Test
+    void roundTripKeepsEveryPoint() {
+        RouteBuffer route = new RouteBuffer();
+        route.add(1.352083, 103.819836, 1_700_000_000_000L);
+        route.add(-33.868820, 151.209296, 1_700_000_001_000L);
+        route.add(89.999999, -179.999999, 1_700_000_000_500L);
+        route.add(0, 0, 1_700_000_002_000L);
+
+        assertRoute(route, RouteCodec.decode(RouteCodec.encode(route)));
+    }
+
+    @Test
+    void roundTripKeepsTimesMoreThanAnIntApart() {
+        RouteBuffer route = new RouteBuffer();
+        route.add(51.5, -0.12, 1_600_000_000_000L);
+        route.add(51.6, -0.13, 1_700_000_000_000L);
+
+        assertRoute(route, RouteCodec.decode(RouteCodec.encode(route)));
+    }
+
+    @Test
+    void emptyInputDecodesToEmptyRoute() {
+        assertTrue(RouteCodec.decode(null).isEmpty());
+        assertTrue(RouteCodec.decode("").isEmpty());
+        assertTrue(RouteCodec.decode(RouteCodec.encode(new RouteBuffer())).isEmpty());
+    }
+
+    @Test
+    void pointCountLargerThanInputIsRejected() {
+        // '1' then a count of 2^30 points with nothing after it
+        StringBuilder encoded = new StringBuilder("1");
+        long count = 1L << 30;
+        while ((count & ~0x1FL) != 0) {
+            encoded.append((char) ((0x20 | (count & 0x1F)) + 63));
+            count >>>= 5;
+        }
+        encoded.append((char) (count + 63));
+
+        assertThrows(IllegalArgumentException.class, () -> RouteCodec.decode(encoded.toString()));
+    }
+
+    @Test
+    void truncatedInputIsRejected() {
+        RouteBuffer route = new RouteBuffer();
+        route.add(1.35, 103.82, 1_700_000_000_000L);
+        route.add(1.36, 103.83, 1_700_000_001_000L);
+        String encoded = RouteCodec.encode(route);
+
+        assertThrows(IllegalArgumentException.class, () -> RouteCodec.decode(encoded.substring(0, encoded.length() - 1)));
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RouteCodec.decode("2??"));
+    }
+
+    private static void assertRoute(RouteBuffer expected, RouteBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getLatitudeE6(i), actual.getLatitudeE6(i), "latitude " + i);
+            assertEquals(expected.getLongitudeE6(i), actual.getLongitudeE6(i), "longitude " + i);
+            assertEquals(expected.getTimestamp(i), actual.getTimestamp(i), "time " + i);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package highwaystar.utils;
+
+import highwaystar.models.RouteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteSimplifierTest {
+
+    @Test
+    void coarserLevelsAreSubsetsOfFinerOnes() {
+        for (long seed = 1; seed <= 20; seed++) {
+            RouteBuffer route = track(seed, 2000);
+            float[] significance = RouteSimplifier.significance(route);
+            int[] indexes = new int[route.size()];
+
+            Set<Integer> finer = null;
+            // A pixel at zoom 20 up to a pixel at zoom 0, in map widths
+            for (double tolerance = 1.0 / (256 << 20); tolerance < 1; tolerance *= 2) {
+                int count = RouteSimplifier.select(significance, tolerance, indexes);
+                Set<Integer> kept = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    kept.add(indexes[i]);
+                }
+                if (finer != null) {
+                    assertTrue(finer.containsAll(kept), "seed " + seed + " at tolerance " + tolerance);
+                }
+                finer = kept;
+            }
+        }
+    }
+
+    @Test
+    void endpointsAreAlwaysKept() {
+        RouteBuffer route = track(3, 500);
+        float[] significance = RouteSimplifier.significance(route);
+        int[] indexes = new int[route.size()];
+
+        int count = RouteSimplifier.select(significance, Double.MAX_VALUE, indexes);
+        assertEquals(2, count);
+        assertEquals(0, indexes[0]);
+        assertEquals(route.size() - 1, indexes[1]);
+    }
+
+    @Test
+    void selectionIsInRouteOrder() {
+        RouteBuffer route = track(4, 1000);
+        int[] indexes = new int[route.size()];
+        int count = RouteSimplifier.select(RouteSimplifier.significance(route), 1e-7, indexes);
+        for (int i = 1; i < count; i++) {
+            assertTrue(indexes[i - 1] < indexes[i]);
+        }
+    }
+
+    @Test
+    void outAndBackKeepsItsFarEnd() {
+        RouteBuffer route = new RouteBuffer();
+        for (int i = 0; i <= 100; i++) {
+            route.add(51.5 + i * 1e-4, -0.1, i * 1000L);
+        }
+        for (int i = 99; i >= 0; i--) {
+            route.add(51.5 + i * 1e-4, -0.1, (200 - i) * 1000L);
+        }
+
+        RouteBuffer overview = RouteSimplifier.overview(route, 3);
+        assertEquals(3, overview.size());
+        assertEquals(route.getLatitudeE6(100), overview.getLatitudeE6(1));
+    }
+
+    @Test
+    void overviewKeepsAtMostTheLimitAndBothEnds() {
+        RouteBuffer route = track(5, 3600);
+        RouteBuffer overview = RouteSimplifier.overview(route, RouteSimplifier.OVERVIEW_POINTS);
+
+        assertEquals(RouteSimplifier.OVERVIEW_POINTS, overview.size());
+        assertEquals(route.getTimestamp(0), overview.getTimestamp(0));
+        assertEquals(route.getTimestamp(route.size() - 1), overview.getTimestamp(overview.size() - 1));
+        for (int i = 1; i < overview.size(); i++) {
+            assertTrue(overview.getTimestamp(i - 1) < overview.getTimestamp(i));
+        }
+    }
+
+    @Test
+    void shortAndEmptyRoutes() {
+        assertNull(RouteSimplifier.overview(null, 64));
+        assertNull(RouteSimplifier.overview(new RouteBuffer(), 64));
+        assertEquals(0, RouteSimplifier.significance(new RouteBuffer()).length);
+
+        RouteBuffer route = track(6, 10);
+        assertEquals(10, RouteSimplifier.overview(route, 64).size());
+    }
+
+    // A jittery path at running pace, one fix a second
+    private static RouteBuffer track(long seed, int points) {
+        Random random = new Random(seed);
+        RouteBuffer track = new RouteBuffer(points);
+        double latitude = 51.5;
+        double longitude = -0.1;
+        double heading = 0;
+        for (int i = 0; i < points; i++) {
+            heading += random.nextGaussian() * 0.1;
+            latitude += Math.cos(heading) * 2.5e-5 + random.nextGaussian() * 2e-6;
+            longitude += Math.sin(heading) * 4e-5 + random.nextGaussian() * 3e-6;
+            track.add(latitude, longitude, 1_700_000_000_000L + i * 1000L);
+        }
+        return track;
+    }
+}
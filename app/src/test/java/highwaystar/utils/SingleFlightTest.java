@@ -0,0 +1,104 @@
+package highwaystar.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+    private final List<CompletableFuture<String>> loads = new ArrayList<>();
+
+    @Test
+    void concurrentCallersShareOneLoad() {
+        CompletableFuture<String> first = flight.run("u1", this::load);
+        CompletableFuture<String> second = flight.run("u1", this::load);
+        CompletableFuture<String> other = flight.run("u2", this::load);
+
+        assertEquals(2, loads.size());
+        assertEquals(3, flight.getCalls());
+        assertEquals(1, flight.getCollapsed());
+        assertEquals(2, flight.getInFlight());
+
+        loads.get(0).complete("profile");
+        assertEquals("profile", first.join());
+        assertEquals("profile", second.join());
+        assertFalse(other.isDone());
+        assertEquals(1, flight.getInFlight());
+    }
+
+    @Test
+    void completedLoadIsNotReused() {
+        flight.run("u1", this::load);
+        loads.get(0).complete("old");
+
+        CompletableFuture<String> next = flight.run("u1", this::load);
+        assertEquals(2, loads.size());
+        assertEquals(0, flight.getCollapsed());
+        assertFalse(next.isDone());
+    }
+
+    @Test
+    void failedLoadReachesEveryWaiter() {
+        CompletableFuture<String> first = flight.run("u1", this::load);
+        CompletableFuture<String> second = flight.run("u1", this::load);
+
+        loads.get(0).completeExceptionally(new IllegalStateException("offline"));
+        CompletionException failure = assertThrows(CompletionException.class, first::join);
+        assertEquals("offline", failure.getCause().getMessage());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    void loaderThatThrowsFailsTheCaller() {
+        CompletableFuture<String> result = flight.run("u1", () -> {
+            throw new IllegalStateException("no backend");
+        });
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    void callerCancellingDoesNotAffectOthers() {
+        CompletableFuture<String> first = flight.run("u1", this::load);
+        CompletableFuture<String> second = flight.run("u1", this::load);
+
+        first.cancel(true);
+        loads.get(0).complete("profile");
+        assertEquals("profile", second.join());
+    }
+
+    @Test
+    void forgetStartsANewLoadAndOldWaitersKeepTheOldResult() {
+        CompletableFuture<String> before = flight.run("u1", this::load);
+        flight.forget("u1");
+        CompletableFuture<String> after = flight.run("u1", this::load);
+
+        assertEquals(2, loads.size());
+        assertEquals(0, flight.getCollapsed());
+
+        // The old load finishing must not drop the new one
+        loads.get(0).complete("stale");
+        assertEquals("stale", before.join());
+        assertFalse(after.isDone());
+        assertEquals(1, flight.getInFlight());
+
+        CompletableFuture<String> joined = flight.run("u1", this::load);
+        assertEquals(2, loads.size());
+        loads.get(1).complete("fresh");
+        assertEquals("fresh", after.join());
+        assertEquals("fresh", joined.join());
+    }
+
+    private CompletableFuture<String> load() {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        loads.add(load);
+        return load;
+    }
+}